@@ -28,7 +28,7 @@ public class AuthController {
         session.setEmail(creds.email);
         session.setLoginFailReason(null);
 
-        out.println(CommandFormatter.login(creds.email, creds.password));
+        out.println(CommandFormatter.login(creds.email, creds.password, session.getDeviceId()));
 
         while (!session.isLoggedIn() && session.getLoginFailReason() == null) {
             try {
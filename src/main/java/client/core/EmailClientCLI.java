@@ -3,13 +3,18 @@ package client.core;
 import client.auth.AuthController;
 import client.handler.*;
 import client.router.CommandRouter;
-import model.Email;
+import model.EmailHeader;
+import utils.CommandFormatter;
 import utils.ConsoleConstants;
 import utils.ConsolePrinter;
+import utils.ProtocolConstants;
 import utils.ServerConstants;
+import utils.TlsUtils;
 
+import javax.net.ssl.SSLContext;
 import java.io.*;
 import java.net.Socket;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -19,6 +24,8 @@ import java.util.Scanner;
  */
 public class EmailClientCLI {
 
+    private static SSLContext tlsContext; // built once, so every connection of this process can resume
+
     private Socket socket;
     private PrintWriter out;
     private BufferedReader in;
@@ -27,14 +34,14 @@ public class EmailClientCLI {
     private Thread listenerThread;
 
     private final SessionState session = new SessionState();
-    private final List<Email> receivedEmails = new ArrayList<>();
+    private final List<EmailHeader> receivedEmails = new ArrayList<>();
 
     public static void main(String[] args) {
         new EmailClientCLI().start();
     }
 
     public void start() {
-        try (Socket clientSocket = new Socket("localhost", ServerConstants.SERVER_PORT)) {
+        try (Socket clientSocket = connect()) {
             this.socket = clientSocket;
             this.out = new PrintWriter(socket.getOutputStream(), true);
             this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
@@ -48,12 +55,13 @@ public class EmailClientCLI {
                     out,
                     scanner,
                     new EmailSender(out, scanner),
-                    new EmailReader(scanner, receivedEmails),
+                    new EmailReader(scanner, out, session, receivedEmails),
                     new EmailSearcher(out),
-                    new EmailLister(out));
+                    new EmailLister(out, session));
             AuthController authController = new AuthController(out, scanner, session);
 
             startListener(responseHandler);
+            out.println(CommandFormatter.hello(ProtocolConstants.CAP_DEFLATE, ProtocolConstants.CAP_PIPELINING));
 
             while (true) {
                 if (!session.isLoggedIn()) {
@@ -70,6 +78,29 @@ public class EmailClientCLI {
         }
     }
 
+    /**
+     * Connects to the server, over TLS when ENABLE_TLS is set. The server
+     * certificate is trusted through the client truststore.
+     */
+    private Socket connect() throws IOException {
+        if (!ServerConstants.ENABLE_TLS) {
+            return new Socket("localhost", ServerConstants.SERVER_PORT);
+        }
+        return tlsContext().getSocketFactory().createSocket("localhost", ServerConstants.SERVER_PORT);
+    }
+
+    private static synchronized SSLContext tlsContext() throws IOException {
+        if (tlsContext == null) {
+            try {
+                tlsContext = TlsUtils.createClientContext(ServerConstants.TRUSTSTORE_PATH,
+                        ServerConstants.TRUSTSTORE_PASSWORD.toCharArray());
+            } catch (GeneralSecurityException e) {
+                throw new IOException("TLS setup failed: " + e.getMessage(), e);
+            }
+        }
+        return tlsContext;
+    }
+
     private void startListener(ServerResponseHandler handler) {
         listenerThread = new Thread(() -> {
             try {
@@ -111,7 +142,7 @@ public class EmailClientCLI {
     }
 
     private void exitClient() {
-        out.println(utils.CommandFormatter.exit(session.getEmail()));
+        out.println(CommandFormatter.exit(session.getEmail()));
         ConsolePrinter.progressDots(ConsoleConstants.GOODBYE, 3, 300);
         cleanup();
         System.exit(0);
@@ -1,8 +1,16 @@
 package client.core;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.reflect.TypeToken;
 import model.Email;
+import model.EmailHeader;
+import model.EmailPage;
+import model.SyncResult;
+import utils.CompressionUtils;
 import utils.ConsoleConstants;
 import utils.ConsolePrinter;
 import utils.ProtocolConstants;
@@ -15,10 +23,10 @@ import java.util.List;
 public class ServerResponseHandler {
 
     private final SessionState session;
-    private final List<Email> receivedEmails;
+    private final List<EmailHeader> receivedEmails; // listing cache; bodies are fetched with READ_EMAIL
     private final Gson gson = new Gson();
 
-    public ServerResponseHandler(SessionState session, List<Email> receivedEmails) {
+    public ServerResponseHandler(SessionState session, List<EmailHeader> receivedEmails) {
         this.session = session;
         this.receivedEmails = receivedEmails;
     }
@@ -30,13 +38,63 @@ public class ServerResponseHandler {
         String command = parts[0];
 
         switch (command) {
+            case ProtocolConstants.RESPONSE_COMPRESSED -> {
+                if (parts.length < 2) {
+                    ConsolePrinter.error(ConsoleConstants.COMPRESSED_RESPONSE_FAIL_MSG);
+                    return;
+                }
+                String inflated;
+                try {
+                    inflated = CompressionUtils.inflate(parts[1]);
+                } catch (IllegalArgumentException e) {
+                    ConsolePrinter.error(ConsoleConstants.COMPRESSED_RESPONSE_FAIL_MSG);
+                    return;
+                }
+                handle(inflated);
+            }
+
+            case ProtocolConstants.RESPONSE_HELLO_SUCCESS -> {
+                if (parts.length < 2) {
+                    return;
+                }
+                JsonObject agreed = JsonParser.parseString(parts[1]).getAsJsonObject();
+                JsonArray capabilities = agreed.getAsJsonArray("capabilities");
+                session.setCapabilities(
+                        agreed.get("version").getAsInt(),
+                        capabilities.contains(new JsonPrimitive(ProtocolConstants.CAP_DEFLATE)),
+                        capabilities.contains(new JsonPrimitive(ProtocolConstants.CAP_PIPELINING)));
+            }
+
+            case ProtocolConstants.RESPONSE_HELLO_FAIL ->
+                ConsolePrinter.warning(ConsoleConstants.HELLO_FAIL_MSG);
+
             case ProtocolConstants.RESPONSE_LOGIN_SUCCESS -> {
+                if (parts.length > 1) {
+                    JsonObject body = gson.fromJson(parts[1], JsonObject.class);
+                    session.setSessionToken(body.has("token") ? body.get("token").getAsString() : null);
+                }
                 session.setLoggedIn(true);
                 ConsolePrinter.success(ConsoleConstants.LOGIN_WELCOME_PREFIX + session.getEmail());
                 ConsolePrinter.divider();
                 ConsolePrinter.raw(ConsoleConstants.POST_LOGIN_COMMANDS);
             }
 
+            case ProtocolConstants.RESPONSE_RESUME_SUCCESS -> {
+                if (parts.length < 2) {
+                    return;
+                }
+                JsonObject body = gson.fromJson(parts[1], JsonObject.class);
+                session.setSessionToken(body.get("token").getAsString()); // the old token is spent
+                session.setLoggedIn(true);
+                ConsolePrinter.success(ConsoleConstants.RESUME_SUCCESS_MSG);
+            }
+
+            case ProtocolConstants.RESPONSE_RESUME_FAIL -> {
+                ConsolePrinter.error(String.format(ConsoleConstants.RESUME_FAIL_MSG,
+                        parts.length > 1 ? parts[1] : "unknown session"));
+                session.reset();
+            }
+
             case ProtocolConstants.RESPONSE_LOGIN_FAIL -> {
                 session.setLoginFailReason(parts.length > 1 ? parts[1] : "Unknown error");
                 ConsolePrinter.error(ConsoleConstants.LOGIN_FAILURE_MSG + session.getLoginFailReason());
@@ -72,11 +130,39 @@ public class ServerResponseHandler {
                     return;
                 }
 
-                List<Email> emails = gson.fromJson(parts[1], new TypeToken<List<Email>>() {
+                if (parts[1].startsWith("{")) {
+                    EmailPage<EmailHeader> page = gson.fromJson(parts[1], new TypeToken<EmailPage<EmailHeader>>() {
+                    }.getType());
+                    int firstIndex = session.isAppendingPage() ? receivedEmails.size() : 0;
+                    if (!session.isAppendingPage()) {
+                        receivedEmails.clear();
+                        session.setListVersion(page.getVersion());
+                    } else if (page.getVersion() == null || !page.getVersion().equals(session.getListVersion())) {
+                        session.setListVersion(null); // pages from different mailbox states; don't reuse
+                    }
+                    receivedEmails.addAll(page.getEmails());
+                    session.setNextCursor(page.getNextCursor());
+                    displayEmailList(firstIndex);
+                    if (page.hasMore()) {
+                        ConsolePrinter.info(ConsoleConstants.EMAIL_LIST_MORE_MSG);
+                    }
+                    return;
+                }
+
+                List<EmailHeader> emails = gson.fromJson(parts[1], new TypeToken<List<EmailHeader>>() {
                 }.getType());
                 receivedEmails.clear();
                 receivedEmails.addAll(emails);
-                displayEmailList();
+                session.setListVersion(null);
+                displayEmailList(0);
+            }
+
+            case ProtocolConstants.RESPONSE_NOT_MODIFIED -> {
+                ConsolePrinter.info(ConsoleConstants.EMAIL_LIST_UNCHANGED_MSG);
+                displayEmailList(0);
+                if (session.getNextCursor() != null) {
+                    ConsolePrinter.info(ConsoleConstants.EMAIL_LIST_MORE_MSG);
+                }
             }
 
             case ProtocolConstants.RESPONSE_SEARCH_EMAIL_SUCCESS -> {
@@ -85,35 +171,123 @@ public class ServerResponseHandler {
                     return;
                 }
 
-                List<Email> searchResults = gson.fromJson(parts[1], new TypeToken<List<Email>>() {
+                List<EmailHeader> searchResults = gson.fromJson(parts[1], new TypeToken<List<EmailHeader>>() {
                 }.getType());
                 if (searchResults.isEmpty()) {
                     ConsolePrinter.info("No matching emails found.");
                 } else {
                     ConsolePrinter.info("Search results:");
                     for (int i = 0; i < searchResults.size(); i++) {
-                        Email email = searchResults.get(i);
+                        EmailHeader email = searchResults.get(i);
                         ConsolePrinter
                                 .info((i + 1) + ". Subject: " + email.getSubject() + ", From: " + email.getFrom());
                         ConsolePrinter.info("   Timestamp: " + email.getTimestamp());
+                        printPreview(email);
                     }
                 }
             }
 
+            case ProtocolConstants.RESPONSE_READ_EMAIL_SUCCESS -> {
+                if (parts.length < 2) {
+                    return;
+                }
+                Email email = gson.fromJson(parts[1], Email.class);
+                ConsolePrinter.divider();
+                ConsolePrinter.info("Subject: " + email.getSubject());
+                ConsolePrinter.info("From: " + email.getFrom());
+                ConsolePrinter.info("Timestamp: " + email.getTimestamp());
+                ConsolePrinter.info("Body:");
+                ConsolePrinter.raw(email.getBody());
+                ConsolePrinter.divider();
+            }
+
+            case ProtocolConstants.RESPONSE_READ_EMAIL_FAIL ->
+                ConsolePrinter.error(ConsoleConstants.EMAIL_READ_FAIL_MSG + (parts.length > 1 ? parts[1] : ""));
+
+            case ProtocolConstants.RESPONSE_SYNC_SUCCESS, ProtocolConstants.RESPONSE_IDLE_SUCCESS -> {
+                if (parts.length < 2) {
+                    return;
+                }
+                SyncResult changes = gson.fromJson(parts[1], SyncResult.class);
+                boolean firstSync = session.getSyncEpoch() == null;
+                session.setSyncBookmark(changes.getEpoch(), changes.getSeq());
+                if (changes.isFullResync()) {
+                    ConsolePrinter.info(firstSync
+                            ? ConsoleConstants.SYNC_STARTED_MSG
+                            : ConsoleConstants.SYNC_RESYNC_MSG);
+                    return;
+                }
+                ConsolePrinter.info(String.format(ConsoleConstants.SYNC_SUMMARY_MSG, changes.getAdded().size(),
+                        changes.getEdited().size(), changes.getHidden().size()));
+                for (Email email : changes.getAdded()) {
+                    ConsolePrinter.info("   New: " + email.getSubject() + ", From: " + email.getFrom());
+                }
+            }
+
+            case ProtocolConstants.RESPONSE_BATCH_SUCCESS -> {
+                if (parts.length < 2) {
+                    return;
+                }
+                for (String result : gson.fromJson(parts[1], String[].class)) {
+                    handle(result);
+                }
+            }
+
+            case ProtocolConstants.RESPONSE_IDLE_FAIL ->
+                ConsolePrinter.error(ConsoleConstants.IDLE_FAIL_MSG + (parts.length > 1 ? parts[1] : ""));
+
+            case ProtocolConstants.RESPONSE_BATCH_FAIL ->
+                ConsolePrinter.error(ConsoleConstants.BATCH_FAIL_MSG + (parts.length > 1 ? parts[1] : ""));
+
+            case ProtocolConstants.PUSH_NEW_EMAIL -> {
+                if (parts.length < 2) {
+                    return;
+                }
+                Email header = gson.fromJson(parts[1], Email.class);
+                ConsolePrinter.success(ConsoleConstants.NEW_EMAIL_PREFIX + "Subject: " + header.getSubject()
+                        + ", From: " + header.getFrom());
+            }
+
+            case ProtocolConstants.RESPONSE_RATE_LIMITED -> {
+                if (parts.length < 2) {
+                    return;
+                }
+                JsonObject limited = JsonParser.parseString(parts[1]).getAsJsonObject();
+                ConsolePrinter.warning(String.format(ConsoleConstants.RATE_LIMITED_MSG,
+                        limited.get("command").getAsString(), limited.get("retryAfterMs").getAsLong() / 1000.0));
+            }
+
+            case ProtocolConstants.RESPONSE_UNAUTHORIZED -> {
+                // Also pushed unprompted when the session expires
+                ConsolePrinter.error(String.format(ConsoleConstants.UNAUTHORIZED_MSG,
+                        parts.length > 1 ? parts[1] : "session ended"));
+                session.reset();
+            }
+
+            case ProtocolConstants.PUSH_SERVER_GOING_AWAY ->
+                ConsolePrinter.error(ConsoleConstants.SERVER_GOING_AWAY_MSG);
+
             default -> ConsolePrinter.info(ConsoleConstants.UNHANDLED_RESPONSE_MSG + response);
         }
     }
 
-    private void displayEmailList() {
+    private void displayEmailList(int firstIndex) {
         if (receivedEmails.isEmpty()) {
             ConsolePrinter.info(ConsoleConstants.EMAIL_LIST_EMPTY_MSG);
         } else {
             ConsolePrinter.info(ConsoleConstants.EMAIL_LIST_HEADER_MSG);
-            for (int i = 0; i < receivedEmails.size(); i++) {
-                Email email = receivedEmails.get(i);
+            for (int i = firstIndex; i < receivedEmails.size(); i++) {
+                EmailHeader email = receivedEmails.get(i);
                 ConsolePrinter.info((i + 1) + ". Subject: " + email.getSubject() + ", From: " + email.getFrom());
                 ConsolePrinter.info("   Timestamp: " + email.getTimestamp());
+                printPreview(email);
             }
         }
     }
+
+    private void printPreview(EmailHeader email) {
+        if (email.getPreview() != null && !email.getPreview().isEmpty()) {
+            ConsolePrinter.info("   " + email.getPreview());
+        }
+    }
 }
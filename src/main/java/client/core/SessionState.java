@@ -1,5 +1,7 @@
 package client.core;
 
+import java.util.UUID;
+
 /**
  * Holds session-related information for the logged-in user.
  * Shared across client components to maintain consistent state.
@@ -9,6 +11,23 @@ public class SessionState {
     private volatile boolean loggedIn = false;
     private volatile String sessionEmail = null;
     private volatile String loginFailReason = null;
+    private volatile String sessionToken = null; // opaque token returned by LOGIN
+    private final String deviceId = UUID.randomUUID().toString(); // this client, across logins
+
+    // Paging state of the last mailbox listing
+    private volatile String listType = null;
+    private volatile String nextCursor = null;
+    private volatile boolean appendingPage = false;
+    private volatile String listVersion = null; // mailbox version of the cached listing, null if unknown
+
+    // Bookmark of the last SYNC (epoch + change sequence)
+    private volatile String syncEpoch = null;
+    private volatile long syncSeq = 0;
+
+    // Connection capabilities agreed through HELLO (survive logout, reset on reconnect)
+    private volatile int protocolVersion = 1;
+    private volatile boolean compressionEnabled = false;
+    private volatile boolean pipeliningEnabled = false;
 
     public boolean isLoggedIn() {
         return loggedIn;
@@ -26,6 +45,22 @@ public class SessionState {
         this.sessionEmail = sessionEmail;
     }
 
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    public void setSessionToken(String sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+
+    /**
+     * @return id sent with every LOGIN, so logging in again replaces this
+     *         client's earlier session rather than adding a device
+     */
+    public String getDeviceId() {
+        return deviceId;
+    }
+
     public String getLoginFailReason() {
         return loginFailReason;
     }
@@ -34,10 +69,81 @@ public class SessionState {
         this.loginFailReason = reason;
     }
 
+    public String getListType() {
+        return listType;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isAppendingPage() {
+        return appendingPage;
+    }
+
+    /**
+     * Records the listing being requested; a follow-up page is appended to the
+     * cached list rather than replacing it.
+     */
+    public void beginListing(String listType, boolean appendingPage) {
+        this.listType = listType;
+        this.appendingPage = appendingPage;
+    }
+
+    public String getListVersion() {
+        return listVersion;
+    }
+
+    public void setListVersion(String listVersion) {
+        this.listVersion = listVersion;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public String getSyncEpoch() {
+        return syncEpoch;
+    }
+
+    public long getSyncSeq() {
+        return syncSeq;
+    }
+
+    public void setSyncBookmark(String syncEpoch, long syncSeq) {
+        this.syncEpoch = syncEpoch;
+        this.syncSeq = syncSeq;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public boolean isPipeliningEnabled() {
+        return pipeliningEnabled;
+    }
+
+    public void setCapabilities(int protocolVersion, boolean compressionEnabled, boolean pipeliningEnabled) {
+        this.protocolVersion = protocolVersion;
+        this.compressionEnabled = compressionEnabled;
+        this.pipeliningEnabled = pipeliningEnabled;
+    }
+
     public void reset() {
         this.loggedIn = false;
         this.sessionEmail = null;
         this.loginFailReason = null;
+        this.sessionToken = null;
+        this.listType = null;
+        this.nextCursor = null;
+        this.appendingPage = false;
+        this.listVersion = null;
+        this.syncEpoch = null;
+        this.syncSeq = 0;
     }
 
     public boolean hasLoginFailedWithUserNotFound() {
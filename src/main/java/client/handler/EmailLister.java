@@ -1,5 +1,7 @@
 package client.handler;
 
+import client.core.SessionState;
+import utils.ClientConstants;
 import utils.CommandFormatter;
 import utils.ConsolePrinter;
 
@@ -7,22 +9,48 @@ import java.io.PrintWriter;
 
 /**
  * Handles listing of sent or received emails.
+ * Mailboxes are fetched one page at a time; "LIST next" requests the
+ * following page of the last listing. Re-listing the same mailbox sends the
+ * cached version so an unchanged mailbox is answered with NOT_MODIFIED.
  */
 public class EmailLister {
 
     private final PrintWriter out;
+    private final SessionState session;
 
-    public EmailLister(PrintWriter out) {
+    public EmailLister(PrintWriter out, SessionState session) {
         this.out = out;
+        this.session = session;
     }
 
     public void listEmails(String userEmail, String type) {
+        if (type.equalsIgnoreCase("next") || type.equalsIgnoreCase("more")) {
+            listNextPage(userEmail);
+            return;
+        }
+
         if (!type.equalsIgnoreCase("sent") && !type.equalsIgnoreCase("received")) {
             ConsolePrinter.error("Invalid type. Use 'sent' or 'received'. Defaulting to 'received'.");
             type = "received";
         }
 
-        out.println(CommandFormatter.retrieveEmails(userEmail, type));
+        String ifVersion = type.equalsIgnoreCase(session.getListType()) ? session.getListVersion() : null;
+        session.beginListing(type, false);
+        out.println(CommandFormatter.retrieveEmails(userEmail, type, ClientConstants.EMAIL_PAGE_SIZE, null,
+                ifVersion));
         ConsolePrinter.info("Fetching " + type + " emails...");
     }
+
+    private void listNextPage(String userEmail) {
+        String cursor = session.getNextCursor();
+        if (session.getListType() == null || cursor == null) {
+            ConsolePrinter.info("No more emails to fetch. Use LIST [sent|received] to start over.");
+            return;
+        }
+
+        session.beginListing(session.getListType(), true);
+        out.println(CommandFormatter.retrieveEmails(userEmail, session.getListType(),
+                ClientConstants.EMAIL_PAGE_SIZE, cursor));
+        ConsolePrinter.info("Fetching more " + session.getListType() + " emails...");
+    }
 }
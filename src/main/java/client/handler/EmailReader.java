@@ -1,21 +1,29 @@
 package client.handler;
 
-import model.Email;
+import client.core.SessionState;
+import model.EmailHeader;
+import utils.CommandFormatter;
 import utils.ConsolePrinter;
 
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Scanner;
 
 /**
- * Handles reading a specific email from the local cache by index.
+ * Handles reading a specific email by its index in the last listing.
+ * Listings only carry headers, so the body is fetched with READ_EMAIL.
  */
 public class EmailReader {
 
     private final Scanner scanner;
-    private final List<Email> receivedEmails;
+    private final PrintWriter out;
+    private final SessionState session;
+    private final List<EmailHeader> receivedEmails;
 
-    public EmailReader(Scanner scanner, List<Email> receivedEmails) {
+    public EmailReader(Scanner scanner, PrintWriter out, SessionState session, List<EmailHeader> receivedEmails) {
         this.scanner = scanner;
+        this.out = out;
+        this.session = session;
         this.receivedEmails = receivedEmails;
     }
 
@@ -36,14 +44,9 @@ public class EmailReader {
                 return;
             }
 
-            Email email = receivedEmails.get(index);
-            ConsolePrinter.divider();
-            ConsolePrinter.info("Subject: " + email.getSubject());
-            ConsolePrinter.info("From: " + email.getFrom());
-            ConsolePrinter.info("Timestamp: " + email.getTimestamp());
-            ConsolePrinter.info("Body:");
-            ConsolePrinter.raw(email.getBody());
-            ConsolePrinter.divider();
+            EmailHeader email = receivedEmails.get(index);
+            out.println(CommandFormatter.readEmail(session.getEmail(), email.getId()));
+            ConsolePrinter.info("Opening \"" + email.getSubject() + "\"...");
 
         } catch (NumberFormatException e) {
             ConsolePrinter.error("Invalid input. Please enter a number.");
@@ -5,6 +5,7 @@ import client.handler.EmailLister;
 import client.handler.EmailReader;
 import client.handler.EmailSearcher;
 import client.handler.EmailSender;
+import utils.ClientConstants;
 import utils.CommandFormatter;
 import utils.ConsoleConstants;
 import utils.ConsolePrinter;
@@ -46,7 +47,8 @@ public class CommandRouter {
         String args = tokens.length > 1 ? tokens[1] : "";
 
         switch (command) {
-            case "1", "logout" -> out.println(CommandFormatter.logout(session.getEmail()));
+            case "1", "logout" -> out.println(
+                    CommandFormatter.logout(session.getEmail(), args.trim().equalsIgnoreCase("all")));
 
             case "2", "send" -> emailSender.sendInteractive(session.getEmail());
 
@@ -62,9 +64,33 @@ public class CommandRouter {
                 session.reset();
             }
 
+            case "7", "sync" -> out.println(
+                    CommandFormatter.sync(session.getEmail(), session.getSyncEpoch(), session.getSyncSeq()));
+
+            case "8", "idle" -> idle(args);
+
             case "help" -> ConsolePrinter.raw(ConsoleConstants.POST_LOGIN_COMMANDS);
 
             default -> ConsolePrinter.error("Unknown command. Type 'help' to see available options.");
         }
     }
+
+    /**
+     * Waits server-side for the mailbox to change instead of polling; the
+     * answer arrives like a SYNC response.
+     */
+    private void idle(String args) {
+        int seconds = ClientConstants.IDLE_DEFAULT_SECONDS;
+        if (!args.isBlank()) {
+            try {
+                seconds = Integer.parseInt(args.trim());
+            } catch (NumberFormatException e) {
+                ConsolePrinter.error("Usage: IDLE [seconds]");
+                return;
+            }
+        }
+        out.println(CommandFormatter.idle(session.getEmail(), session.getSyncEpoch(), session.getSyncSeq(),
+                seconds * 1000L));
+        ConsolePrinter.info(String.format(ConsoleConstants.IDLE_WAITING_MSG, seconds));
+    }
 }
@@ -0,0 +1,78 @@
+package model;
+
+/**
+ * Body-less view of an {@link Email} used by mailbox listings.
+ * <p>
+ * {@code preview} holds the first characters of the body (whitespace
+ * collapsed) when the listing was requested with the snippet projection,
+ * and is {@code null} for headers-only listings. The full body is fetched
+ * separately with READ_EMAIL.
+ */
+public class EmailHeader {
+    private String id;
+    private String to;
+    private String from;
+    private String subject;
+    private String timestamp;
+    private boolean edited;
+    private String preview;
+
+    // Required for Gson deserialization
+    public EmailHeader() {
+    }
+
+    /**
+     * Projects an email onto its header.
+     *
+     * @param previewLength maximum preview length in characters, or 0 for no preview
+     */
+    public static EmailHeader of(Email email, int previewLength) {
+        EmailHeader header = new EmailHeader();
+        header.id = email.getId();
+        header.to = email.getTo();
+        header.from = email.getFrom();
+        header.subject = email.getSubject();
+        header.timestamp = email.getTimestamp();
+        header.edited = email.isEdited();
+        if (previewLength > 0) {
+            header.preview = preview(email.getBody(), previewLength);
+        }
+        return header;
+    }
+
+    private static String preview(String body, int maxLength) {
+        if (body == null) {
+            return "";
+        }
+        String flat = body.strip().replaceAll("\\s+", " ");
+        return flat.length() <= maxLength ? flat : flat.substring(0, maxLength).stripTrailing() + "...";
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isEdited() {
+        return edited;
+    }
+
+    public String getPreview() {
+        return preview;
+    }
+}
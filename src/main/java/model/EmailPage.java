@@ -0,0 +1,50 @@
+package model;
+
+import java.util.List;
+
+/**
+ * One page of a mailbox listing.
+ * <p>
+ * {@code nextCursor} is an opaque token that the client sends back to fetch the
+ * following page; it is {@code null} when the mailbox has no further entries.
+ * {@code version} identifies the mailbox state the page was read from; a
+ * client sends it back as {@code ifVersion} to skip unchanged listings.
+ *
+ * @param <T> entry type: {@link Email} or a projection such as {@link EmailHeader}
+ */
+public class EmailPage<T> {
+    private List<T> emails;
+    private String nextCursor;
+    private String version;
+
+    // Required for Gson deserialization
+    public EmailPage() {
+    }
+
+    public EmailPage(List<T> emails, String nextCursor) {
+        this.emails = emails;
+        this.nextCursor = nextCursor;
+    }
+
+    public EmailPage(List<T> emails, String nextCursor, String version) {
+        this.emails = emails;
+        this.nextCursor = nextCursor;
+        this.version = version;
+    }
+
+    public List<T> getEmails() {
+        return emails;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
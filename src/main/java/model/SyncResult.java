@@ -0,0 +1,54 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mailbox changes returned by SYNC.
+ * <p>
+ * {@code epoch} and {@code seq} form the client's bookmark for the next SYNC.
+ * When {@code fullResync} is true the delta lists are empty and the client
+ * must re-list its mailbox, because the requested history is no longer kept.
+ */
+public class SyncResult {
+    private String epoch;
+    private long seq;
+    private boolean fullResync;
+    private List<Email> added = new ArrayList<>();
+    private List<Email> edited = new ArrayList<>();
+    private List<String> hidden = new ArrayList<>();
+
+    // Required for Gson deserialization
+    public SyncResult() {
+    }
+
+    public SyncResult(String epoch, long seq, boolean fullResync) {
+        this.epoch = epoch;
+        this.seq = seq;
+        this.fullResync = fullResync;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public boolean isFullResync() {
+        return fullResync;
+    }
+
+    public List<Email> getAdded() {
+        return added;
+    }
+
+    public List<Email> getEdited() {
+        return edited;
+    }
+
+    public List<String> getHidden() {
+        return hidden;
+    }
+}
@@ -2,24 +2,44 @@ package server;
 
 import lombok.extern.slf4j.Slf4j;
 import server.data.FileDatabase;
+import server.data.SessionStore;
+import server.dispatch.BoundedExecutor;
+import server.dispatch.CommandExecutors;
+import server.dispatch.ExecutorStats;
+import server.dispatch.RateLimitStats;
+import server.dispatch.RateLimiter;
 import server.handler.ClientHandler;
 import server.handler.CommandHandler;
+import server.http.HttpGateway;
 import server.service.AuthService;
 import server.service.EmailService;
 import server.service.SessionManager;
+import server.service.SessionStats;
 import utils.LogHandler;
 import utils.LogUtils;
+import utils.ProtocolConstants;
+import utils.SecurityUtils;
 import utils.ServerConstants;
+import utils.TlsUtils;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.Map;
 import java.util.concurrent.*;
 
 /**
  * TCP server for a multi-client email system.
  * Initializes core services, loads persisted data, and handles
  * incoming socket connections using a fixed thread pool.
+ * <p>
+ * On shutdown the server drains instead of killing connections: it stops
+ * accepting, sends SERVER_GOING_AWAY to every client, lets in-flight commands
+ * finish within {@link ServerConstants#DRAIN_TIMEOUT_MS}, and persists last.
+ * Sessions are persisted too, so clients RESUME after a restart instead of
+ * all logging in, and hashing passwords, at once.
  */
 @Slf4j
 public class EmailServer {
@@ -28,6 +48,9 @@ public class EmailServer {
     private static final int MAX_CLIENTS = ServerConstants.MAX_CLIENTS;
     private final ExecutorService threadPool = Executors.newFixedThreadPool(MAX_CLIENTS);
     private ScheduledExecutorService monitorService;
+    private final Map<Socket, ClientHandler> connections = new ConcurrentHashMap<>();
+    private volatile ServerSocket serverSocket;
+    private volatile boolean draining;
 
     public static void main(String[] args) {
         LogHandler.log("Booting EmailServer on port " + PORT);
@@ -38,43 +61,160 @@ public class EmailServer {
         FileDatabase database = new FileDatabase(ServerConstants.USERS_DB_PATH, ServerConstants.EMAILS_DB_PATH);
         database.loadAll();
 
+        SecurityUtils.calibrate(ServerConstants.KDF_TARGET_MILLIS);
+        SessionStore sessionStore = new SessionStore(ServerConstants.SESSIONS_DB_PATH);
         SessionManager sessionManager = new SessionManager();
-        EmailService emailService = new EmailService(database);
+        sessionManager.restoreSessions(sessionStore.load());
+        sessionManager.startExpiry();
+        EmailService emailService = new EmailService(database, sessionManager);
         AuthService authService = new AuthService(database, sessionManager);
-        CommandHandler commandHandler = new CommandHandler(authService, emailService, sessionManager);
+        RateLimiter rateLimiter = new RateLimiter(RateLimiter.parseLimits(ServerConstants.RATE_LIMITS),
+                ServerConstants.RATE_LIMIT_IP_MULTIPLIER); // shared so both front ends draw from the same buckets
+        CommandExecutors executors = CommandExecutors.pooled();
+        CommandHandler commandHandler = new CommandHandler(authService, emailService, sessionManager,
+                executors, rateLimiter);
+        HttpGateway httpGateway = ServerConstants.ENABLE_HTTP
+                ? startHttpGateway(authService, emailService, sessionManager, rateLimiter, executors.auth())
+                : null;
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            LogHandler.log("Shutdown hook triggered: Saving state...");
+            LogHandler.log("Shutdown hook triggered: Draining connections...");
+            if (httpGateway != null) {
+                httpGateway.stop();
+            }
+            sessionManager.suspend(); // connections closed by the drain keep their sessions
+            drain(sessionManager, commandHandler);
+            commandHandler.shutdown();
+            sessionManager.stopExpiry();
+            sessionStore.save(sessionManager.exportSessions());
             sessionManager.clearAllSessions();
-            database.saveAll();
+            database.saveAll(); // last, so every drained command is persisted
             shutdownMonitoring();
             LogHandler.shutdown();
             LogHandler.log("Shutdown hook completed. Goodbye.");
         }));
 
-        startMonitoring(); // start thread monitor
+        startMonitoring(commandHandler, sessionManager); // start thread monitor
 
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            LogHandler.log("EmailServer is listening on port " + PORT);
+        try (ServerSocket listener = openServerSocket()) {
+            serverSocket = listener;
+            LogHandler.log("EmailServer is listening on port " + PORT + (ServerConstants.ENABLE_TLS ? " (TLS)" : ""));
 
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                threadPool.submit(new ClientHandler(clientSocket, commandHandler));
+            while (!draining) {
+                Socket clientSocket = listener.accept();
+                ClientHandler handler = new ClientHandler(clientSocket, commandHandler, sessionManager);
+                connections.put(clientSocket, handler);
+                threadPool.submit(() -> {
+                    try {
+                        handler.run();
+                    } finally {
+                        connections.remove(clientSocket);
+                    }
+                });
             }
 
-        } catch (IOException e) {
+        } catch (IOException | GeneralSecurityException e) {
+            if (draining) {
+                return; // listener closed by drain(); the shutdown hook owns the thread pool now
+            }
             LogHandler.error("Fatal server error: " + e.getMessage());
             LogUtils.printDebugStackTrace(e);
         } finally {
-            LogHandler.log("Main thread exiting. Triggering shutdown...");
+            if (!draining) {
+                LogHandler.log("Main thread exiting. Triggering shutdown...");
+                threadPool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections, tells every client the server is going
+     * away, and waits for in-flight commands to complete, all within one
+     * {@link ServerConstants#DRAIN_TIMEOUT_MS} window. The command executors
+     * are drained first, while every socket is still open, so detached
+     * SEARCH_EMAIL answers are delivered. Then each connection is closed as
+     * soon as its handler has answered the command it is running; this does
+     * not rely on half-closing the input, which TLS sockets do not support.
+     * Handlers still busy at the deadline are interrupted and their sockets
+     * closed.
+     */
+    private void drain(SessionManager sessionManager, CommandHandler commandHandler) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ServerConstants.DRAIN_TIMEOUT_MS);
+        draining = true;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            LogHandler.warn("Error closing listener during drain: " + e.getMessage());
+        }
+
+        int notified = sessionManager.broadcast(ProtocolConstants.PUSH_SERVER_GOING_AWAY + ProtocolConstants.DELIMITER
+                + "{\"drainMs\":" + ServerConstants.DRAIN_TIMEOUT_MS + "}");
+        log.info("Draining {} connections ({} notified)", connections.size(), notified);
+        LogHandler.info("Draining " + connections.size() + " connections (" + notified + " notified)");
+
+        try {
+            if (!commandHandler.drainExecutors(remainingMillis(deadline))) {
+                LogHandler.warn("Drain deadline reached with commands still running on the executors");
+            }
+            connections.values().forEach(ClientHandler::stopWhenIdle);
+            threadPool.shutdown();
+            if (!threadPool.awaitTermination(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+                LogHandler.warn("Drain deadline reached; closing " + connections.size() + " connections");
+                threadPool.shutdownNow();
+                for (Socket socket : connections.keySet()) {
+                    try {
+                        socket.close(); // unblocks handlers stuck in a read
+                    } catch (IOException e) {
+                        log.debug("Error closing connection during drain: {}", e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
             threadPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long remainingMillis(long deadlineNanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Starts the optional HTTP/JSON gateway. A failure to bind is logged and
+     * leaves the socket protocol running on its own.
+     */
+    private HttpGateway startHttpGateway(AuthService authService, EmailService emailService,
+            SessionManager sessionManager, RateLimiter rateLimiter, BoundedExecutor authExecutor) {
+        HttpGateway gateway = new HttpGateway(authService, emailService, sessionManager, rateLimiter, authExecutor);
+        try {
+            gateway.start(new InetSocketAddress(ServerConstants.HTTP_BIND_ADDRESS, ServerConstants.HTTP_PORT));
+            return gateway;
+        } catch (IOException e) {
+            LogHandler.error("HTTP gateway could not start: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the listening socket: plaintext by default, TLS when ENABLE_TLS is
+     * set, using the keystore described in {@code server/sslcertificate.md}.
+     */
+    private ServerSocket openServerSocket() throws IOException, GeneralSecurityException {
+        if (!ServerConstants.ENABLE_TLS) {
+            return new ServerSocket(PORT);
         }
+        return TlsUtils.createServerSocket(
+                TlsUtils.createServerContext(ServerConstants.KEYSTORE_PATH,
+                        ServerConstants.KEYSTORE_PASSWORD.toCharArray()),
+                PORT, ServerConstants.TLS_PROTOCOLS, ServerConstants.TLS_CIPHER_SUITES);
     }
 
     /**
-     * Periodically logs thread pool usage.
+     * Periodically logs thread pool, command executor and session usage.
      */
-    private void startMonitoring() {
+    private void startMonitoring(CommandHandler commandHandler, SessionManager sessionManager) {
         monitorService = Executors.newSingleThreadScheduledExecutor();
         monitorService.scheduleAtFixedRate(() -> {
             if (threadPool instanceof ThreadPoolExecutor executor) {
@@ -85,6 +225,17 @@ public class EmailServer {
                 LogHandler.info(
                         String.format("Thread Monitor — active=%d, queued=%d, pool=%d", active, queued, poolSize));
             }
+            for (ExecutorStats stats : commandHandler.executorStats()) {
+                log.info("[Monitor] Executor {}", stats);
+                LogHandler.info("Executor Monitor — " + stats);
+            }
+            for (RateLimitStats stats : commandHandler.rateLimitStats()) {
+                log.info("[Monitor] Rate limit {}", stats);
+                LogHandler.info("Rate Limit Monitor — " + stats);
+            }
+            SessionStats sessions = sessionManager.stats();
+            log.info("[Monitor] Sessions {}", sessions);
+            LogHandler.info("Session Monitor — " + sessions);
         }, 0, 10, TimeUnit.SECONDS);
     }
 
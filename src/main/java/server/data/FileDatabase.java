@@ -5,11 +5,15 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import lombok.extern.slf4j.Slf4j;
 import model.Email;
+import model.SyncResult;
 import model.User;
+import server.data.MailboxChangeLog.ChangeType;
+import utils.ServerConstants;
 
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -31,6 +35,14 @@ public class FileDatabase {
 
     private final Map<String, User> userMap = new ConcurrentHashMap<>();
     private final List<Email> emailList = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> emailPositions = new HashMap<>(); // id → index in emailList
+    private final Map<String, MailboxChangeLog> mailboxLogs = new HashMap<>(); // lower-case owner → history
+    private final MailboxWatchers watchers = new MailboxWatchers(ServerConstants.IDLE_MAX_WAITERS);
+
+    // Identifies this generation of change sequences; clients holding another epoch must resync.
+    // Carried over a clean restart through the sync state file, replaced otherwise.
+    private volatile String syncEpoch = UUID.randomUUID().toString();
+    private final Path syncStatePath;
 
     private final Gson gson = new GsonBuilder().create();
 
@@ -40,6 +52,7 @@ public class FileDatabase {
     public FileDatabase(String usersFilePath, String emailsFilePath) {
         this.usersPath = Paths.get(usersFilePath);
         this.emailsPath = Paths.get(emailsFilePath);
+        this.syncStatePath = emailsPath.resolveSibling(emailsPath.getFileName() + ".sync");
 
         try {
             ensureFileExists(usersPath);
@@ -56,9 +69,18 @@ public class FileDatabase {
         }
     }
 
+    /**
+     * Sync bookmarks persisted next to the email file on a clean shutdown.
+     * {@code emailCount} ties the state to the email file written with it.
+     */
+    private record SyncState(String epoch, int emailCount, Map<String, MailboxChangeLog.Snapshot> mailboxes) {
+    }
+
     /**
      * Saves all users and emails to disk using atomic file replacement.
      * This approach prevents partial writes and ensures file integrity.
+     * The mailbox change logs are saved alongside the emails so that clients'
+     * SYNC bookmarks stay valid across a restart.
      */
     public void saveAll() {
         synchronized (userLock) {
@@ -88,7 +110,71 @@ public class FileDatabase {
                 log.info("Email data saved successfully.");
             } catch (IOException e) {
                 log.error("Failed to save emails: {}", e.getMessage());
+                return;
             }
+            saveSyncState();
+        }
+    }
+
+    // Caller must hold emailLock
+    private void saveSyncState() {
+        Map<String, MailboxChangeLog.Snapshot> mailboxes = new HashMap<>();
+        mailboxLogs.forEach((owner, changeLog) -> mailboxes.put(owner, changeLog.snapshot()));
+        SyncState state = new SyncState(syncEpoch, emailList.size(), mailboxes);
+
+        Path tempSyncPath = syncStatePath.resolveSibling("." + syncStatePath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempSyncPath)) {
+            gson.toJson(state, writer);
+        } catch (IOException e) {
+            log.error("Failed to save sync state: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tempSyncPath, syncStatePath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            log.info("Sync state saved for {} mailboxes.", mailboxes.size());
+        } catch (IOException e) {
+            log.error("Failed to save sync state: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Restores the epoch and change logs saved by the previous clean shutdown.
+     * The file is consumed: after a crash there is none, and clients resync
+     * fully against a new epoch rather than trust logs that missed changes.
+     */
+    // Caller must hold emailLock
+    private void restoreSyncState() {
+        if (!Files.exists(syncStatePath)) {
+            return;
+        }
+        SyncState state;
+        try (BufferedReader reader = Files.newBufferedReader(syncStatePath)) {
+            state = gson.fromJson(reader, SyncState.class);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Discarded unreadable sync state: {}", e.getMessage());
+            state = null;
+        }
+        try {
+            Files.delete(syncStatePath);
+        } catch (IOException e) {
+            log.error("Failed to remove sync state, ignoring it: {}", e.getMessage());
+            return; // a stale file left behind must not be trusted after a later crash
+        }
+        if (state == null || state.epoch() == null || state.mailboxes() == null
+                || state.emailCount() != emailList.size()) {
+            log.warn("Sync state does not match the email file; clients will resync fully.");
+            return;
+        }
+        try {
+            Map<String, MailboxChangeLog> restored = new HashMap<>();
+            state.mailboxes().forEach((owner, snapshot) -> restored.put(owner,
+                    MailboxChangeLog.restore(ServerConstants.SYNC_HISTORY_LIMIT, snapshot)));
+            mailboxLogs.putAll(restored);
+            syncEpoch = state.epoch();
+            log.info("Sync state restored for {} mailboxes.", restored.size());
+        } catch (RuntimeException e) {
+            log.warn("Discarded inconsistent sync state: {}", e.getMessage());
         }
     }
 
@@ -117,8 +203,8 @@ public class FileDatabase {
                 while ((line = reader.readLine()) != null) {
                     try {
                         Email email = gson.fromJson(line, Email.class);
-                        if (email != null) {
-                            emailList.add(email);
+                        if (email != null && !appendEmail(email)) {
+                            log.warn("Skipped email entry with duplicate id {}", email.getId());
                         }
                     } catch (JsonSyntaxException e) {
                         log.warn("Skipped malformed email entry.");
@@ -127,6 +213,7 @@ public class FileDatabase {
             } catch (IOException e) {
                 log.error("Failed to load emails: {}", e.getMessage());
             }
+            restoreSyncState();
         }
     }
 
@@ -140,16 +227,181 @@ public class FileDatabase {
         }
     }
 
+    /**
+     * Replaces a user's stored password entry if it is still {@code expected},
+     * so a concurrent change is never overwritten with an older one.
+     *
+     * @return true if the entry was replaced
+     */
+    public boolean updateUserPassword(String email, String expected, String replacement) {
+        synchronized (userLock) {
+            User user = userMap.get(email);
+            if (user == null || !user.getPassword().equals(expected)) {
+                return false;
+            }
+            userMap.put(email, new User(email, replacement));
+            return true;
+        }
+    }
+
     public User getUser(String email) {
         synchronized (userLock) {
             return userMap.get(email);
         }
     }
 
+    /**
+     * Stores a new email and records it as added.
+     *
+     * @return false if an email with the same id is already stored
+     */
     public boolean saveEmail(Email email) {
         synchronized (emailLock) {
-            emailList.add(email);
-            return true;
+            if (!appendEmail(email)) {
+                log.warn("Refused email with duplicate id {}", email.getId());
+                return false;
+            }
+            recordChange(email, ChangeType.ADDED);
+        }
+        wakeWatchers(email);
+        return true;
+    }
+
+    /**
+     * Replaces a stored email (matched by id) with its updated version and
+     * records the change: HIDDEN if the email is no longer visible, else EDITED.
+     *
+     * @return false if no email with that id exists
+     */
+    public boolean updateEmail(Email email) {
+        synchronized (emailLock) {
+            Integer position = emailPositions.get(email.getId());
+            if (position == null) {
+                return false;
+            }
+            emailList.set(position, email);
+            recordChange(email, email.isVisible() ? ChangeType.EDITED : ChangeType.HIDDEN);
+        }
+        wakeWatchers(email);
+        return true;
+    }
+
+    /**
+     * Returns the changes to a user's mailbox since the given bookmark.
+     * <p>
+     * A full resync is signalled when the client has no bookmark, holds an
+     * epoch from another server generation, or asks for history that has
+     * already been compacted away.
+     *
+     * @param email mailbox owner
+     * @param epoch epoch returned by the client's previous SYNC, or null
+     * @param since sequence returned by the client's previous SYNC
+     */
+    public SyncResult getChangesSince(String email, String epoch, long since) {
+        synchronized (emailLock) {
+            MailboxChangeLog changeLog = mailboxLogs.get(email.toLowerCase());
+            long current = changeLog == null ? 0 : changeLog.currentSeq();
+            boolean covered = syncEpoch.equals(epoch)
+                    && (changeLog == null ? since == 0 : changeLog.covers(since));
+            SyncResult result = new SyncResult(syncEpoch, current, !covered);
+            if (!covered || changeLog == null) {
+                return result;
+            }
+
+            changeLog.changesSince(since).forEach((id, type) -> {
+                if (type == ChangeType.HIDDEN) {
+                    result.getHidden().add(id);
+                    return;
+                }
+                Email changed = emailList.get(emailPositions.get(id));
+                (type == ChangeType.ADDED ? result.getAdded() : result.getEdited()).add(changed);
+            });
+            return result;
+        }
+    }
+
+    /**
+     * Returns an opaque version of a user's mailbox (sent and received) that
+     * changes whenever an email in it is added, edited or hidden.
+     * <p>
+     * Built from the sync epoch and the mailbox's change sequence, so it costs
+     * a map lookup rather than a scan.
+     */
+    public String getMailboxVersion(String email) {
+        synchronized (emailLock) {
+            MailboxChangeLog changeLog = mailboxLogs.get(email.toLowerCase());
+            return syncEpoch + ":" + (changeLog == null ? 0 : changeLog.currentSeq());
+        }
+    }
+
+    /**
+     * Waits for a user's mailbox to move past the given bookmark.
+     * <p>
+     * Completes at once (with true) if it already has, or if the bookmark is
+     * from another epoch; otherwise parks a waiter that the next change to the
+     * mailbox completes. Checking and parking happen under the email lock,
+     * which every change is recorded under, so no change can slip in between.
+     *
+     * @param email     mailbox owner
+     * @param epoch     epoch of the client's bookmark
+     * @param since     sequence of the client's bookmark
+     * @param timeoutMs how long to wait before completing with false
+     * @return the wait, or null if too many clients are waiting already
+     */
+    public CompletableFuture<Boolean> awaitChange(String email, String epoch, long since, long timeoutMs) {
+        String owner = email.toLowerCase();
+        synchronized (emailLock) {
+            MailboxChangeLog changeLog = mailboxLogs.get(owner);
+            long current = changeLog == null ? 0 : changeLog.currentSeq();
+            if (!syncEpoch.equals(epoch) || current != since) {
+                return CompletableFuture.completedFuture(true);
+            }
+            return watchers.park(owner, timeoutMs);
+        }
+    }
+
+    /**
+     * @return number of clients waiting in IDLE
+     */
+    public int getWatcherCount() {
+        return watchers.size();
+    }
+
+    public String getSyncEpoch() {
+        return syncEpoch;
+    }
+
+    // Caller must hold emailLock. An existing id is never replaced: the first email keeps it.
+    private boolean appendEmail(Email email) {
+        if (email.getId() != null && emailPositions.putIfAbsent(email.getId(), emailList.size()) != null) {
+            return false;
+        }
+        emailList.add(email);
+        return true;
+    }
+
+    // Called after releasing emailLock, so woken waiters never run under it
+    private void wakeWatchers(Email email) {
+        if (email.getTo() != null) {
+            watchers.signal(email.getTo().toLowerCase());
+        }
+        if (email.getFrom() != null && !email.getFrom().equalsIgnoreCase(email.getTo())) {
+            watchers.signal(email.getFrom().toLowerCase());
+        }
+    }
+
+    // Caller must hold emailLock. Sender and recipient mailboxes both change.
+    private void recordChange(Email email, ChangeType type) {
+        for (String owner : new String[] { email.getTo(), email.getFrom() }) {
+            if (owner == null) {
+                continue;
+            }
+            mailboxLogs.computeIfAbsent(owner.toLowerCase(),
+                    key -> new MailboxChangeLog(ServerConstants.SYNC_HISTORY_LIMIT))
+                    .record(email.getId(), type);
+            if (owner.equalsIgnoreCase(email.getFrom()) && owner.equalsIgnoreCase(email.getTo())) {
+                break; // email to self: one mailbox, one change
+            }
         }
     }
 
@@ -167,14 +419,41 @@ public class FileDatabase {
         }
     }
 
-    public Email getEmailById(String emailId) {
+    /**
+     * Collects one page of a user's mailbox, newest first.
+     * <p>
+     * Emails are only ever appended to {@code emailList}, so a position in the
+     * list is a stable bookmark: new mail lands above the position and never
+     * shifts the entries a client has not fetched yet.
+     *
+     * @param email        mailbox owner
+     * @param sent         true for the sent mailbox, false for received
+     * @param fromPosition list position to scan downwards from (inclusive)
+     * @param limit        maximum number of emails to collect
+     * @param page         receives the matching emails
+     * @return position of the next matching email, or -1 if the mailbox is exhausted
+     */
+    public int collectEmailsForUser(String email, boolean sent, int fromPosition, int limit, List<Email> page) {
         synchronized (emailLock) {
-            for (Email email : emailList) {
-                if (email.getId().equals(emailId)) {
-                    return email;
+            for (int i = Math.min(fromPosition, emailList.size() - 1); i >= 0; i--) {
+                Email e = emailList.get(i);
+                boolean matches = sent ? e.getFrom().equalsIgnoreCase(email) : e.getTo().equalsIgnoreCase(email);
+                if (!matches) {
+                    continue;
+                }
+                if (page.size() == limit) {
+                    return i;
                 }
+                page.add(e);
             }
-            return null;
+            return -1;
+        }
+    }
+
+    public Email getEmailById(String emailId) {
+        synchronized (emailLock) {
+            Integer position = emailPositions.get(emailId);
+            return position == null ? null : emailList.get(position);
         }
     }
 
@@ -216,9 +495,7 @@ public class FileDatabase {
     }
 
     public void addEmail(Email email) {
-        synchronized (emailLock) {
-            emailList.add(email);
-        }
+        saveEmail(email);
     }
 
     public List<Email> getReceivedEmails(String email) {
@@ -0,0 +1,133 @@
+package server.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded history of changes to one user's mailbox.
+ * <p>
+ * Every change gets the next value of a per-mailbox, monotonically increasing
+ * sequence number. Only the most recent {@code capacity} changes are kept; the
+ * sequence of the newest dropped entry becomes the {@code floor}, below which
+ * a client can no longer be served a delta and must resynchronise fully.
+ * <p>
+ * Not thread-safe on its own: {@link FileDatabase} only touches it while
+ * holding its email lock.
+ */
+public class MailboxChangeLog {
+
+    /** Kind of change recorded for an email. */
+    public enum ChangeType {
+        ADDED, EDITED, HIDDEN
+    }
+
+    private record Change(long seq, String emailId, ChangeType type) {
+    }
+
+    /**
+     * Serialisable copy of a log. Retained changes carry consecutive sequence
+     * numbers starting at {@code floor + 1}, so only their ids and types are kept.
+     */
+    public record Snapshot(long seq, long floor, List<String> emailIds, List<ChangeType> types) {
+    }
+
+    private final int capacity;
+    private final Deque<Change> changes = new ArrayDeque<>();
+    private long seq;
+    private long floor;
+
+    public MailboxChangeLog(int capacity) {
+        this(capacity, 0);
+    }
+
+    public MailboxChangeLog(int capacity, long startSeq) {
+        this.capacity = capacity;
+        this.seq = startSeq;
+        this.floor = startSeq;
+    }
+
+    /**
+     * Records a change and returns its sequence number.
+     */
+    public long record(String emailId, ChangeType type) {
+        seq++;
+        changes.addLast(new Change(seq, emailId, type));
+        if (changes.size() > capacity) {
+            floor = changes.removeFirst().seq();
+        }
+        return seq;
+    }
+
+    /**
+     * @return a copy of this log for persisting across restarts
+     */
+    public Snapshot snapshot() {
+        List<String> ids = new ArrayList<>(changes.size());
+        List<ChangeType> types = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            ids.add(change.emailId());
+            types.add(change.type());
+        }
+        return new Snapshot(seq, floor, ids, types);
+    }
+
+    /**
+     * Rebuilds a log from a snapshot, dropping the oldest changes if the
+     * snapshot holds more than {@code capacity}.
+     */
+    public static MailboxChangeLog restore(int capacity, Snapshot snapshot) {
+        MailboxChangeLog log = new MailboxChangeLog(capacity, snapshot.floor());
+        for (int i = 0; i < snapshot.emailIds().size(); i++) {
+            log.record(snapshot.emailIds().get(i), snapshot.types().get(i));
+        }
+        if (log.seq != snapshot.seq()) {
+            throw new IllegalArgumentException("Snapshot sequence " + snapshot.seq()
+                    + " does not match its changes");
+        }
+        return log;
+    }
+
+    public long currentSeq() {
+        return seq;
+    }
+
+    /**
+     * @return true if every change after {@code since} is still retained
+     */
+    public boolean covers(long since) {
+        return since >= floor && since <= seq;
+    }
+
+    /**
+     * Collapses the changes after {@code since} into one entry per email.
+     * An email that was added and later edited is still reported as added,
+     * since the client has never seen it.
+     *
+     * @return email id → latest effective change, in first-change order
+     */
+    public Map<String, ChangeType> changesSince(long since) {
+        Map<String, ChangeType> merged = new LinkedHashMap<>();
+        Iterator<Change> newestFirst = changes.descendingIterator();
+        Deque<Change> pending = new ArrayDeque<>();
+        while (newestFirst.hasNext()) {
+            Change change = newestFirst.next();
+            if (change.seq() <= since) {
+                break;
+            }
+            pending.addFirst(change);
+        }
+        for (Change change : pending) {
+            ChangeType previous = merged.get(change.emailId());
+            if (previous == ChangeType.ADDED && change.type() == ChangeType.EDITED) {
+                continue;
+            }
+            merged.put(change.emailId(), change.type());
+        }
+        return merged;
+    }
+}
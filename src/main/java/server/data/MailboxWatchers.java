@@ -0,0 +1,78 @@
+package server.data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clients parked in IDLE, waiting for their mailbox to change.
+ * <p>
+ * A waiter is just a {@link CompletableFuture}, so parking holds no thread:
+ * the future is completed by whichever thread records the next change to the
+ * mailbox, or by the JDK's shared delay scheduler once the timeout elapses,
+ * or cancelled by its connection. Either way the waiter is removed, so
+ * abandoned waits do not accumulate.
+ */
+public class MailboxWatchers {
+
+    private final Map<String, List<CompletableFuture<Boolean>>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger parked = new AtomicInteger();
+    private final int maxWaiters;
+
+    public MailboxWatchers(int maxWaiters) {
+        this.maxWaiters = maxWaiters;
+    }
+
+    /**
+     * Parks a waiter on a mailbox.
+     *
+     * @param owner     lower-case mailbox owner
+     * @param timeoutMs how long to wait for a change
+     * @return future completed with true on a change, false on timeout, or
+     *         null if too many waiters are parked already
+     */
+    public CompletableFuture<Boolean> park(String owner, long timeoutMs) {
+        if (parked.incrementAndGet() > maxWaiters) {
+            parked.decrementAndGet();
+            return null;
+        }
+        CompletableFuture<Boolean> waiter = new CompletableFuture<>();
+        // Added inside compute: a list emptied and removed by a waiter timing out
+        // concurrently must never receive the new waiter, or signal() would miss it
+        waiters.compute(owner, (key, list) -> {
+            List<CompletableFuture<Boolean>> parkedOnOwner = list != null ? list : new CopyOnWriteArrayList<>();
+            parkedOnOwner.add(waiter);
+            return parkedOnOwner;
+        });
+        waiter.whenComplete((changed, error) -> {
+            parked.decrementAndGet();
+            waiters.computeIfPresent(owner, (key, list) -> {
+                list.remove(waiter);
+                return list.isEmpty() ? null : list;
+            });
+        });
+        waiter.completeOnTimeout(false, timeoutMs, TimeUnit.MILLISECONDS);
+        return waiter;
+    }
+
+    /**
+     * Wakes every waiter parked on a mailbox.
+     */
+    public void signal(String owner) {
+        List<CompletableFuture<Boolean>> parkedOnOwner = waiters.get(owner);
+        if (parkedOnOwner != null) {
+            parkedOnOwner.forEach(waiter -> waiter.complete(true));
+        }
+    }
+
+    /**
+     * @return number of waiters currently parked
+     */
+    public int size() {
+        return parked.get();
+    }
+}
@@ -0,0 +1,112 @@
+package server.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.extern.slf4j.Slf4j;
+import utils.LogHandler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps sessions across a clean restart, so clients resume with their token
+ * instead of logging in again, and the server is not met by a wave of
+ * password hashes the moment it comes back.
+ * <p>
+ * Like the sync state, the file is written on shutdown and consumed on
+ * startup: after a crash there is none and everyone logs in again, rather
+ * than reviving sessions that may have been ended since. Each line is one
+ * session as JSON. Tokens themselves are never written, only their digests,
+ * which are enough to recognise a token when a client presents it again.
+ */
+@Slf4j
+public class SessionStore {
+
+    /**
+     * One saved session.
+     *
+     * @param tokenDigest            {@link utils.SecurityUtils#digestToken(String)} of the session token
+     * @param deviceId               device of a connection session, null for a token-only session
+     * @param absoluteDeadlineMillis time after which the session expires regardless of activity
+     */
+    public record StoredSession(String tokenDigest, String email, String deviceId, long absoluteDeadlineMillis) {
+    }
+
+    private final Path path;
+    private final Gson gson = new GsonBuilder().create();
+
+    public SessionStore(String filePath) {
+        this.path = Paths.get(filePath);
+    }
+
+    /**
+     * Replaces the stored sessions using atomic file replacement.
+     */
+    public void save(Collection<StoredSession> sessions) {
+        Path tempPath = path.resolveSibling("." + path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(tempPath)) {
+                for (StoredSession session : sessions) {
+                    writer.write(gson.toJson(session));
+                    writer.newLine();
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("{} sessions saved for resumption.", sessions.size());
+            LogHandler.info(sessions.size() + " sessions saved for resumption");
+        } catch (IOException e) {
+            log.error("Failed to save sessions: {}", e.getMessage());
+            LogHandler.error("Failed to save sessions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the sessions saved by the previous clean shutdown and removes the
+     * file. Unreadable lines are skipped.
+     *
+     * @return the saved sessions, or an empty list if there are none
+     */
+    public List<StoredSession> load() {
+        List<StoredSession> sessions = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return sessions;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    StoredSession session = gson.fromJson(line, StoredSession.class);
+                    if (session != null && session.tokenDigest() != null && session.email() != null) {
+                        sessions.add(session);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Skipped unreadable session line: {}", e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Discarded unreadable session file: {}", e.getMessage());
+            sessions.clear();
+        }
+        try {
+            Files.delete(path);
+        } catch (IOException e) {
+            log.error("Failed to remove session file, ignoring it: {}", e.getMessage());
+            LogHandler.error("Failed to remove session file, ignoring it: " + e.getMessage());
+            return new ArrayList<>(); // a stale file left behind must not be trusted after a later crash
+        }
+        log.info("{} sessions loaded for resumption.", sessions.size());
+        return sessions;
+    }
+}
@@ -0,0 +1,166 @@
+package server.dispatch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named executor with a hard limit on accepted-but-unfinished tasks and its
+ * own counters.
+ * <p>
+ * A task is accepted only while fewer than {@code maxInFlight} tasks are
+ * queued or running; beyond that {@link #submit(Runnable)} rejects at once
+ * instead of letting the queue grow, so one saturated command class cannot
+ * hold every connection thread hostage. The inline variant runs tasks on the
+ * caller's thread and only records metrics.
+ */
+public final class BoundedExecutor {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final String name;
+    private final ExecutorService delegate; // null runs inline
+    private final int maxInFlight;
+    private final Semaphore permits;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+
+    private BoundedExecutor(String name, ExecutorService delegate, int maxInFlight) {
+        this.name = name;
+        this.delegate = delegate;
+        this.maxInFlight = maxInFlight;
+        this.permits = delegate != null ? new Semaphore(maxInFlight) : null;
+    }
+
+    /**
+     * Runs every task on the submitting thread.
+     */
+    public static BoundedExecutor inline(String name) {
+        return new BoundedExecutor(name, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Fixed pool of {@code threads} daemon workers accepting at most
+     * {@code maxQueued} waiting tasks.
+     */
+    public static BoundedExecutor fixed(String name, int threads, int maxQueued) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new BoundedExecutor(name, Executors.newFixedThreadPool(threads, factory), threads + maxQueued);
+    }
+
+    /**
+     * Work-stealing pool of the given parallelism accepting at most
+     * {@code maxQueued} waiting tasks.
+     */
+    public static BoundedExecutor forkJoin(String name, int parallelism, int maxQueued) {
+        return new BoundedExecutor(name, new ForkJoinPool(parallelism), parallelism + maxQueued);
+    }
+
+    /**
+     * Submits a task.
+     *
+     * @return future completed when the task has run
+     * @throws RejectedExecutionException if the executor is saturated or shut down
+     */
+    public CompletableFuture<Void> submit(Runnable task) {
+        long submittedAt = System.nanoTime();
+        if (delegate == null) {
+            run(task, submittedAt);
+            return DONE;
+        }
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException(name + " executor is saturated");
+        }
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    run(task, submittedAt);
+                } finally {
+                    permits.release();
+                }
+            }, delegate);
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task, long submittedAt) {
+        long startedAt = System.nanoTime();
+        queueNanos.add(startedAt - submittedAt);
+        active.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            active.decrementAndGet();
+            completed.increment();
+            runNanos.add(System.nanoTime() - startedAt);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return point-in-time counters of this executor
+     */
+    public ExecutorStats stats() {
+        int running = active.get();
+        int queued = permits != null ? Math.max(0, maxInFlight - permits.availablePermits() - running) : 0;
+        long done = completed.sum();
+        return new ExecutorStats(name, running, queued, done, rejected.sum(),
+                done == 0 ? 0 : queueNanos.sum() / done / 1_000_000.0,
+                done == 0 ? 0 : runNanos.sum() / done / 1_000_000.0);
+    }
+
+    /**
+     * Stops accepting tasks and waits for queued and running ones, without
+     * interrupting them.
+     *
+     * @return true if every accepted task finished within the timeout
+     */
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        if (delegate == null) {
+            return true;
+        }
+        delegate.shutdown();
+        return delegate.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting tasks and waits briefly for running ones.
+     */
+    public void shutdown() {
+        if (delegate == null) {
+            return;
+        }
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(1, TimeUnit.SECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package server.dispatch;
+
+import utils.ServerConstants;
+
+/**
+ * The executors commands are routed to.
+ *
+ * @param auth   password hashing (REGISTER, LOGIN)
+ * @param search mailbox scans (SEARCH_EMAIL)
+ * @param idle   IDLE answers, written once a parked wait completes
+ * @param inline cheap reads and session bookkeeping, run on the connection thread
+ */
+public record CommandExecutors(BoundedExecutor auth, BoundedExecutor search, BoundedExecutor idle,
+        BoundedExecutor inline) {
+
+    /**
+     * Runs everything on the calling thread; used by tests and tools that
+     * drive a handler directly.
+     */
+    public static CommandExecutors inlineOnly() {
+        BoundedExecutor inline = BoundedExecutor.inline("inline");
+        return new CommandExecutors(inline, inline, inline, inline);
+    }
+
+    /**
+     * Server configuration sized from {@link ServerConstants}.
+     */
+    public static CommandExecutors pooled() {
+        return new CommandExecutors(
+                BoundedExecutor.fixed("auth", ServerConstants.AUTH_POOL_THREADS, ServerConstants.AUTH_QUEUE_LIMIT),
+                BoundedExecutor.forkJoin("search", ServerConstants.SEARCH_PARALLELISM,
+                        ServerConstants.SEARCH_QUEUE_LIMIT),
+                BoundedExecutor.fixed("idle", ServerConstants.IDLE_ANSWER_THREADS, ServerConstants.IDLE_ANSWER_QUEUE_LIMIT),
+                BoundedExecutor.inline("inline"));
+    }
+}
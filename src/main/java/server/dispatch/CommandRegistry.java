@@ -0,0 +1,74 @@
+package server.dispatch;
+
+import server.protocol.Request;
+import server.service.ConnectionContext;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps protocol verbs to their handler and the executor they run on.
+ * <p>
+ * Routes are registered once while the owning handler is constructed and only
+ * read afterwards.
+ */
+public class CommandRegistry {
+
+    /**
+     * Executes one decoded command and writes its response.
+     */
+    @FunctionalInterface
+    public interface CommandAction {
+        /**
+         * @param connection the connection the command arrived on, carrying its session
+         */
+        void execute(Request request, ConnectionContext connection, PrintWriter out) throws Exception;
+    }
+
+    /**
+     * @param detached true if the connection may read its next command before
+     *                 this one finishes; only for commands whose outcome later
+     *                 commands cannot depend on
+     */
+    public record Route(String command, CommandAction action, BoundedExecutor executor, boolean detached) {
+    }
+
+    private final Map<String, Route> routes = new HashMap<>();
+
+    /**
+     * Registers a command that completes before its connection reads the next one.
+     */
+    public CommandRegistry register(String command, BoundedExecutor executor, CommandAction action) {
+        routes.put(command, new Route(command, action, executor, false));
+        return this;
+    }
+
+    /**
+     * Registers a read-only command whose response may overtake or trail the
+     * responses of later commands on the same connection.
+     */
+    public CommandRegistry registerDetached(String command, BoundedExecutor executor, CommandAction action) {
+        routes.put(command, new Route(command, action, executor, true));
+        return this;
+    }
+
+    /**
+     * @return the route of {@code command}, or null if it is unknown
+     */
+    public Route route(String command) {
+        return routes.get(command);
+    }
+
+    /**
+     * @return every executor used by a route, each once
+     */
+    public Collection<BoundedExecutor> executors() {
+        Set<BoundedExecutor> executors = new LinkedHashSet<>();
+        routes.values().forEach(route -> executors.add(route.executor()));
+        return executors;
+    }
+}
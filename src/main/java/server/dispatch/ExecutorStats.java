@@ -0,0 +1,21 @@
+package server.dispatch;
+
+/**
+ * Snapshot of a {@link BoundedExecutor}'s counters.
+ *
+ * @param active        tasks running now
+ * @param queued        tasks accepted but not yet started
+ * @param completed     tasks finished since start
+ * @param rejected      tasks refused because the executor was saturated
+ * @param avgQueueMillis mean time a task waited before starting
+ * @param avgRunMillis  mean task run time
+ */
+public record ExecutorStats(String name, int active, int queued, long completed, long rejected,
+        double avgQueueMillis, double avgRunMillis) {
+
+    @Override
+    public String toString() {
+        return String.format("%s: active=%d, queued=%d, completed=%d, rejected=%d, avgQueue=%.2fms, avgRun=%.2fms",
+                name, active, queued, completed, rejected, avgQueueMillis, avgRunMillis);
+    }
+}
@@ -0,0 +1,71 @@
+package server.dispatch;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops idle entries from a map of per-key state once it grows past a
+ * threshold, at most once per interval.
+ * <p>
+ * Callers ask on every update, but a sweep walks the whole map, so running it
+ * on each call above the threshold would make every request O(n) exactly when
+ * a flood of new keys arrives. Instead the caller that wins a compare-and-set
+ * on the next sweep time does the sweep and the others carry on; the map can
+ * overshoot the threshold by at most one interval's worth of new keys.
+ *
+ * @param <V> per-key state
+ */
+public final class IdleSweeper<V> {
+
+    /** Decides whether an entry can be dropped. */
+    @FunctionalInterface
+    public interface IdleCheck<V> {
+        boolean isIdle(V value, long nowNanos);
+    }
+
+    private final Map<?, V> entries;
+    private final int threshold;
+    private final long intervalNanos;
+    private final IdleCheck<? super V> idle;
+    private final AtomicLong nextSweepAt;
+    private final LongAdder sweeps = new LongAdder();
+
+    /**
+     * @param entries       map to sweep; must allow removal while other threads update it
+     * @param threshold     size above which idle entries are dropped
+     * @param intervalNanos shortest time between two sweeps
+     * @param startNanos    current time; the first sweep may run at once
+     */
+    public IdleSweeper(Map<?, V> entries, int threshold, long intervalNanos, long startNanos,
+            IdleCheck<? super V> idle) {
+        this.entries = entries;
+        this.threshold = threshold;
+        this.intervalNanos = intervalNanos;
+        this.idle = idle;
+        this.nextSweepAt = new AtomicLong(startNanos);
+    }
+
+    /**
+     * Sweeps if the map is above its threshold and no sweep ran within the
+     * interval.
+     *
+     * @return true if this call swept
+     */
+    public boolean sweepIfDue(long nowNanos) {
+        if (entries.size() <= threshold) {
+            return false;
+        }
+        long due = nextSweepAt.get();
+        if (nowNanos - due < 0 || !nextSweepAt.compareAndSet(due, nowNanos + intervalNanos)) {
+            return false;
+        }
+        entries.values().removeIf(value -> idle.isIdle(value, nowNanos));
+        sweeps.increment();
+        return true;
+    }
+
+    public long getSweepCount() {
+        return sweeps.sum();
+    }
+}
@@ -0,0 +1,160 @@
+package server.dispatch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Locks out an account or a client address after too many failed logins.
+ * <p>
+ * Failures are counted per account and per address in a
+ * {@link SlidingWindowCounter}. Once a key reaches its threshold within the
+ * window, every further failure locks it for twice as long as the last,
+ * starting at {@code baseLockoutMillis} and capped at {@code maxLockoutMillis}.
+ * Callers check {@link #lockedForMillis} before verifying a password, so a
+ * locked-out attempt costs no hashing; such attempts are not counted as
+ * failures, which would extend the lockout of the real owner indefinitely.
+ * A successful login clears the account's record but not the address's.
+ */
+public class LoginThrottle {
+
+    /**
+     * @param windowMillis      how far back failures are counted
+     * @param accountThreshold  failures per account before lockouts start
+     * @param addressThreshold  failures per client address before lockouts start
+     * @param baseLockoutMillis first lockout
+     * @param maxLockoutMillis  longest lockout
+     */
+    public record Policy(long windowMillis, int accountThreshold, int addressThreshold,
+            long baseLockoutMillis, long maxLockoutMillis) {
+    }
+
+    private static final int WINDOW_BUCKETS = 15;
+    private static final int SWEEP_THRESHOLD = 10_000; // keys kept before idle ones are dropped
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Policy policy;
+    private final LongSupplier clock;
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final IdleSweeper<Tracker> sweeper;
+
+    public LoginThrottle(Policy policy) {
+        this(policy, System::nanoTime);
+    }
+
+    public LoginThrottle(Policy policy, LongSupplier clock) {
+        this.policy = policy;
+        this.clock = clock;
+        this.sweeper = new IdleSweeper<>(trackers, SWEEP_THRESHOLD, SWEEP_INTERVAL_NANOS, clock.getAsLong(),
+                Tracker::isIdle);
+    }
+
+    /**
+     * A throttle that never locks anything out.
+     */
+    public static LoginThrottle disabled() {
+        return new LoginThrottle(new Policy(1, Integer.MAX_VALUE, Integer.MAX_VALUE, 0, 0));
+    }
+
+    /**
+     * Checks whether a login attempt may be verified, and counts it as
+     * rejected if not.
+     *
+     * @param address client address, or null if unknown
+     * @return 0 if the attempt may proceed, otherwise milliseconds until it may be retried
+     */
+    public long lockedForMillis(String account, String address) {
+        long now = clock.getAsLong();
+        long wait = Math.max(remaining(accountKey(account), now), remaining(addressKey(address), now));
+        if (wait > 0) {
+            rejected.increment();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(wait + 999_999);
+    }
+
+    /**
+     * Records a failed login.
+     *
+     * @return milliseconds the account or address is now locked for, 0 if neither is
+     */
+    public long recordFailure(String account, String address) {
+        long now = clock.getAsLong();
+        failures.increment();
+        sweeper.sweepIfDue(now);
+        long lockout = 0;
+        if (account != null) {
+            lockout = tracker(accountKey(account), now).fail(now, policy.accountThreshold());
+        }
+        if (address != null) {
+            lockout = Math.max(lockout, tracker(addressKey(address), now).fail(now, policy.addressThreshold()));
+        }
+        return TimeUnit.NANOSECONDS.toMillis(lockout);
+    }
+
+    /**
+     * Forgets an account's failures after a successful login.
+     */
+    public void recordSuccess(String account) {
+        if (account != null) {
+            trackers.remove(accountKey(account));
+        }
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private long remaining(String key, long now) {
+        Tracker tracker = key == null ? null : trackers.get(key);
+        return tracker == null ? 0 : Math.max(0, tracker.lockedUntil.get() - now);
+    }
+
+    private Tracker tracker(String key, long now) {
+        return trackers.computeIfAbsent(key, k -> new Tracker(now));
+    }
+
+    private static String accountKey(String account) {
+        return account == null ? null : "account:" + account.toLowerCase();
+    }
+
+    private static String addressKey(String address) {
+        return address == null ? null : "ip:" + address;
+    }
+
+    /** Failure window and lockout deadline of one account or address. */
+    private final class Tracker {
+        private final SlidingWindowCounter window = new SlidingWindowCounter(
+                TimeUnit.MILLISECONDS.toNanos(policy.windowMillis()), WINDOW_BUCKETS);
+        private final AtomicLong lockedUntil;
+
+        Tracker(long now) {
+            this.lockedUntil = new AtomicLong(now); // not locked
+        }
+
+        // Returns the lockout this failure caused, in nanoseconds
+        long fail(long now, int threshold) {
+            int count = window.increment(now);
+            if (count < threshold) {
+                return 0;
+            }
+            int doublings = Math.min(30, count - threshold);
+            long lockout = TimeUnit.MILLISECONDS.toNanos(
+                    Math.min(policy.maxLockoutMillis(), policy.baseLockoutMillis() << doublings));
+            lockedUntil.accumulateAndGet(now + lockout, Math::max);
+            return lockout;
+        }
+
+        boolean isIdle(long now) {
+            return lockedUntil.get() - now <= 0 && window.sum(now) == 0;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package server.dispatch;
+
+/**
+ * Snapshot of a {@link RateLimiter}'s decisions for one command.
+ *
+ * @param allowed requests that got a token
+ * @param limited requests answered with RATE_LIMITED
+ */
+public record RateLimitStats(String command, long allowed, long limited) {
+
+    @Override
+    public String toString() {
+        return String.format("%s: allowed=%d, limited=%d", command, allowed, limited);
+    }
+}
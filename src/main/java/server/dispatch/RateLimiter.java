@@ -0,0 +1,154 @@
+package server.dispatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-command request limits, enforced with one {@link TokenBucket} per
+ * command and caller.
+ * <p>
+ * A request is checked against the bucket of the user logged in on the
+ * connection, if any, and against the bucket of its client address; a token
+ * is only spent when both allow the request.
+ * Address buckets are {@code ipMultiplier} times larger so that several users
+ * behind one NAT do not share a single user's allowance. Commands without a
+ * configured limit are never limited.
+ */
+public class RateLimiter {
+
+    /**
+     * @param capacity        burst size
+     * @param tokensPerSecond sustained rate
+     */
+    public record Limit(int capacity, double tokensPerSecond) {
+    }
+
+    private static final int SWEEP_THRESHOLD = 10_000; // buckets kept before idle ones are dropped
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, Limit> limits;
+    private final Map<String, Limit> ipLimits = new HashMap<>();
+    private final LongSupplier clock;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> allowed = new HashMap<>();
+    private final Map<String, LongAdder> limited = new HashMap<>();
+    private final IdleSweeper<TokenBucket> sweeper;
+
+    public RateLimiter(Map<String, Limit> limits, int ipMultiplier) {
+        this(limits, ipMultiplier, System::nanoTime);
+    }
+
+    public RateLimiter(Map<String, Limit> limits, int ipMultiplier, LongSupplier clock) {
+        this.limits = Map.copyOf(limits);
+        this.clock = clock;
+        this.sweeper = new IdleSweeper<>(buckets, SWEEP_THRESHOLD, SWEEP_INTERVAL_NANOS, clock.getAsLong(),
+                TokenBucket::isFull);
+        this.limits.forEach((command, limit) -> ipLimits.put(command,
+                new Limit(limit.capacity() * ipMultiplier, limit.tokensPerSecond() * ipMultiplier)));
+        for (String command : this.limits.keySet()) {
+            allowed.put(command, new LongAdder());
+            limited.put(command, new LongAdder());
+        }
+    }
+
+    /**
+     * A limiter that allows everything.
+     */
+    public static RateLimiter unlimited() {
+        return new RateLimiter(Map.of(), 1);
+    }
+
+    /**
+     * Parses limits written as {@code COMMAND=capacity/perSecond,...}, e.g.
+     * {@code SEARCH_EMAIL=10/2,LOGIN=5/0.2}.
+     *
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public static Map<String, Limit> parseLimits(String spec) {
+        Map<String, Limit> parsed = new HashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return parsed;
+        }
+        for (String entry : spec.split(",")) {
+            String[] commandAndLimit = entry.trim().split("=");
+            String[] capacityAndRate = commandAndLimit.length == 2 ? commandAndLimit[1].split("/") : new String[0];
+            if (capacityAndRate.length != 2) {
+                throw new IllegalArgumentException("Invalid rate limit entry: " + entry);
+            }
+            try {
+                parsed.put(commandAndLimit[0].trim(), new Limit(Integer.parseInt(capacityAndRate[0].trim()),
+                        Double.parseDouble(capacityAndRate[1].trim())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rate limit entry: " + entry, e);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * @return true if {@code command} has a configured limit
+     */
+    public boolean isLimited(String command) {
+        return limits.containsKey(command);
+    }
+
+    /**
+     * Takes a token for one request.
+     *
+     * @param command       protocol verb
+     * @param user          user logged in on the connection, or null
+     * @param clientAddress remote address of the connection, or null
+     * @return 0 if the request may proceed, otherwise milliseconds until it may be retried
+     */
+    public long acquire(String command, String user, String clientAddress) {
+        Limit limit = limits.get(command);
+        if (limit == null) {
+            return 0;
+        }
+        long now = clock.getAsLong();
+        sweeper.sweepIfDue(now);
+
+        TokenBucket userBucket = user != null ? bucket(command + "|user:" + user.toLowerCase(), limit, now) : null;
+        long waitNanos = userBucket != null ? userBucket.tryAcquire(now) : 0;
+        if (waitNanos == 0) {
+            waitNanos = bucket(command + "|ip:" + clientAddress, ipLimits.get(command), now).tryAcquire(now);
+            if (waitNanos > 0 && userBucket != null) {
+                userBucket.refund(); // refused by the address bucket, so the user's token was not spent
+            }
+        }
+
+        if (waitNanos == 0) {
+            allowed.get(command).increment();
+            return 0;
+        }
+        limited.get(command).increment();
+        return Math.max(1, (waitNanos + 999_999) / 1_000_000);
+    }
+
+    private TokenBucket bucket(String key, Limit limit, long now) {
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(limit.capacity(), limit.tokensPerSecond(), now));
+    }
+
+    /**
+     * @return buckets currently kept, across all commands and callers
+     */
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    /**
+     * @return decision counters of every limited command
+     */
+    public List<RateLimitStats> stats() {
+        List<RateLimitStats> stats = new ArrayList<>();
+        limits.keySet().stream().sorted().forEach(command -> stats.add(
+                new RateLimitStats(command, allowed.get(command).sum(), limited.get(command).sum())));
+        return stats;
+    }
+}
@@ -0,0 +1,81 @@
+package server.dispatch;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free count of events in a sliding time window.
+ * <p>
+ * The window is split into {@code buckets} slots of equal length, used as a
+ * ring. Each slot is one {@code long} holding the slot's time index in its
+ * high bits and its count in the low bits, so recording an event is a single
+ * compare-and-set and a slot left over from an earlier lap is recognised and
+ * restarted in the same step. The sum is exact up to one slot's length at the
+ * window's trailing edge.
+ */
+public final class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long INDEX_MASK = (1L << (Long.SIZE - COUNT_BITS)) - 1;
+
+    private final long slotNanos;
+    private final AtomicLongArray slots;
+
+    /**
+     * @param windowNanos length of the window
+     * @param buckets     slots it is divided into; more slots, sharper trailing edge
+     */
+    public SlidingWindowCounter(long windowNanos, int buckets) {
+        if (windowNanos <= 0 || buckets < 1) {
+            throw new IllegalArgumentException("Window and bucket count must be positive");
+        }
+        this.slotNanos = Math.max(1, windowNanos / buckets);
+        this.slots = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * Records one event.
+     *
+     * @return events in the window, including this one
+     */
+    public int increment(long nowNanos) {
+        long index = slotIndex(nowNanos);
+        int slot = (int) Math.floorMod(index, (long) slots.length());
+        while (true) {
+            long current = slots.get(slot);
+            long count = (current >>> COUNT_BITS) == index ? current & COUNT_MASK : 0;
+            long next = (index << COUNT_BITS) | Math.min(COUNT_MASK, count + 1);
+            if (slots.compareAndSet(slot, current, next)) {
+                break;
+            }
+        }
+        return sum(nowNanos);
+    }
+
+    /**
+     * @return events in the window ending at {@code nowNanos}
+     */
+    public int sum(long nowNanos) {
+        long index = slotIndex(nowNanos);
+        int total = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            long value = slots.get(i);
+            long age = (index - (value >>> COUNT_BITS)) & INDEX_MASK;
+            if (age < slots.length()) {
+                total += (int) (value & COUNT_MASK);
+            }
+        }
+        return total;
+    }
+
+    public void reset() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0);
+        }
+    }
+
+    // Slot time index, wrapped to the bits available next to the count
+    private long slotIndex(long nowNanos) {
+        return Math.floorDiv(nowNanos, slotNanos) & INDEX_MASK;
+    }
+}
@@ -0,0 +1,63 @@
+package server.dispatch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * The bucket is kept as a single "theoretical arrival time": the instant at
+ * which it would be full again. Taking a token pushes that instant forward by
+ * one refill interval; a request is refused when doing so would put it more
+ * than {@code capacity} intervals ahead of now. This is equivalent to a bucket
+ * of {@code capacity} tokens refilled at {@code tokensPerSecond}, but needs
+ * only one compare-and-set per request.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos; // time to refill one token
+    private final long burstNanos;    // time to refill the whole bucket
+    private final AtomicLong fullAt;
+
+    public TokenBucket(int capacity, double tokensPerSecond, long nowNanos) {
+        if (capacity < 1 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Token bucket needs capacity >= 1 and a positive rate");
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / tokensPerSecond));
+        this.burstNanos = intervalNanos * capacity;
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes one token if available.
+     *
+     * @return 0 if the token was taken, otherwise nanoseconds until one is available
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long excess = next - nowNanos - burstNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Returns a token taken by {@link #tryAcquire(long)} that ended up unused.
+     */
+    public void refund() {
+        fullAt.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * @return true if the bucket has refilled completely, i.e. it holds no
+     *         state worth keeping
+     */
+    public boolean isFull(long nowNanos) {
+        return fullAt.get() <= nowNanos;
+    }
+}
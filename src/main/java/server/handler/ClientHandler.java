@@ -1,28 +1,56 @@
 package server.handler;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import lombok.extern.slf4j.Slf4j;
+import server.protocol.CommandDecoder;
+import server.protocol.HelloRequest;
+import server.protocol.Request;
+import server.service.ConnectionContext;
+import server.service.SessionManager;
 import utils.LogHandler;
+import utils.ProtocolConstants;
+import utils.ServerConstants;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.List;
 
 /**
  * Handles communication with a single client in a dedicated thread.
  * Reads input from the client, logs all interactions (safely),
- * and delegates request handling to the CommandHandler.
+ * and delegates request handling to the CommandHandler. When the connection
+ * closes, whatever session was logged in on it is ended.
+ * <p>
+ * The connection-level HELLO handshake is answered here, since the agreed
+ * capabilities (compression, framing version, pipelining) belong to the
+ * connection rather than to any user session.
+ * <p>
+ * On server drain, {@link #stopWhenIdle()} ends the connection as soon as no
+ * command is running on it. This works for TLS too, where the input side of
+ * a socket cannot be shut down on its own.
  */
 @Slf4j
 public class ClientHandler implements Runnable {
 
     private final Socket clientSocket;
     private final CommandHandler commandHandler;
+    private final SessionManager sessionManager; // receives this connection's push channel, may be null
+
+    private final Object state = new Object();
+    private boolean busy; // guarded by state: a command is being handled
+    private boolean stopping; // guarded by state
 
     public ClientHandler(Socket clientSocket, CommandHandler commandHandler) {
+        this(clientSocket, commandHandler, null);
+    }
+
+    public ClientHandler(Socket clientSocket, CommandHandler commandHandler, SessionManager sessionManager) {
         this.clientSocket = clientSocket;
         this.commandHandler = commandHandler;
+        this.sessionManager = sessionManager;
     }
 
     @Override
@@ -31,24 +59,50 @@ public class ClientHandler implements Runnable {
         log.info("New client connected: {}", clientAddress);
         LogHandler.info("New client connected: " + clientAddress);
 
+        ConnectionContext connection = new ConnectionContext(clientSocket);
         try (
                 BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
+                ConnectionWriter out = new ConnectionWriter(clientSocket.getOutputStream())) {
             String inputLine;
+            if (sessionManager != null) {
+                sessionManager.registerChannel(clientSocket, out);
+            }
 
-            while ((inputLine = in.readLine()) != null) {
-                String command = inputLine.contains("%%") ? inputLine.split("%%")[0] : "MALFORMED";
+            while ((inputLine = in.readLine()) != null && startCommand()) {
+                int split = inputLine.indexOf(ProtocolConstants.DELIMITER);
+                String command = split >= 0 ? inputLine.substring(0, split) : "MALFORMED";
                 log.debug("Received {} command from {}", command, clientAddress);
                 LogHandler.info("Received " + command + " command from " + clientAddress);
 
-                commandHandler.handle(inputLine, clientSocket, out);
+                boolean keepReading;
+                try {
+                    if (ProtocolConstants.CMD_HELLO.equals(command)) {
+                        negotiate(CommandDecoder.decode(inputLine), out);
+                    } else {
+                        commandHandler.handle(inputLine, connection, out);
+                    }
+                } finally {
+                    keepReading = finishCommand();
+                }
+                if (!keepReading) {
+                    break; // stopped by drain while this command ran
+                }
             }
 
         } catch (IOException e) {
-            log.error("Connection error with {}: {}", clientAddress, e.getMessage());
-            LogHandler.error("Connection error with " + clientAddress + ": " + e.getMessage());
+            if (isStopping()) {
+                log.debug("Connection {} closed by drain: {}", clientAddress, e.getMessage());
+            } else {
+                log.error("Connection error with {}: {}", clientAddress, e.getMessage());
+                LogHandler.error("Connection error with " + clientAddress + ": " + e.getMessage());
+            }
 
         } finally {
+            connection.unbind(); // also cancels a parked IDLE, freeing its waiter slot
+            if (sessionManager != null) {
+                sessionManager.unregisterChannel(clientSocket);
+                sessionManager.endConnection(clientSocket);
+            }
             try {
                 clientSocket.close();
                 log.info("Connection closed: {}", clientAddress);
@@ -59,4 +113,90 @@ public class ClientHandler implements Runnable {
             }
         }
     }
+
+    /**
+     * Ends this connection once it is idle: at once if the handler is waiting
+     * for the next command, otherwise right after the running command has
+     * been answered.
+     */
+    public void stopWhenIdle() {
+        synchronized (state) {
+            stopping = true;
+            if (busy) {
+                return; // the handler stops after answering
+            }
+        }
+        try {
+            clientSocket.close(); // ends the blocked read, TLS or not
+        } catch (IOException e) {
+            log.debug("Error closing idle connection: {}", e.getMessage());
+        }
+    }
+
+    // Returns false if the connection is being stopped and the command must not run
+    private boolean startCommand() {
+        synchronized (state) {
+            busy = !stopping;
+            return busy;
+        }
+    }
+
+    // Returns false if the connection was stopped while the command ran
+    private boolean finishCommand() {
+        synchronized (state) {
+            busy = false;
+            return !stopping;
+        }
+    }
+
+    private boolean isStopping() {
+        synchronized (state) {
+            return stopping;
+        }
+    }
+
+    /**
+     * Answers a HELLO handshake with the intersection of the client's and the
+     * server's capabilities, then applies them to this connection.
+     *
+     * @param request decoded HELLO frame
+     * @param out     writer of this connection
+     */
+    private void negotiate(Request request, ConnectionWriter out) {
+        try {
+            HelloRequest hello = request.body(HelloRequest.class);
+            int clientVersion = hello.version() != null ? hello.version() : 1;
+            List<String> offered = hello.capabilities() != null ? hello.capabilities() : List.of();
+
+            boolean deflate = false;
+            JsonArray agreed = new JsonArray();
+            for (String name : offered) {
+                if (ProtocolConstants.CAP_DEFLATE.equals(name)) {
+                    deflate = true;
+                    agreed.add(name);
+                } else if (ProtocolConstants.CAP_PIPELINING.equals(name)) {
+                    agreed.add(name);
+                }
+            }
+
+            JsonObject response = new JsonObject();
+            response.addProperty("version", Math.min(clientVersion, ProtocolConstants.PROTOCOL_VERSION));
+            response.add("capabilities", agreed);
+            if (deflate) {
+                response.addProperty("compressionThreshold", ServerConstants.COMPRESSION_THRESHOLD_BYTES);
+            }
+            out.println(ProtocolConstants.RESPONSE_HELLO_SUCCESS + ProtocolConstants.DELIMITER + response);
+
+            if (deflate) {
+                out.enableCompression(ServerConstants.COMPRESSION_THRESHOLD_BYTES);
+            }
+            log.info("HELLO negotiated with {}: {}", clientSocket.getRemoteSocketAddress(), agreed);
+
+        } catch (Exception e) {
+            log.warn("Malformed HELLO from {}: {}", clientSocket.getRemoteSocketAddress(), e.getMessage());
+            LogHandler.warn("Malformed HELLO from " + clientSocket.getRemoteSocketAddress());
+            out.println(ProtocolConstants.RESPONSE_HELLO_FAIL + ProtocolConstants.DELIMITER
+                    + "Malformed JSON or internal error");
+        }
+    }
 }
@@ -1,23 +1,69 @@
 package server.handler;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import lombok.extern.slf4j.Slf4j;
 import model.Email;
+import model.EmailPage;
+import model.SyncResult;
+import server.dispatch.BoundedExecutor;
+import server.dispatch.CommandExecutors;
+import server.dispatch.CommandRegistry;
+import server.dispatch.ExecutorStats;
+import server.dispatch.RateLimitStats;
+import server.dispatch.RateLimiter;
+import server.protocol.BatchRequest;
+import server.protocol.CommandDecoder;
+import server.protocol.CredentialsRequest;
+import server.protocol.IdleRequest;
+import server.protocol.MailboxQuery;
+import server.protocol.ReadEmailRequest;
+import server.protocol.Request;
+import server.protocol.ResumeRequest;
+import server.protocol.SessionRequest;
+import server.protocol.SyncRequest;
 import server.service.AuthService;
+import server.service.ConnectionContext;
 import server.service.EmailService;
+import server.service.PushChannel;
+import server.service.Session;
 import server.service.SessionManager;
 import utils.LogHandler;
 import utils.ProtocolConstants;
+import utils.ServerConstants;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles incoming client commands via the protocol interface.
  * Delegates to relevant services and ensures session validation.
+ * Each frame is decoded once by {@link CommandDecoder}; services receive the
+ * typed request objects.
+ * <p>
+ * Commands are looked up in a {@link CommandRegistry} and run on the executor
+ * they are registered with: password hashing on a bounded auth pool, searches
+ * on a work-stealing pool, and cheap reads inline on the connection thread.
+ * Before that, a {@link RateLimiter} takes a token for the caller; BATCH items
+ * are limited one by one under their own command.
+ * <p>
+ * A command is authorised by the session LOGIN bound to the
+ * {@link ConnectionContext} it arrived on; the address named in its payload
+ * must match that session's user. LOGOUT ends only that session unless it
+ * carries {@code "all": true}, which logs the user out on every device.
+ * RESUME binds a session saved across a server restart; it hashes nothing,
+ * so unlike LOGIN it runs inline.
  *
  * Supports JSON-based payloads with robust error and logging mechanisms.
  */
@@ -27,180 +73,604 @@ public class CommandHandler {
     private final AuthService authService;
     private final EmailService emailService;
     private final SessionManager sessionManager;
+    private final CommandRegistry registry;
+    private final RateLimiter rateLimiter;
+    private final BoundedExecutor idleResponder; // writes IDLE answers off the thread that woke them
+    private final BoundedExecutor batchExecutor; // runs the items of a parallel BATCH
+    private final List<BoundedExecutor> executors;
     private final Gson gson = new Gson();
 
+    // Sub-commands a BATCH may carry; the read-only ones may run in parallel
+    private static final Set<String> BATCHABLE_COMMANDS = Set.of(
+            ProtocolConstants.CMD_SEND_EMAIL, ProtocolConstants.CMD_RETRIEVE_EMAILS,
+            ProtocolConstants.CMD_READ_EMAIL, ProtocolConstants.CMD_SEARCH_EMAIL, ProtocolConstants.CMD_SYNC);
+    private static final Set<String> READ_ONLY_COMMANDS = Set.of(
+            ProtocolConstants.CMD_RETRIEVE_EMAILS, ProtocolConstants.CMD_READ_EMAIL,
+            ProtocolConstants.CMD_SEARCH_EMAIL, ProtocolConstants.CMD_SYNC);
+
+    /**
+     * Creates a handler that runs every command on the calling thread.
+     */
     public CommandHandler(AuthService authService, EmailService emailService, SessionManager sessionManager) {
+        this(authService, emailService, sessionManager, CommandExecutors.inlineOnly());
+    }
+
+    /**
+     * Creates a handler that does not rate limit.
+     */
+    public CommandHandler(AuthService authService, EmailService emailService, SessionManager sessionManager,
+            CommandExecutors executors) {
+        this(authService, emailService, sessionManager, executors, RateLimiter.unlimited());
+    }
+
+    public CommandHandler(AuthService authService, EmailService emailService, SessionManager sessionManager,
+            CommandExecutors executors, RateLimiter rateLimiter) {
         this.authService = authService;
         this.emailService = emailService;
         this.sessionManager = sessionManager;
+        this.rateLimiter = rateLimiter;
+        this.idleResponder = executors.idle();
+        this.batchExecutor = executors.search();
+        this.registry = new CommandRegistry()
+                .register(ProtocolConstants.CMD_REGISTER, executors.auth(), this::register)
+                .register(ProtocolConstants.CMD_LOGIN, executors.auth(), this::login)
+                .register(ProtocolConstants.CMD_RESUME, executors.inline(), this::resume)
+                .registerDetached(ProtocolConstants.CMD_SEARCH_EMAIL, executors.search(), this::searchEmail)
+                .register(ProtocolConstants.CMD_SEND_EMAIL, executors.inline(), this::sendEmail)
+                .register(ProtocolConstants.CMD_RETRIEVE_EMAILS, executors.inline(), this::retrieveEmails)
+                .register(ProtocolConstants.CMD_READ_EMAIL, executors.inline(), this::readEmail)
+                .register(ProtocolConstants.CMD_SYNC, executors.inline(), this::sync)
+                .register(ProtocolConstants.CMD_IDLE, executors.inline(), this::idle)
+                .register(ProtocolConstants.CMD_BATCH, executors.inline(), this::batch)
+                .register(ProtocolConstants.CMD_LOGOUT, executors.inline(), this::logout)
+                .register(ProtocolConstants.CMD_EXIT, executors.inline(), this::exit);
+        Set<BoundedExecutor> all = new LinkedHashSet<>(registry.executors());
+        all.add(idleResponder);
+        this.executors = List.copyOf(all);
     }
 
     /**
      * Parses a command string, validates the session, delegates to service, and
      * handles output.
      *
-     * @param input        Raw client input string (COMMAND%%JSON_PAYLOAD)
-     * @param clientSocket Client socket instance
-     * @param out          Output stream for response
+     * @param input      Raw client input string (COMMAND%%JSON_PAYLOAD)
+     * @param connection Client connection and the session bound to it
+     * @param out        Output stream for response
      */
-    public void handle(String input, Socket clientSocket, PrintWriter out) {
+    public void handle(String input, ConnectionContext connection, PrintWriter out) {
         if (input == null || !input.contains(ProtocolConstants.DELIMITER)) {
-            String warning = "Malformed command from client " + clientSocket.getRemoteSocketAddress() + ": " + input;
+            String warning = "Malformed command from client " + connection.socket().getRemoteSocketAddress()
+                    + ": " + input;
             log.warn(warning);
             LogHandler.log(warning);
             out.println(ProtocolConstants.RESPONSE_INVALID_FORMAT + ProtocolConstants.DELIMITER + "Missing delimiter");
             return;
         }
 
-        String[] parts = input.split(ProtocolConstants.DELIMITER, 2);
-        String command = parts[0];
-        String payload = parts.length > 1 ? parts[1] : "";
+        handle(CommandDecoder.decode(input), connection, out);
+    }
+
+    /**
+     * Handles an already decoded request on the executor its command is
+     * registered with. The connection thread waits for the command to finish
+     * unless the route is detached; a saturated executor is answered with
+     * {@code <CMD>_FAIL%%Server busy}, and a caller over its rate limit with
+     * {@code RATE_LIMITED}.
+     */
+    public void handle(Request request, ConnectionContext connection, PrintWriter out) {
+        String command = request.command();
+        CommandRegistry.Route route = registry.route(command);
+        if (route == null) {
+            log.warn("Unknown command: {}", command);
+            LogHandler.log("Unknown command received: " + command);
+            out.println(ProtocolConstants.RESPONSE_UNKNOWN + ProtocolConstants.DELIMITER
+                    + "Command not recognized");
+            return;
+        }
+        connection.touch(); // any recognised command keeps the session alive
+        String limitedResponse = checkRateLimit(command, connection);
+        if (limitedResponse != null) {
+            out.println(limitedResponse);
+            return;
+        }
 
+        CompletableFuture<Void> done;
         try {
-            JsonObject json = JsonParser.parseString(payload).getAsJsonObject();
+            done = route.executor().submit(() -> dispatch(request, connection, out));
+        } catch (RejectedExecutionException e) {
+            log.warn("{} rejected, {} executor saturated", command, route.executor().getName());
+            LogHandler.warn(command + " rejected, " + route.executor().getName() + " executor saturated");
+            out.println(command + "_FAIL" + ProtocolConstants.DELIMITER + "Server busy");
+            return;
+        }
+        if (!route.detached()) {
+            done.join();
+        }
+    }
 
-            switch (command) {
+    /**
+     * Takes a rate limit token for a command on behalf of the user logged in
+     * on the connection, if any.
+     *
+     * @return a RATE_LIMITED response line, or null if the command may run
+     */
+    private String checkRateLimit(String command, ConnectionContext connection) {
+        if (!rateLimiter.isLimited(command)) {
+            return null;
+        }
+        String actingUser = connection.user();
+        Socket clientSocket = connection.socket();
+        InetAddress address = clientSocket.getInetAddress();
+        long retryAfterMs = rateLimiter.acquire(command, actingUser,
+                address != null ? address.getHostAddress() : "unknown");
+        if (retryAfterMs == 0) {
+            return null;
+        }
 
-                case ProtocolConstants.CMD_REGISTER -> authService.handleRegister(payload, out);
+        log.warn("{} rate limited for {} ({}), retry after {} ms", command, actingUser,
+                clientSocket.getRemoteSocketAddress(), retryAfterMs);
+        LogHandler.warn(command + " rate limited for " + actingUser + ", retry after " + retryAfterMs + " ms");
+        JsonObject body = new JsonObject();
+        body.addProperty("command", command);
+        body.addProperty("retryAfterMs", retryAfterMs);
+        return ProtocolConstants.RESPONSE_RATE_LIMITED + ProtocolConstants.DELIMITER + body;
+    }
 
-                case ProtocolConstants.CMD_LOGIN -> authService.handleLogin(payload, clientSocket, out);
+    /**
+     * @return allowed/limited counts of every rate-limited command
+     */
+    public List<RateLimitStats> rateLimitStats() {
+        return rateLimiter.stats();
+    }
 
-                case ProtocolConstants.CMD_SEND_EMAIL -> {
-                    Email email = gson.fromJson(json, Email.class);
-                    if (!sessionManager.isLoggedIn(email.getFrom())) {
-                        out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
-                                + "User not logged in");
-                        return;
-                    }
-                    boolean success = emailService.sendEmail(email);
-                    if (success) {
-                        out.println(ProtocolConstants.RESPONSE_SEND_EMAIL_SUCCESS);
-                    } else {
-                        log.warn("SEND_EMAIL failed for user: {}", email.getFrom());
-                        LogHandler.log("SEND_EMAIL failed for user: " + email.getFrom());
-                        out.println(ProtocolConstants.RESPONSE_SEND_EMAIL_FAIL + ProtocolConstants.DELIMITER
-                                + "Validation or recipient failure");
-                    }
-                }
-
-                case ProtocolConstants.CMD_RETRIEVE_EMAILS -> {
-                    String type = json.has("type") ? json.get("type").getAsString() : null;
-                    String userEmail = json.has("email") ? json.get("email").getAsString() : null;
-                    if (type == null || userEmail == null) {
-                        out.println(ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_FAIL + ProtocolConstants.DELIMITER
-                                + "Missing fields: 'type' or 'email'");
-                        return;
-                    }
-                    if (!sessionManager.isLoggedIn(userEmail)) {
-                        out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
-                                + "User not logged in");
-                        return;
-                    }
-                    List<Email> emails = "received".equalsIgnoreCase(type)
-                            ? emailService.getReceivedEmails(userEmail)
-                            : emailService.getSentEmails(userEmail);
-                    out.println(ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_SUCCESS + ProtocolConstants.DELIMITER
-                            + gson.toJson(emails));
-                }
-
-                case ProtocolConstants.CMD_SEARCH_EMAIL -> {
-                    String userEmail = json.has("email") ? json.get("email").getAsString() : null;
-                    String type = json.has("type") ? json.get("type").getAsString() : null;
-                    String keyword = json.has("keyword") ? json.get("keyword").getAsString() : null;
-
-                    if (userEmail == null || type == null || keyword == null) {
-                        out.println(ProtocolConstants.RESPONSE_SEARCH_EMAIL_FAIL + ProtocolConstants.DELIMITER
-                                + "Missing fields");
-                        return;
-                    }
+    /**
+     * @return counters of every executor commands are routed to
+     */
+    public List<ExecutorStats> executorStats() {
+        List<ExecutorStats> stats = new ArrayList<>();
+        executors.forEach(executor -> stats.add(executor.stats()));
+        return stats;
+    }
 
-                    if (!sessionManager.isLoggedIn(userEmail)) {
-                        out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
-                                + "User not logged in");
-                        return;
-                    }
+    /**
+     * Stops the command executors from accepting work and waits for what they
+     * already accepted, detached SEARCH_EMAIL answers included, while the
+     * connections are still open to receive it.
+     *
+     * @return true if every executor finished within the timeout
+     */
+    public boolean drainExecutors(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        boolean drained = true;
+        for (BoundedExecutor executor : executors) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            drained &= executor.drain(Math.max(0, remaining));
+        }
+        return drained;
+    }
 
-                    List<Email> results = emailService.searchEmails(userEmail, type, keyword);
-                    if (results.isEmpty()) {
-                        String msg = "SEARCH_EMAIL returned 0 results for user " + userEmail;
-                        log.info(msg);
-                        LogHandler.log(msg);
-                        out.println(ProtocolConstants.RESPONSE_SEARCH_EMAIL_FAIL + ProtocolConstants.DELIMITER
-                                + "No emails found matching keyword");
-                    } else {
-                        out.println(ProtocolConstants.RESPONSE_SEARCH_EMAIL_SUCCESS + ProtocolConstants.DELIMITER
-                                + gson.toJson(results));
-                    }
-                }
+    /**
+     * Stops the command executors; called once on server shutdown.
+     */
+    public void shutdown() {
+        executors.forEach(BoundedExecutor::shutdown);
+    }
 
-                case ProtocolConstants.CMD_READ_EMAIL -> {
-                    String user = json.has("email") ? json.get("email").getAsString() : null;
-                    String id = json.has("id") ? json.get("id").getAsString() : null;
+    /**
+     * Executes one command on the current thread.
+     */
+    private void dispatch(Request request, ConnectionContext connection, PrintWriter out) {
+        String command = request.command();
+        try {
+            if (request.isMalformed()) {
+                throw new IllegalArgumentException("Payload is not a valid " + command + " request");
+            }
+            CommandRegistry.Route route = registry.route(command);
+            if (route == null) {
+                out.println(ProtocolConstants.RESPONSE_UNKNOWN + ProtocolConstants.DELIMITER
+                        + "Command not recognized");
+                return;
+            }
+            route.action().execute(request, connection, out);
 
-                    if (user == null || id == null) {
-                        out.println(ProtocolConstants.RESPONSE_READ_EMAIL_FAIL + ProtocolConstants.DELIMITER
-                                + "Missing 'email' or 'id'");
-                        return;
-                    }
-                    if (!sessionManager.isLoggedIn(user)) {
+        } catch (Exception e) {
+            log.error("Command failed [{}]: {}", command, e.getMessage());
+            LogHandler.log("Command [" + command + "] failed: " + e.getMessage());
+            out.println(command + "_FAIL" + ProtocolConstants.DELIMITER + "Malformed JSON or internal error");
+        }
+    }
+
+    private void register(Request request, ConnectionContext connection, PrintWriter out) {
+        authService.handleRegister(request.body(CredentialsRequest.class), out);
+    }
+
+    private void login(Request request, ConnectionContext connection, PrintWriter out) {
+        Session session = authService.handleLogin(request.body(CredentialsRequest.class), connection.socket(), out);
+        if (session != null) {
+            connection.bind(session);
+        }
+    }
+
+    private void resume(Request request, ConnectionContext connection, PrintWriter out) {
+        Session session = authService.handleResume(request.body(ResumeRequest.class), connection.socket(), out);
+        if (session != null) {
+            connection.bind(session);
+        }
+    }
+
+    private void sendEmail(Request request, ConnectionContext connection, PrintWriter out) {
+        Email email = request.body(Email.class);
+        if (!connection.isAuthenticatedAs(email.getFrom())) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
+        boolean success = emailService.sendEmail(email);
+        if (success) {
+            out.println(ProtocolConstants.RESPONSE_SEND_EMAIL_SUCCESS);
+        } else {
+            log.warn("SEND_EMAIL failed for user: {}", email.getFrom());
+            LogHandler.log("SEND_EMAIL failed for user: " + email.getFrom());
+            out.println(ProtocolConstants.RESPONSE_SEND_EMAIL_FAIL + ProtocolConstants.DELIMITER
+                    + "Validation or recipient failure");
+        }
+    }
+
+    private void retrieveEmails(Request request, ConnectionContext connection, PrintWriter out) {
+        MailboxQuery query = request.body(MailboxQuery.class);
+        String type = query.type();
+        String userEmail = query.email();
+        String fields = query.fields() != null ? query.fields() : ProtocolConstants.FIELDS_SNIPPET;
+        if (type == null || userEmail == null) {
+            out.println(ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_FAIL + ProtocolConstants.DELIMITER
+                    + "Missing fields: 'type' or 'email'");
+            return;
+        }
+        if (!EmailService.isProjection(fields)) {
+            out.println(ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_FAIL + ProtocolConstants.DELIMITER
+                    + "Invalid 'fields'");
+            return;
+        }
+        if (!connection.isAuthenticatedAs(userEmail)) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
+        if (query.limit() != null || query.cursor() != null || query.ifVersion() != null) {
+            int limit = query.limit() != null ? query.limit() : ServerConstants.DEFAULT_PAGE_SIZE;
+            String cursor = query.cursor();
+            // Read before listing: a change racing with the scan yields an older version, never a newer one
+            String version = emailService.getMailboxVersion(userEmail);
+            if (cursor == null && version.equals(query.ifVersion())) {
+                JsonObject body = new JsonObject();
+                body.addProperty("command", ProtocolConstants.CMD_RETRIEVE_EMAILS);
+                body.addProperty("version", version);
+                out.println(ProtocolConstants.RESPONSE_NOT_MODIFIED + ProtocolConstants.DELIMITER + body);
+                return;
+            }
+            EmailPage<Email> page;
+            try {
+                page = emailService.getEmailPage(userEmail, type, cursor, limit);
+            } catch (IllegalArgumentException e) {
+                out.println(ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_FAIL + ProtocolConstants.DELIMITER
+                        + "Invalid cursor");
+                return;
+            }
+            respondJson(out, ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_SUCCESS,
+                    new EmailPage<>(EmailService.project(page.getEmails(), fields), page.getNextCursor(), version));
+            return;
+        }
+        List<Email> emails = "received".equalsIgnoreCase(type)
+                ? emailService.getReceivedEmails(userEmail)
+                : emailService.getSentEmails(userEmail);
+        respondJson(out, ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_SUCCESS, EmailService.project(emails, fields));
+    }
+
+    private void searchEmail(Request request, ConnectionContext connection, PrintWriter out) {
+        MailboxQuery query = request.body(MailboxQuery.class);
+        String userEmail = query.email();
+        String type = query.type();
+        String keyword = query.keyword();
+        String fields = query.fields() != null ? query.fields() : ProtocolConstants.FIELDS_SNIPPET;
+
+        if (userEmail == null || type == null || keyword == null) {
+            out.println(ProtocolConstants.RESPONSE_SEARCH_EMAIL_FAIL + ProtocolConstants.DELIMITER
+                    + "Missing fields");
+            return;
+        }
+        if (!EmailService.isProjection(fields)) {
+            out.println(ProtocolConstants.RESPONSE_SEARCH_EMAIL_FAIL + ProtocolConstants.DELIMITER
+                    + "Invalid 'fields'");
+            return;
+        }
+
+        if (!connection.isAuthenticatedAs(userEmail)) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
+
+        List<Email> results = emailService.searchEmails(userEmail, type, keyword);
+        if (results.isEmpty()) {
+            String msg = "SEARCH_EMAIL returned 0 results for user " + userEmail;
+            log.info(msg);
+            LogHandler.log(msg);
+            out.println(ProtocolConstants.RESPONSE_SEARCH_EMAIL_FAIL + ProtocolConstants.DELIMITER
+                    + "No emails found matching keyword");
+        } else {
+            respondJson(out, ProtocolConstants.RESPONSE_SEARCH_EMAIL_SUCCESS, EmailService.project(results, fields));
+        }
+    }
+
+    private void sync(Request request, ConnectionContext connection, PrintWriter out) {
+        SyncRequest sync = request.body(SyncRequest.class);
+        String userEmail = sync.email();
+        if (userEmail == null) {
+            out.println(ProtocolConstants.RESPONSE_SYNC_FAIL + ProtocolConstants.DELIMITER
+                    + "Missing 'email'");
+            return;
+        }
+        if (!connection.isAuthenticatedAs(userEmail)) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
+        long since = sync.since() != null ? sync.since() : 0;
+
+        SyncResult changes = emailService.syncMailbox(userEmail, sync.epoch(), since);
+        respondJson(out, ProtocolConstants.RESPONSE_SYNC_SUCCESS, changes);
+    }
+
+    /**
+     * Parks the request until the mailbox moves past the client's SYNC
+     * bookmark or the timeout expires, then answers with the changes, just
+     * like SYNC. Returns at once: the wait holds a future, not this thread.
+     * The wait is kept on the connection, which cancels it on LOGIN, LOGOUT
+     * and close, and the session is checked again before answering.
+     */
+    private void idle(Request request, ConnectionContext connection, PrintWriter out) {
+        IdleRequest idle = request.body(IdleRequest.class);
+        String userEmail = idle.email();
+        if (userEmail == null) {
+            out.println(ProtocolConstants.RESPONSE_IDLE_FAIL + ProtocolConstants.DELIMITER
+                    + "Missing 'email'");
+            return;
+        }
+        if (!connection.isAuthenticatedAs(userEmail)) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
+        long since = idle.since() != null ? idle.since() : 0;
+        long timeoutMs = idle.timeoutMs() != null
+                ? Math.max(0, Math.min(idle.timeoutMs(), ServerConstants.IDLE_MAX_TIMEOUT_MS))
+                : ServerConstants.IDLE_DEFAULT_TIMEOUT_MS;
+
+        CompletableFuture<Boolean> wait = emailService.awaitMailboxChange(userEmail, idle.epoch(), since, timeoutMs);
+        if (wait == null) {
+            log.warn("IDLE rejected for {}, too many waiters", userEmail);
+            LogHandler.warn("IDLE rejected for " + userEmail + ", too many waiters");
+            out.println(ProtocolConstants.RESPONSE_IDLE_FAIL + ProtocolConstants.DELIMITER + "Server busy");
+            return;
+        }
+        connection.parkIdle(wait);
+        // The future completes on the sender's thread or the JDK's shared delay
+        // scheduler; neither may ever block on this client's socket
+        wait.thenAccept(changed -> {
+            try {
+                idleResponder.submit(() -> {
+                    if (!connection.isAuthenticatedAs(userEmail)) { // session ended while parked
                         out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
                                 + "User not logged in");
                         return;
                     }
+                    respondJson(out, ProtocolConstants.RESPONSE_IDLE_SUCCESS,
+                            emailService.syncMailbox(userEmail, idle.epoch(), since));
+                });
+            } catch (RejectedExecutionException e) {
+                answerIdleByPush(connection, out, userEmail, idle.epoch(), since);
+            }
+        });
+    }
 
-                    Email email = emailService.getEmailById(user, id);
-                    if (email != null) {
-                        out.println(ProtocolConstants.RESPONSE_READ_EMAIL_SUCCESS + ProtocolConstants.DELIMITER
-                                + gson.toJson(email));
-                    } else {
-                        log.warn("READ_EMAIL denied for {} on email ID {}", user, id);
-                        LogHandler.log("READ_EMAIL denied for " + user + " on email ID " + id);
-                        out.println(ProtocolConstants.RESPONSE_READ_EMAIL_FAIL + ProtocolConstants.DELIMITER
-                                + "Email not found or access denied");
-                    }
-                }
+    // IDLE executor saturated: hand the answer to the connection's push writer
+    // rather than write it here. Without a push queue the answer is dropped.
+    private void answerIdleByPush(ConnectionContext connection, PrintWriter out, String userEmail, String epoch,
+            long since) {
+        if (out instanceof PushChannel channel && connection.isAuthenticatedAs(userEmail)
+                && channel.push(ProtocolConstants.RESPONSE_IDLE_SUCCESS + ProtocolConstants.DELIMITER
+                        + gson.toJson(emailService.syncMailbox(userEmail, epoch, since)))) {
+            return;
+        }
+        log.warn("IDLE answer for {} dropped, responders saturated", userEmail);
+        LogHandler.warn("IDLE answer for " + userEmail + " dropped, responders saturated");
+    }
 
-                case ProtocolConstants.CMD_LOGOUT -> {
-                    String email = json.has("email") ? json.get("email").getAsString() : null;
-                    if (email == null) {
-                        out.println(ProtocolConstants.RESPONSE_LOGOUT_FAIL + ProtocolConstants.DELIMITER
-                                + "Missing 'email'");
-                        return;
-                    }
-                    sessionManager.endSession(email);
-                    log.info("User logged out: {}", email);
-                    LogHandler.log("User logged out: " + email);
-                    out.println(ProtocolConstants.RESPONSE_LOGOUT_SUCCESS);
-                }
-
-                case ProtocolConstants.CMD_EXIT -> {
-                    String email = json.has("email") ? json.get("email").getAsString() : null;
-
-                    if (email != null && sessionManager.isLoggedIn(email)) {
-                        sessionManager.endSession(email);
-                        log.info("Session ended on EXIT for user: {}", email);
-                        LogHandler.log("Session ended on EXIT for user: " + email);
-                    } else {
-                        String exitMsg = "EXIT from unauthenticated client: " + clientSocket.getRemoteSocketAddress();
-                        log.warn(exitMsg);
-                        LogHandler.log(exitMsg);
-                    }
+    private void readEmail(Request request, ConnectionContext connection, PrintWriter out) {
+        ReadEmailRequest read = request.body(ReadEmailRequest.class);
+        String user = read.email();
+        String id = read.id();
 
-                    out.println(ProtocolConstants.RESPONSE_EXIT_SUCCESS);
-                }
+        if (user == null || id == null) {
+            out.println(ProtocolConstants.RESPONSE_READ_EMAIL_FAIL + ProtocolConstants.DELIMITER
+                    + "Missing 'email' or 'id'");
+            return;
+        }
+        if (!connection.isAuthenticatedAs(user)) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
 
-                default -> {
-                    log.warn("Unknown command: {}", command);
-                    LogHandler.log("Unknown command received: " + command);
-                    out.println(ProtocolConstants.RESPONSE_UNKNOWN + ProtocolConstants.DELIMITER
-                            + "Command not recognized");
-                }
+        Email email = emailService.getEmailById(user, id);
+        if (email != null) {
+            out.println(ProtocolConstants.RESPONSE_READ_EMAIL_SUCCESS + ProtocolConstants.DELIMITER
+                    + gson.toJson(email));
+        } else {
+            log.warn("READ_EMAIL denied for {} on email ID {}", user, id);
+            LogHandler.log("READ_EMAIL denied for " + user + " on email ID " + id);
+            out.println(ProtocolConstants.RESPONSE_READ_EMAIL_FAIL + ProtocolConstants.DELIMITER
+                    + "Email not found or access denied");
+        }
+    }
+
+    private void logout(Request request, ConnectionContext connection, PrintWriter out) {
+        SessionRequest logout = request.body(SessionRequest.class);
+        String email = logout.email();
+        if (email == null) {
+            out.println(ProtocolConstants.RESPONSE_LOGOUT_FAIL + ProtocolConstants.DELIMITER
+                    + "Missing 'email'");
+            return;
+        }
+        if (!connection.isAuthenticatedAs(email)) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
+        sessionManager.endSession(connection.session());
+        connection.unbind();
+        log.info("User logged out: {}", email);
+        LogHandler.log("User logged out: " + email);
+        if (Boolean.TRUE.equals(logout.all())) {
+            int others = sessionManager.endAllSessions(email, "Logged out from another device");
+            log.info("Logout-all for {} ended {} other session(s)", email, others);
+            LogHandler.log("Logout-all for " + email + " ended " + others + " other session(s)");
+        }
+        out.println(ProtocolConstants.RESPONSE_LOGOUT_SUCCESS);
+    }
+
+    private void exit(Request request, ConnectionContext connection, PrintWriter out) {
+        String email = request.body(SessionRequest.class).email();
+
+        if (email != null && connection.isAuthenticatedAs(email)) {
+            sessionManager.endSession(connection.session());
+            connection.unbind();
+            log.info("Session ended on EXIT for user: {}", email);
+            LogHandler.log("Session ended on EXIT for user: " + email);
+        } else {
+            String exitMsg = "EXIT from unauthenticated client: " + connection.socket().getRemoteSocketAddress();
+            log.warn(exitMsg);
+            LogHandler.log(exitMsg);
+        }
+
+        out.println(ProtocolConstants.RESPONSE_EXIT_SUCCESS);
+    }
+
+    /**
+     * Executes the sub-commands of a BATCH after a single session check and
+     * answers with one line holding the array of per-item response lines.
+     * <p>
+     * Items are {@code {"command": ..., "payload": {...}}}. The batch user is
+     * filled in as the item's acting user; an item naming another user is
+     * rejected. A batch of read-only items sent with {@code "parallel": true}
+     * is executed concurrently; results keep the item order either way.
+     */
+    private void batch(Request request, ConnectionContext connection, PrintWriter out) {
+        BatchRequest batch = request.body(BatchRequest.class);
+        String userEmail = batch.email();
+        JsonArray items = batch.commands();
+        if (userEmail == null || items == null) {
+            out.println(ProtocolConstants.RESPONSE_BATCH_FAIL + ProtocolConstants.DELIMITER
+                    + "Missing 'email' or 'commands'");
+            return;
+        }
+        if (items.size() > ServerConstants.MAX_BATCH_SIZE) {
+            out.println(ProtocolConstants.RESPONSE_BATCH_FAIL + ProtocolConstants.DELIMITER
+                    + "Too many commands (max " + ServerConstants.MAX_BATCH_SIZE + ")");
+            return;
+        }
+        if (!connection.isAuthenticatedAs(userEmail)) {
+            out.println(ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER
+                    + "User not logged in");
+            return;
+        }
+
+        boolean parallel = Boolean.TRUE.equals(batch.parallel());
+        for (JsonElement item : items) {
+            String command = batchCommandOf(item);
+            parallel &= command != null && READ_ONLY_COMMANDS.contains(command);
+        }
+
+        String[] results = new String[items.size()];
+        if (parallel) {
+            executeInParallel(items, results, userEmail, connection);
+        } else {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = executeBatchItem(items.get(i), userEmail, connection);
+            }
+        }
+
+        log.info("BATCH of {} commands executed for {} (parallel={})", results.length, userEmail, parallel);
+        LogHandler.log("BATCH of " + results.length + " commands executed for " + userEmail);
+        respondJson(out, ProtocolConstants.RESPONSE_BATCH_SUCCESS, results);
+    }
+
+    // Read-only items run on the search executor, within its in-flight limit and
+    // counted in its stats; an item it rejects is answered busy like a command
+    private void executeInParallel(JsonArray items, String[] results, String userEmail,
+            ConnectionContext connection) {
+        List<CompletableFuture<Void>> pending = new ArrayList<>(results.length);
+        for (int i = 0; i < results.length; i++) {
+            int index = i;
+            try {
+                pending.add(batchExecutor.submit(
+                        () -> results[index] = executeBatchItem(items.get(index), userEmail, connection)));
+            } catch (RejectedExecutionException e) {
+                results[index] = batchCommandOf(items.get(index)) + "_FAIL" + ProtocolConstants.DELIMITER
+                        + "Server busy";
             }
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+    }
 
-        } catch (Exception e) {
-            log.error("Command failed [{}]: {}", input, e.getMessage());
-            LogHandler.log("Command [" + input + "] failed: " + e.getMessage());
-            out.println(command + "_FAIL" + ProtocolConstants.DELIMITER + "Malformed JSON or internal error");
+    private String executeBatchItem(JsonElement item, String userEmail, ConnectionContext connection) {
+        String command = batchCommandOf(item);
+        if (command == null) {
+            return ProtocolConstants.RESPONSE_INVALID_FORMAT + ProtocolConstants.DELIMITER + "Missing 'command'";
+        }
+        if (!BATCHABLE_COMMANDS.contains(command)) {
+            return command + "_FAIL" + ProtocolConstants.DELIMITER + "Command not allowed in BATCH";
+        }
+
+        JsonObject itemObject = item.getAsJsonObject();
+        JsonObject payload = itemObject.has("payload") && itemObject.get("payload").isJsonObject()
+                ? itemObject.getAsJsonObject("payload")
+                : new JsonObject();
+        String userField = ProtocolConstants.CMD_SEND_EMAIL.equals(command) ? "from" : "email";
+        if (!payload.has(userField)) {
+            payload.addProperty(userField, userEmail);
+        }
+
+        String limitedResponse = checkRateLimit(command, connection);
+        if (limitedResponse != null) {
+            return limitedResponse;
+        }
+
+        StringWriter buffer = new StringWriter();
+        dispatch(CommandDecoder.decode(command, payload), connection, new PrintWriter(buffer));
+        return buffer.toString().strip();
+    }
+
+    private static String batchCommandOf(JsonElement item) {
+        if (item == null || !item.isJsonObject() || !item.getAsJsonObject().has("command")) {
+            return null;
+        }
+        return item.getAsJsonObject().get("command").getAsString();
+    }
+
+    /**
+     * Writes {@code CODE%%<json>} as one line. On a live connection the body is
+     * serialised straight into the socket writer; otherwise Gson still streams
+     * into {@code out} rather than building an intermediate String.
+     */
+    private void respondJson(PrintWriter out, String code, Object body) {
+        String prefix = code + ProtocolConstants.DELIMITER;
+        if (out instanceof ConnectionWriter connection) {
+            connection.printlnStreamed(prefix, writer -> gson.toJson(body, writer));
+            return;
         }
+        out.print(prefix);
+        gson.toJson(body, out);
+        out.println();
     }
 }
@@ -0,0 +1,288 @@
+package server.handler;
+
+import com.google.gson.JsonIOException;
+import lombok.extern.slf4j.Slf4j;
+import server.service.PushChannel;
+import utils.CompressionUtils;
+import utils.LogHandler;
+import utils.ProtocolConstants;
+import utils.ServerConstants;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Per-connection response writer.
+ * <p>
+ * Behaves like an auto-flushing {@link PrintWriter} until compression is
+ * negotiated through HELLO. From then on, any response line at or above the
+ * agreed threshold is sent as a single {@code COMPRESSED%%<base64>} line.
+ * <p>
+ * Server pushes go through a bounded outbound queue that only this
+ * connection's push writer thread drains, started on the first push. The
+ * thread that pushes (a sender's SEND_EMAIL, the expiry timer, a shutdown
+ * broadcast) therefore never writes to this socket itself and is not held up
+ * by a slow client. The push writer takes the write lock per batch, so a push
+ * is never interleaved with a response and never waits for the client's next
+ * request.
+ * <p>
+ * Large JSON responses are written with {@link #printlnStreamed(String, Consumer)},
+ * which serialises straight into the socket buffer instead of building the
+ * whole line as a String first.
+ */
+@Slf4j
+public class ConnectionWriter extends PrintWriter implements PushChannel {
+
+    private static final int STREAM_BUFFER_CHARS = 8192;
+
+    private volatile int compressionThreshold = -1; // disabled until negotiated
+
+    private final OutputStream rawOut; // for compressed streaming; PrintWriter's own buffer is flushed first
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final BlockingQueue<String> pendingPushes = new ArrayBlockingQueue<>(ServerConstants.PUSH_QUEUE_CAPACITY);
+    private Thread pushWriter; // guarded by pendingPushes, null until the first push
+    private volatile boolean closed;
+
+    public ConnectionWriter(OutputStream out) {
+        super(out, true);
+        this.rawOut = out;
+    }
+
+    /**
+     * Enables compression for all subsequent response lines of this connection.
+     *
+     * @param thresholdChars minimum line length that is worth compressing
+     */
+    public void enableCompression(int thresholdChars) {
+        this.compressionThreshold = thresholdChars;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionThreshold >= 0;
+    }
+
+    @Override
+    public void println(String line) {
+        writeLock.lock();
+        try {
+            writeLine(line);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a multi-part write (e.g. a streamed response) without letting
+     * pushes slip in between its parts.
+     */
+    public void exclusive(Runnable section) {
+        writeLock.lock();
+        try {
+            section.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Writes one response line made of {@code prefix} followed by a body that
+     * is serialised incrementally into this connection (e.g. a Gson call
+     * writing to the supplied {@link Writer}).
+     * <p>
+     * Without compression the body goes straight into the buffered socket
+     * writer. With compression, only the first {@code threshold} characters are
+     * buffered to decide whether the line is worth compressing; past that the
+     * rest is deflated on the fly. Either way no full copy of the line exists.
+     */
+    public void printlnStreamed(String prefix, Consumer<Writer> body) {
+        exclusive(() -> {
+            int threshold = compressionThreshold;
+            try {
+                if (threshold < 0) {
+                    write(prefix);
+                    body.accept(this);
+                    println();
+                    return;
+                }
+                try (CompressingLineWriter line = new CompressingLineWriter(prefix, threshold)) {
+                    body.accept(line);
+                }
+            } catch (IOException | JsonIOException e) {
+                log.warn("Streaming response failed: {}", e.getMessage());
+                LogHandler.warn("Streaming response failed: " + e.getMessage());
+                setError();
+            }
+        });
+    }
+
+    /**
+     * Queues a push and returns; the push writer thread delivers it.
+     */
+    @Override
+    public boolean push(String line) {
+        if (closed) {
+            return false;
+        }
+        if (!pendingPushes.offer(line)) {
+            log.warn("Outbound push queue full, dropping push");
+            LogHandler.warn("Outbound push queue full, dropping push");
+            return false;
+        }
+        synchronized (pendingPushes) {
+            if (pushWriter == null && !closed) {
+                pushWriter = new Thread(this::deliverPushes, "push-writer");
+                pushWriter.setDaemon(true);
+                pushWriter.start();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the push writer, giving it {@link ServerConstants#PUSH_DRAIN_TIMEOUT_MS}
+     * to deliver what is queued, then closes the connection's output. A writer
+     * still stuck on a client that does not read is released by closing the
+     * underlying stream under it.
+     */
+    @Override
+    public void close() {
+        Thread writer;
+        synchronized (pendingPushes) {
+            closed = true;
+            writer = pushWriter;
+        }
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(ServerConstants.PUSH_DRAIN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (writer.isAlive()) {
+                try {
+                    rawOut.close();
+                } catch (IOException e) {
+                    log.debug("Closing output under a stuck push writer failed: {}", e.getMessage());
+                }
+            }
+        }
+        super.close();
+    }
+
+    // Push writer thread: waits for pushes and writes each batch between responses.
+    // Once closed it only writes what is already queued, so an interrupt from
+    // close() lost inside a write cannot leave it waiting forever.
+    private void deliverPushes() {
+        while (true) {
+            String push;
+            if (closed) {
+                push = pendingPushes.poll();
+                if (push == null) {
+                    return;
+                }
+            } else {
+                try {
+                    push = pendingPushes.take();
+                } catch (InterruptedException e) {
+                    continue; // close() sets the flag before interrupting
+                }
+            }
+            writeLock.lock();
+            try {
+                do {
+                    writeLine(push);
+                } while ((push = pendingPushes.poll()) != null);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    // Caller must hold writeLock
+    private void writePlainLine(String line) {
+        super.println(line);
+    }
+
+    // Caller must hold writeLock
+    private void writeLine(String line) {
+        int threshold = compressionThreshold;
+        if (threshold >= 0 && line != null && line.length() >= threshold) {
+            super.println(ProtocolConstants.RESPONSE_COMPRESSED + ProtocolConstants.DELIMITER
+                    + CompressionUtils.deflate(line));
+        } else {
+            super.println(line);
+        }
+    }
+
+    /**
+     * Buffers the start of a streamed line until it reaches the compression
+     * threshold. Short lines are written as-is on close; longer ones switch to
+     * a {@code COMPRESSED%%} line deflated straight into the socket.
+     */
+    private final class CompressingLineWriter extends Writer {
+        private final StringBuilder head;
+        private final int threshold;
+        private Writer deflating; // null until the threshold is reached
+
+        CompressingLineWriter(String prefix, int threshold) {
+            this.head = new StringBuilder(Math.max(threshold, prefix.length()) + 16).append(prefix);
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (deflating != null) {
+                deflating.write(cbuf, off, len);
+                return;
+            }
+            head.append(cbuf, off, len);
+            if (head.length() >= threshold) {
+                startDeflating();
+            }
+        }
+
+        private void startDeflating() throws IOException {
+            ConnectionWriter.this.flush(); // nothing buffered in PrintWriter may follow the raw bytes
+            OutputStream socket = new BufferedOutputStream(new FilterOutputStream(rawOut) {
+                @Override
+                public void close() throws IOException {
+                    flush(); // keep the connection open
+                }
+            });
+            socket.write((ProtocolConstants.RESPONSE_COMPRESSED + ProtocolConstants.DELIMITER)
+                    .getBytes(StandardCharsets.US_ASCII));
+            // Buffer chars so the encoder sees large chunks rather than one call per JSON token
+            deflating = new BufferedWriter(new OutputStreamWriter(CompressionUtils.deflatingStream(socket),
+                    StandardCharsets.UTF_8), STREAM_BUFFER_CHARS);
+            deflating.append(head);
+            head.setLength(0);
+        }
+
+        @Override
+        public void flush() {
+            // Only complete lines are flushed, on close
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deflating == null) {
+                writePlainLine(head.toString());
+                return;
+            }
+            deflating.close();
+            rawOut.write(System.lineSeparator().getBytes(StandardCharsets.US_ASCII));
+            rawOut.flush();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package server.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import model.Email;
+import model.EmailPage;
+import server.dispatch.BoundedExecutor;
+import server.dispatch.RateLimiter;
+import server.protocol.CredentialsRequest;
+import server.service.AuthService;
+import server.service.EmailService;
+import server.service.Session;
+import server.service.SessionManager;
+import utils.LogHandler;
+import utils.ProtocolConstants;
+import utils.ServerConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optional HTTP/JSON front end for internal tooling, served by the JDK's
+ * {@code com.sun.net.httpserver} next to the socket protocol.
+ * <p>
+ * It calls {@link AuthService} and {@link EmailService} directly rather than
+ * translating to {@code COMMAND%%json} lines. Logging in returns a bearer
+ * token for a token-only {@link Session}; the token a socket LOGIN returns is
+ * accepted as well. Responses have a fixed length
+ * so connections stay alive between requests, and bodies of at least
+ * {@link ServerConstants#COMPRESSION_THRESHOLD_BYTES} are gzipped for clients
+ * that accept it.
+ *
+ * <pre>
+ * POST /api/register          {"email","password"}        201
+ * POST /api/login             {"email","password"}        200 {"token"}
+ * POST /api/logout                                        204
+ * GET  /api/emails?type=received[&amp;limit&amp;cursor&amp;fields]  200 page, 304 with If-None-Match
+ * POST /api/emails            {"to","subject","body"}     201 {"id"}
+ * GET  /api/emails/{id}                                   200 email
+ * GET  /api/search?type=&amp;keyword=[&amp;fields]             200 list
+ * GET  /api/sync[?epoch&amp;since]                            200 changes
+ * </pre>
+ * Requests run on a bounded pool; once its queue is full the accepting thread
+ * runs requests itself, which slows acceptance instead of queueing without bound.
+ * Register and login hash passwords on the same bounded auth executor as the
+ * socket protocol, and answer 503 when it is saturated.
+ */
+@Slf4j
+public class HttpGateway {
+
+    private static final String API_PREFIX = "/api/";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern(ServerConstants.TIMESTAMP_FORMAT);
+
+    /** Ends a request with an HTTP error status and a JSON {"error"} body. */
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final AuthService authService;
+    private final EmailService emailService;
+    private final SessionManager sessionManager;
+    private final RateLimiter rateLimiter;
+    private final BoundedExecutor authExecutor;
+    private final Gson gson = new Gson();
+
+    private HttpServer server;
+    private ThreadPoolExecutor executor;
+
+    public HttpGateway(AuthService authService, EmailService emailService, SessionManager sessionManager,
+            RateLimiter rateLimiter) {
+        this(authService, emailService, sessionManager, rateLimiter, BoundedExecutor.inline("auth"));
+    }
+
+    /**
+     * @param authExecutor where password hashing runs, shared with the socket protocol
+     */
+    public HttpGateway(AuthService authService, EmailService emailService, SessionManager sessionManager,
+            RateLimiter rateLimiter, BoundedExecutor authExecutor) {
+        this.authService = authService;
+        this.emailService = emailService;
+        this.sessionManager = sessionManager;
+        this.rateLimiter = rateLimiter;
+        this.authExecutor = authExecutor;
+    }
+
+    /**
+     * Starts listening.
+     *
+     * @param address bind address; port 0 picks a free port
+     */
+    public void start(InetSocketAddress address) throws IOException {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(ServerConstants.HTTP_THREADS, ServerConstants.HTTP_THREADS,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(ServerConstants.HTTP_QUEUE_LIMIT), task -> {
+                    Thread thread = new Thread(task, "http-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(API_PREFIX, this::handle);
+        server.start();
+        log.info("HTTP gateway listening on {}", server.getAddress());
+        LogHandler.info("HTTP gateway listening on " + server.getAddress());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and gives in-flight ones a moment to finish.
+     */
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("HTTP gateway stopped");
+        LogHandler.info("HTTP gateway stopped");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (HttpError e) {
+                respondError(exchange, e.status, e.getMessage());
+            } catch (JsonParseException e) {
+                respondError(exchange, 400, "Malformed JSON");
+            } catch (RuntimeException e) {
+                log.error("HTTP {} {} failed: {}", exchange.getRequestMethod(), exchange.getRequestURI(),
+                        e.getMessage());
+                LogHandler.error("HTTP request failed: " + e.getMessage());
+                respondError(exchange, 500, "Internal error");
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+
+        switch (method + " " + (path.startsWith("emails/") ? "emails/{id}" : path)) {
+            case "POST register" -> register(exchange);
+            case "POST login" -> login(exchange);
+            case "POST logout" -> logout(exchange);
+            case "GET emails" -> listEmails(exchange);
+            case "POST emails" -> sendEmail(exchange);
+            case "GET emails/{id}" -> readEmail(exchange, path.substring("emails/".length()));
+            case "GET search" -> search(exchange);
+            case "GET sync" -> sync(exchange);
+            default -> throw new HttpError(404, "No such endpoint: " + method + " " + API_PREFIX + path);
+        }
+    }
+
+    private void register(HttpExchange exchange) throws IOException {
+        CredentialsRequest credentials = readBody(exchange, CredentialsRequest.class);
+        checkRateLimit(exchange, ProtocolConstants.CMD_REGISTER, null);
+        String failure = onAuthExecutor(() -> authService.register(credentials));
+        if (failure != null) {
+            throw new HttpError("Email already registered".equals(failure) ? 409 : 400, failure);
+        }
+        respond(exchange, 201, null);
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        CredentialsRequest credentials = readBody(exchange, CredentialsRequest.class);
+        checkRateLimit(exchange, ProtocolConstants.CMD_LOGIN, null);
+        String address = exchange.getRemoteAddress().getAddress().getHostAddress();
+        String failure = onAuthExecutor(() -> authService.authenticate(credentials, address));
+        if (failure != null) {
+            throw new HttpError(failure.startsWith(AuthService.LOCKED_OUT) ? 429 : 401, failure);
+        }
+
+        Session session = sessionManager.startTokenSession(credentials.email(),
+                ServerConstants.HTTP_SESSION_TTL_SECONDS * 1000L);
+        log.info("HTTP login: {}", credentials.email());
+        LogHandler.info("HTTP login: " + credentials.email());
+
+        JsonObject body = new JsonObject();
+        body.addProperty("token", session.getToken());
+        body.addProperty("expiresIn", ServerConstants.HTTP_SESSION_TTL_SECONDS);
+        respond(exchange, 200, body);
+    }
+
+    private void logout(HttpExchange exchange) throws IOException {
+        Session session = sessionManager.findSession(bearerToken(exchange));
+        if (session != null) {
+            sessionManager.endSession(session);
+            log.info("HTTP logout: {}", session.getEmail());
+            LogHandler.info("HTTP logout: " + session.getEmail());
+        }
+        respond(exchange, 204, null);
+    }
+
+    private void listEmails(HttpExchange exchange) throws IOException {
+        String user = requireUser(exchange);
+        Map<String, String> query = queryParams(exchange);
+        String type = requireParam(query, "type");
+        String fields = projection(query);
+        String cursor = query.get("cursor");
+        int limit = parseInt(query.get("limit"), ServerConstants.DEFAULT_PAGE_SIZE);
+
+        // Read before listing, as for RETRIEVE_EMAILS: a racing change yields an older version
+        String version = emailService.getMailboxVersion(user);
+        String etag = "\"" + version + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (cursor == null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            respond(exchange, 304, null);
+            return;
+        }
+
+        EmailPage<Email> page;
+        try {
+            page = emailService.getEmailPage(user, type, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, "Invalid cursor");
+        }
+        respond(exchange, 200, new EmailPage<>(EmailService.project(page.getEmails(), fields),
+                page.getNextCursor(), version));
+    }
+
+    private void sendEmail(HttpExchange exchange) throws IOException {
+        String user = requireUser(exchange);
+        Email email = readBody(exchange, Email.class);
+        if (email.getFrom() != null && !email.getFrom().equalsIgnoreCase(user)) {
+            throw new HttpError(403, "Cannot send as another user");
+        }
+        checkRateLimit(exchange, ProtocolConstants.CMD_SEND_EMAIL, user);
+
+        email.setFrom(user);
+        email.setId(UUID.randomUUID().toString());
+        if (email.getTimestamp() == null) {
+            email.setTimestamp(ZonedDateTime.now(ZoneOffset.UTC).format(TIMESTAMP));
+        }
+        email.setVisible(true);
+        email.setEdited(false);
+        if (!emailService.sendEmail(email)) {
+            throw new HttpError(400, "Validation or recipient failure");
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("id", email.getId());
+        respond(exchange, 201, body);
+    }
+
+    private void readEmail(HttpExchange exchange, String id) throws IOException {
+        String user = requireUser(exchange);
+        Email email = emailService.getEmailById(user, id);
+        if (email == null) {
+            throw new HttpError(404, "Email not found or access denied");
+        }
+        respond(exchange, 200, email);
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        String user = requireUser(exchange);
+        Map<String, String> query = queryParams(exchange);
+        String type = requireParam(query, "type");
+        String keyword = requireParam(query, "keyword");
+        String fields = projection(query);
+        checkRateLimit(exchange, ProtocolConstants.CMD_SEARCH_EMAIL, user);
+
+        List<Email> results = emailService.searchEmails(user, type, keyword);
+        respond(exchange, 200, EmailService.project(results, fields));
+    }
+
+    private void sync(HttpExchange exchange) throws IOException {
+        String user = requireUser(exchange);
+        Map<String, String> query = queryParams(exchange);
+        long since = parseLong(query.get("since"), 0);
+        respond(exchange, 200, emailService.syncMailbox(user, query.get("epoch"), since));
+    }
+
+    // === Request helpers ===
+
+    private String requireUser(HttpExchange exchange) {
+        Session session = sessionManager.findSession(bearerToken(exchange));
+        if (session == null) {
+            throw new HttpError(401, "Missing, unknown or expired bearer token");
+        }
+        return session.getEmail();
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ") ? header.substring("Bearer ".length()).trim() : null;
+    }
+
+    private void checkRateLimit(HttpExchange exchange, String command, String user) {
+        long retryAfterMs = rateLimiter.acquire(command, user,
+                exchange.getRemoteAddress().getAddress().getHostAddress());
+        if (retryAfterMs > 0) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf((retryAfterMs + 999) / 1000));
+            throw new HttpError(429, "Rate limited, retry after " + retryAfterMs + " ms");
+        }
+    }
+
+    // Runs a password check or hash on the auth executor and waits for its outcome
+    private String onAuthExecutor(Supplier<String> task) {
+        AtomicReference<String> outcome = new AtomicReference<>();
+        try {
+            authExecutor.submit(() -> outcome.set(task.get())).join();
+        } catch (RejectedExecutionException e) {
+            throw new HttpError(503, "Server busy");
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return outcome.get();
+    }
+
+    private <T> T readBody(HttpExchange exchange, Class<T> type) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(ServerConstants.HTTP_MAX_BODY_BYTES + 1);
+        }
+        if (body.length > ServerConstants.HTTP_MAX_BODY_BYTES) {
+            throw new HttpError(413, "Request body too large");
+        }
+        T parsed = gson.fromJson(new String(body, StandardCharsets.UTF_8), type);
+        if (parsed == null) {
+            throw new HttpError(400, "Missing JSON body");
+        }
+        return parsed;
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int split = pair.indexOf('=');
+            String key = URLDecoder.decode(split < 0 ? pair : pair.substring(0, split), StandardCharsets.UTF_8);
+            String value = split < 0 ? "" : URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static String requireParam(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isBlank()) {
+            throw new HttpError(400, "Missing query parameter '" + name + "'");
+        }
+        return value;
+    }
+
+    private static String projection(Map<String, String> query) {
+        String fields = query.getOrDefault("fields", ProtocolConstants.FIELDS_SNIPPET);
+        if (!EmailService.isProjection(fields)) {
+            throw new HttpError(400, "Invalid 'fields'");
+        }
+        return fields;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Not a number: " + value);
+        }
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Not a number: " + value);
+        }
+    }
+
+    // === Response helpers ===
+
+    private void respondError(HttpExchange exchange, int status, String message) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("error", message);
+        respond(exchange, status, body);
+    }
+
+    /**
+     * Sends a JSON body (or none) with a fixed Content-Length, gzipped when
+     * large enough and accepted by the client.
+     */
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        if (body == null) {
+            if (status == 304) {
+                // The JDK 17 server drops the connection after a 304; announce it so clients do not reuse it
+                headers.set("Connection", "close");
+            }
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        headers.set("Vary", "Accept-Encoding");
+        if (bytes.length >= ServerConstants.COMPRESSION_THRESHOLD_BYTES && acceptsGzip(exchange)) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            headers.set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return accepted != null && accepted.toLowerCase().contains("gzip");
+    }
+}
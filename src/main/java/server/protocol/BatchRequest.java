@@ -0,0 +1,10 @@
+package server.protocol;
+
+import com.google.gson.JsonArray;
+
+/**
+ * Body of BATCH. Items stay as JSON until they are executed, because the
+ * batch user is filled into each item's payload before it is decoded.
+ */
+public record BatchRequest(String email, Boolean parallel, JsonArray commands) {
+}
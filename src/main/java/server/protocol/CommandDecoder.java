@@ -0,0 +1,81 @@
+package server.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import model.Email;
+import utils.ProtocolConstants;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * Decodes protocol frames ({@code COMMAND%%{json}}) into typed {@link Request}s
+ * in a single pass: the command is located with one {@code indexOf}, and the
+ * payload is bound straight from the frame into the request type registered
+ * for that command, without splitting, copying or building a JSON tree first.
+ */
+public final class CommandDecoder {
+
+    private static final Gson gson = new Gson();
+
+    private static final Map<String, Class<?>> BODY_TYPES = Map.ofEntries(
+            Map.entry(ProtocolConstants.CMD_REGISTER, CredentialsRequest.class),
+            Map.entry(ProtocolConstants.CMD_LOGIN, CredentialsRequest.class),
+            Map.entry(ProtocolConstants.CMD_RESUME, ResumeRequest.class),
+            Map.entry(ProtocolConstants.CMD_LOGOUT, SessionRequest.class),
+            Map.entry(ProtocolConstants.CMD_EXIT, SessionRequest.class),
+            Map.entry(ProtocolConstants.CMD_SEND_EMAIL, Email.class),
+            Map.entry(ProtocolConstants.CMD_RETRIEVE_EMAILS, MailboxQuery.class),
+            Map.entry(ProtocolConstants.CMD_SEARCH_EMAIL, MailboxQuery.class),
+            Map.entry(ProtocolConstants.CMD_READ_EMAIL, ReadEmailRequest.class),
+            Map.entry(ProtocolConstants.CMD_SYNC, SyncRequest.class),
+            Map.entry(ProtocolConstants.CMD_BATCH, BatchRequest.class),
+            Map.entry(ProtocolConstants.CMD_IDLE, IdleRequest.class),
+            Map.entry(ProtocolConstants.CMD_HELLO, HelloRequest.class));
+
+    /**
+     * Decodes a raw frame.
+     *
+     * @throws IllegalArgumentException if the frame has no delimiter
+     */
+    public static Request decode(String frame) {
+        int split = frame.indexOf(ProtocolConstants.DELIMITER);
+        if (split < 0) {
+            throw new IllegalArgumentException("Missing delimiter");
+        }
+        String command = frame.substring(0, split);
+        Class<?> type = BODY_TYPES.get(command);
+        if (type == null) {
+            return new Request(command, frame.substring(split + ProtocolConstants.DELIMITER.length()));
+        }
+
+        try {
+            StringReader payload = new StringReader(frame);
+            payload.skip(split + ProtocolConstants.DELIMITER.length()); // O(1), avoids copying the payload
+            return new Request(command, gson.fromJson(payload, type));
+        } catch (JsonParseException | IOException e) {
+            return Request.malformed(command);
+        }
+    }
+
+    /**
+     * Decodes a command whose payload is already JSON (e.g. a BATCH item).
+     */
+    public static Request decode(String command, JsonElement payload) {
+        Class<?> type = BODY_TYPES.get(command);
+        if (type == null) {
+            return new Request(command, payload.toString());
+        }
+        try {
+            return new Request(command, gson.fromJson(payload, type));
+        } catch (JsonParseException e) {
+            return Request.malformed(command);
+        }
+    }
+
+    private CommandDecoder() {
+        // Prevent instantiation
+    }
+}
@@ -0,0 +1,14 @@
+package server.protocol;
+
+/**
+ * Body of REGISTER and LOGIN.
+ *
+ * @param deviceId LOGIN only: stable id of the client's device, so a re-login
+ *                 replaces that device's session instead of adding one; optional
+ */
+public record CredentialsRequest(String email, String password, String deviceId) {
+
+    public CredentialsRequest(String email, String password) {
+        this(email, password, null);
+    }
+}
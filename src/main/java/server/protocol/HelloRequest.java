@@ -0,0 +1,9 @@
+package server.protocol;
+
+import java.util.List;
+
+/**
+ * Body of the connection-level HELLO handshake.
+ */
+public record HelloRequest(Integer version, List<String> capabilities) {
+}
@@ -0,0 +1,8 @@
+package server.protocol;
+
+/**
+ * Body of IDLE: the client's SYNC bookmark and how long it is willing to
+ * wait. {@code timeoutMs} is optional and capped by the server.
+ */
+public record IdleRequest(String email, String epoch, Long since, Long timeoutMs) {
+}
@@ -0,0 +1,10 @@
+package server.protocol;
+
+/**
+ * Body of RETRIEVE_EMAILS and SEARCH_EMAIL. Optional fields are {@code null}
+ * when absent: {@code keyword} is only used by SEARCH_EMAIL, {@code limit},
+ * {@code cursor} and {@code ifVersion} only by paged RETRIEVE_EMAILS.
+ */
+public record MailboxQuery(String email, String type, String keyword, Integer limit, String cursor,
+        String fields, String ifVersion) {
+}
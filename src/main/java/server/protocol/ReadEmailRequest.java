@@ -0,0 +1,7 @@
+package server.protocol;
+
+/**
+ * Body of READ_EMAIL.
+ */
+public record ReadEmailRequest(String email, String id) {
+}
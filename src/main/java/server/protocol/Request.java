@@ -0,0 +1,23 @@
+package server.protocol;
+
+/**
+ * One decoded protocol frame: the command name and its typed body.
+ * <p>
+ * {@code body} is the typed request (e.g. {@link CredentialsRequest}) for known
+ * commands, the unparsed payload String for unknown ones, and {@code null}
+ * when the payload could not be decoded.
+ */
+public record Request(String command, Object body) {
+
+    public static Request malformed(String command) {
+        return new Request(command, null);
+    }
+
+    public boolean isMalformed() {
+        return body == null;
+    }
+
+    public <T> T body(Class<T> type) {
+        return type.cast(body);
+    }
+}
@@ -0,0 +1,7 @@
+package server.protocol;
+
+/**
+ * Body of RESUME: the token of a session saved across a server restart.
+ */
+public record ResumeRequest(String token) {
+}
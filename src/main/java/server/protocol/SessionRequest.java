@@ -0,0 +1,13 @@
+package server.protocol;
+
+/**
+ * Body of LOGOUT and EXIT.
+ *
+ * @param all LOGOUT only: end the user's sessions on every device, not just this one
+ */
+public record SessionRequest(String email, Boolean all) {
+
+    public SessionRequest(String email) {
+        this(email, null);
+    }
+}
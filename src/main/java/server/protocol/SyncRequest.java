@@ -0,0 +1,7 @@
+package server.protocol;
+
+/**
+ * Body of SYNC. {@code epoch} and {@code since} are absent on a first sync.
+ */
+public record SyncRequest(String email, String epoch, Long since) {
+}
@@ -1,61 +1,82 @@
 package server.service;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import lombok.extern.slf4j.Slf4j;
 import model.User;
 import server.data.FileDatabase;
+import server.dispatch.LoginThrottle;
+import server.protocol.CredentialsRequest;
+import server.protocol.ResumeRequest;
 import utils.LogHandler;
 import utils.ProtocolConstants;
 import utils.SecurityUtils;
 import utils.ServerConstants;
 
 import java.io.PrintWriter;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles authentication operations: register, login, and logout.
  * Combines SLF4J structured logging with persistent LogHandler file logging.
+ * <p>
+ * Failed logins are counted per account and client address by a
+ * {@link LoginThrottle}; once locked out, attempts are refused before any
+ * password is hashed.
  */
 @Slf4j
 public class AuthService {
 
+    /** Start of the failure reason while an account or address is locked out. */
+    public static final String LOCKED_OUT = "Too many failed attempts";
+
     private final FileDatabase database;
     private final SessionManager sessionManager;
+    private final LoginThrottle loginThrottle;
     private final Gson gson = new Gson();
 
     public AuthService(FileDatabase database, SessionManager sessionManager) {
+        this(database, sessionManager, new LoginThrottle(new LoginThrottle.Policy(
+                TimeUnit.SECONDS.toMillis(ServerConstants.LOGIN_FAILURE_WINDOW_SECONDS),
+                ServerConstants.LOGIN_ACCOUNT_FAILURE_THRESHOLD, ServerConstants.LOGIN_ADDRESS_FAILURE_THRESHOLD,
+                ServerConstants.LOGIN_LOCKOUT_BASE_MS, ServerConstants.LOGIN_LOCKOUT_MAX_MS)));
+    }
+
+    public AuthService(FileDatabase database, SessionManager sessionManager, LoginThrottle loginThrottle) {
         this.database = database;
         this.sessionManager = sessionManager;
+        this.loginThrottle = loginThrottle;
     }
 
     /**
-     * Handles user registration: validation, hashing, and persistence.
+     * Handles user registration from a raw JSON payload.
      */
     public void handleRegister(String payload, PrintWriter out) {
-        long start = System.nanoTime();
+        CredentialsRequest request;
         try {
-            User request = gson.fromJson(payload, User.class);
-
-            if (request.getEmail() == null || request.getPassword() == null) {
-                out.println(ProtocolConstants.RESPONSE_REGISTER_FAIL + "%%Missing required fields: email or password");
-                return;
-            }
-
-            if (database.userExists(request.getEmail())) {
-                out.println(ProtocolConstants.RESPONSE_REGISTER_FAIL + "%%Email already registered");
-                log.warn("Registration failed: Email already registered - {}", request.getEmail());
-                LogHandler.warn("Registration failed: Email already registered - " + request.getEmail());
-                return;
-            }
-
-            String salt = SecurityUtils.generateSalt();
-            String hashed = SecurityUtils.hashPassword(request.getPassword(), salt);
-            User securedUser = new User(request.getEmail(), salt + "$" + hashed);
+            request = gson.fromJson(payload, CredentialsRequest.class);
+        } catch (JsonParseException e) {
+            out.println(ProtocolConstants.RESPONSE_REGISTER_FAIL + "%%Invalid JSON or internal error");
+            log.warn("Registration rejected: invalid JSON");
+            LogHandler.warn("Registration rejected: invalid JSON");
+            return;
+        }
+        handleRegister(request, out);
+    }
 
-            database.saveUser(securedUser);
-            out.println(ProtocolConstants.RESPONSE_REGISTER_SUCCESS);
-            log.info("User registered: {}", request.getEmail());
-            LogHandler.info("User registered: " + request.getEmail());
+    /**
+     * Handles user registration: validation, hashing, and persistence.
+     */
+    public void handleRegister(CredentialsRequest request, PrintWriter out) {
+        long start = System.nanoTime();
+        try {
+            String failure = register(request);
+            out.println(failure == null
+                    ? ProtocolConstants.RESPONSE_REGISTER_SUCCESS
+                    : ProtocolConstants.RESPONSE_REGISTER_FAIL + "%%" + failure);
 
         } catch (Exception e) {
             out.println(ProtocolConstants.RESPONSE_REGISTER_FAIL + "%%Invalid JSON or internal error");
@@ -70,46 +91,72 @@ public class AuthService {
     }
 
     /**
-     * Verifies login credentials, starts a session if successful.
+     * Registers a user independently of the transport.
+     *
+     * @return null on success, otherwise the reason the registration was refused
      */
-    public void handleLogin(String payload, Socket clientSocket, PrintWriter out) {
-        long start = System.nanoTime();
-        try {
-            User request = gson.fromJson(payload, User.class);
+    public String register(CredentialsRequest request) {
+        if (request == null || request.email() == null || request.password() == null) {
+            return "Missing required fields: email or password";
+        }
 
-            if (request.getEmail() == null || request.getPassword() == null) {
-                out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%Missing required fields: email or password");
-                return;
-            }
+        if (database.userExists(request.email())) {
+            log.warn("Registration failed: Email already registered - {}", request.email());
+            LogHandler.warn("Registration failed: Email already registered - " + request.email());
+            return "Email already registered";
+        }
 
-            User storedUser = database.getUser(request.getEmail());
-            if (storedUser == null) {
-                out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%User not found");
-                log.warn("Login failed: User not found - {}", request.getEmail());
-                LogHandler.warn("Login failed: User not found - " + request.getEmail());
-                return;
-            }
+        User securedUser = new User(request.email(), SecurityUtils.hashPassword(request.password()));
 
-            String[] parts = storedUser.getPassword().split("\\$");
-            if (parts.length != 2) {
-                out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%Corrupted password entry");
-                log.error("Login failed: Corrupted password for user - {}", request.getEmail());
-                LogHandler.error("Login failed: Corrupted password for user - " + request.getEmail());
-                return;
-            }
+        database.saveUser(securedUser);
+        log.info("User registered: {}", request.email());
+        LogHandler.info("User registered: " + request.email());
+        return null;
+    }
+
+    /**
+     * Verifies login credentials from a raw JSON payload.
+     *
+     * @return the new session, or null if the login failed
+     */
+    public Session handleLogin(String payload, Socket clientSocket, PrintWriter out) {
+        CredentialsRequest request;
+        try {
+            request = gson.fromJson(payload, CredentialsRequest.class);
+        } catch (JsonParseException e) {
+            out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%Invalid JSON or internal error");
+            log.warn("Login rejected: invalid JSON");
+            LogHandler.warn("Login rejected: invalid JSON");
+            return null;
+        }
+        return handleLogin(request, clientSocket, out);
+    }
 
-            boolean match = SecurityUtils.verifyPassword(request.getPassword(), parts[1], parts[0]);
-
-            if (match) {
-                sessionManager.startSession(request.getEmail(), clientSocket);
-                out.println(ProtocolConstants.RESPONSE_LOGIN_SUCCESS);
-                log.info("User logged in: {}", request.getEmail());
-                LogHandler.info("User logged in: " + request.getEmail());
-            } else {
-                out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%Invalid credentials");
-                log.warn("Login failed: Invalid credentials for {}", request.getEmail());
-                LogHandler.warn("Login failed: Invalid credentials for " + request.getEmail());
+    /**
+     * Verifies login credentials, starts a session if successful and answers
+     * with its token and device id: {@code LOGIN_SUCCESS%%{"token":...,"deviceId":...}}.
+     * Sessions the user holds on other devices stay logged in.
+     *
+     * @return the new session, for the caller to bind to the connection, or
+     *         null if the login failed
+     */
+    public Session handleLogin(CredentialsRequest request, Socket clientSocket, PrintWriter out) {
+        long start = System.nanoTime();
+        try {
+            if (!isValidDeviceId(request == null ? null : request.deviceId())) {
+                out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%Invalid deviceId");
+                return null;
+            }
+            String failure = authenticate(request, addressOf(clientSocket));
+            if (failure == null) {
+                Session session = sessionManager.startSession(request.email(), request.deviceId(), clientSocket);
+                out.println(ProtocolConstants.RESPONSE_LOGIN_SUCCESS + ProtocolConstants.DELIMITER
+                        + sessionBody(session));
+                log.info("User logged in: {}", request.email());
+                LogHandler.info("User logged in: " + request.email());
+                return session;
             }
+            out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%" + failure);
 
         } catch (Exception e) {
             out.println(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%Invalid JSON or internal error");
@@ -121,6 +168,128 @@ public class AuthService {
             long end = System.nanoTime();
             log.debug("handleLogin completed in {} µs", (end - start) / 1000);
         }
+        return null;
+    }
+
+    /**
+     * Resumes a session saved across a server restart, answering like LOGIN:
+     * {@code RESUME_SUCCESS%%{"token":...,"deviceId":...}} with a new token.
+     * No password is involved, so this is cheap enough to run inline.
+     *
+     * @return the resumed session, for the caller to bind to the connection, or
+     *         null if the token is unknown or expired
+     */
+    public Session handleResume(ResumeRequest request, Socket clientSocket, PrintWriter out) {
+        String token = request == null ? null : request.token();
+        if (token == null) {
+            out.println(ProtocolConstants.RESPONSE_RESUME_FAIL + "%%Missing 'token'");
+            return null;
+        }
+        Session session = sessionManager.resumeSession(token, clientSocket);
+        if (session == null) {
+            out.println(ProtocolConstants.RESPONSE_RESUME_FAIL + "%%Unknown or expired session");
+            log.info("Resume refused from {}", addressOf(clientSocket));
+            LogHandler.info("Resume refused from " + addressOf(clientSocket));
+            return null;
+        }
+        out.println(ProtocolConstants.RESPONSE_RESUME_SUCCESS + ProtocolConstants.DELIMITER + sessionBody(session));
+        return session;
+    }
+
+    private static JsonObject sessionBody(Session session) {
+        JsonObject body = new JsonObject();
+        body.addProperty("token", session.getToken());
+        if (session.getDeviceId() != null) {
+            body.addProperty("deviceId", session.getDeviceId());
+        }
+        return body;
+    }
+
+    /**
+     * Checks credentials from an unknown address; see {@link #authenticate(CredentialsRequest, String)}.
+     */
+    public String authenticate(CredentialsRequest request) {
+        return authenticate(request, null);
+    }
+
+    /**
+     * Checks credentials without starting a session, so that transports with
+     * their own notion of a session can share the verification. A stored hash
+     * that is legacy or weaker than the current setting is replaced after a
+     * successful check, while the plain password is at hand.
+     *
+     * @param clientAddress address the attempt came from, or null if unknown
+     * @return null if the credentials are valid, otherwise the reason they were refused;
+     *         a lockout starts with {@link #LOCKED_OUT}
+     */
+    public String authenticate(CredentialsRequest request, String clientAddress) {
+        if (request == null || request.email() == null || request.password() == null) {
+            return "Missing required fields: email or password";
+        }
+
+        long lockedMs = loginThrottle.lockedForMillis(request.email(), clientAddress);
+        if (lockedMs > 0) {
+            log.warn("Login refused: {} locked out for {} ms (from {})", request.email(), lockedMs, clientAddress);
+            LogHandler.warn("Login refused: " + request.email() + " locked out for " + lockedMs + " ms");
+            return LOCKED_OUT + ", retry in " + (lockedMs + 999) / 1000 + " s";
+        }
+
+        String failure = verify(request);
+        if (failure == null) {
+            loginThrottle.recordSuccess(request.email());
+        } else if (!failure.startsWith("Corrupted")) {
+            long lockout = loginThrottle.recordFailure(request.email(), clientAddress);
+            if (lockout > 0) {
+                log.warn("Locking out {} / {} for {} ms", request.email(), clientAddress, lockout);
+                LogHandler.warn("Locking out " + request.email() + " / " + clientAddress + " for " + lockout + " ms");
+            }
+        }
+        return failure;
+    }
+
+    private String verify(CredentialsRequest request) {
+        User storedUser = database.getUser(request.email());
+        if (storedUser == null) {
+            log.warn("Login failed: User not found - {}", request.email());
+            LogHandler.warn("Login failed: User not found - " + request.email());
+            return "User not found";
+        }
+
+        String stored = storedUser.getPassword();
+        if (!SecurityUtils.isWellFormed(stored)) {
+            log.error("Login failed: Corrupted password for user - {}", request.email());
+            LogHandler.error("Login failed: Corrupted password for user - " + request.email());
+            return "Corrupted password entry";
+        }
+
+        if (!SecurityUtils.verifyPassword(request.password(), stored)) {
+            log.warn("Login failed: Invalid credentials for {}", request.email());
+            LogHandler.warn("Login failed: Invalid credentials for " + request.email());
+            return "Invalid credentials";
+        }
+
+        if (SecurityUtils.needsRehash(stored)) {
+            upgradeHash(request, stored);
+        }
+        return null;
+    }
+
+    // Absent, or short and printable so it is safe to log
+    private static boolean isValidDeviceId(String deviceId) {
+        return deviceId == null || (!deviceId.isEmpty() && deviceId.length() <= ServerConstants.MAX_DEVICE_ID_LENGTH
+                && deviceId.chars().allMatch(c -> c > ' ' && c < 127));
+    }
+
+    private static String addressOf(Socket socket) {
+        InetAddress address = socket == null ? null : socket.getInetAddress();
+        return address == null ? null : address.getHostAddress();
+    }
+
+    private void upgradeHash(CredentialsRequest request, String stored) {
+        if (database.updateUserPassword(request.email(), stored, SecurityUtils.hashPassword(request.password()))) {
+            log.info("Password hash upgraded for {}", request.email());
+            LogHandler.info("Password hash upgraded for " + request.email());
+        }
     }
 
     /**
@@ -0,0 +1,103 @@
+package server.service;
+
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State of one client connection that outlives a single command: the socket,
+ * the session bound to it by LOGIN, and the IDLE wait parked for it.
+ * <p>
+ * Commands are authorised against this binding instead of the address a
+ * payload claims, and without a session map lookup.
+ */
+public final class ConnectionContext {
+
+    private final Socket socket;
+    private volatile Session session;
+    private final AtomicReference<CompletableFuture<Boolean>> idleWait = new AtomicReference<>();
+
+    public ConnectionContext(Socket socket) {
+        this.socket = socket;
+    }
+
+    public Socket socket() {
+        return socket;
+    }
+
+    /**
+     * Binds a freshly started session to this connection, replacing any earlier
+     * one. An IDLE parked under the earlier session is cancelled.
+     */
+    public void bind(Session session) {
+        cancelIdle();
+        this.session = session;
+    }
+
+    /**
+     * @return the session bound to this connection, or null
+     */
+    public Session session() {
+        return session;
+    }
+
+    /**
+     * Counts a command as activity of the bound session, if any.
+     */
+    public void touch() {
+        Session current = session;
+        if (current != null) {
+            current.touch();
+        }
+    }
+
+    /**
+     * Drops the bound session and cancels any parked IDLE.
+     */
+    public void unbind() {
+        cancelIdle();
+        session = null;
+    }
+
+    /**
+     * Records the IDLE wait parked for this connection. One still pending from
+     * an earlier IDLE is completed at once, as if it had timed out, so that
+     * request is answered and only one wait per connection counts against the
+     * waiter cap.
+     */
+    public void parkIdle(CompletableFuture<Boolean> wait) {
+        CompletableFuture<Boolean> previous = idleWait.getAndSet(wait);
+        if (previous != null) {
+            previous.complete(false);
+        }
+        wait.whenComplete((changed, error) -> idleWait.compareAndSet(wait, null));
+    }
+
+    /**
+     * Cancels the parked IDLE wait, if any, without answering it; cancelling
+     * frees its place among the parked waiters.
+     */
+    public void cancelIdle() {
+        CompletableFuture<Boolean> wait = idleWait.getAndSet(null);
+        if (wait != null) {
+            wait.cancel(false);
+        }
+    }
+
+    /**
+     * @return email of the user logged in on this connection, or null if
+     *         there is none or the session has been ended
+     */
+    public String user() {
+        Session current = session;
+        return current != null && current.isActive() ? current.getEmail() : null;
+    }
+
+    /**
+     * @return true if this connection holds an active session for {@code email}
+     */
+    public boolean isAuthenticatedAs(String email) {
+        String user = user();
+        return user != null && user.equalsIgnoreCase(email);
+    }
+}
@@ -1,12 +1,22 @@
 package server.service;
 
+import com.google.gson.JsonObject;
 import lombok.extern.slf4j.Slf4j;
 import model.Email;
+import model.EmailHeader;
+import model.EmailPage;
+import model.SyncResult;
 import server.data.FileDatabase;
 import utils.LogHandler;
+import utils.ProtocolConstants;
+import utils.ServerConstants;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service layer for handling email-related logic.
@@ -16,14 +26,22 @@ import java.util.UUID;
 @Slf4j
 public class EmailService {
 
+    private static final String CURSOR_PREFIX = "p1:";
+
     private final FileDatabase database;
+    private final SessionManager sessionManager; // null when pushes are not wanted (e.g. tools, tests)
 
     public EmailService(FileDatabase database) {
+        this(database, null);
+    }
+
+    public EmailService(FileDatabase database, SessionManager sessionManager) {
         this.database = database;
+        this.sessionManager = sessionManager;
     }
 
     /**
-     * Persists a new email to the database.
+     * Persists a new email to the database under a fresh server-assigned id.
      * 
      * @param email the email object to be saved
      * @return true if saved successfully, false if validation failed
@@ -42,14 +60,13 @@ public class EmailService {
             return false;
         }
 
-        if (email.getId() == null || email.getId().isBlank()) {
-            email.setId(UUID.randomUUID().toString());
-        }
+        email.setId(UUID.randomUUID().toString()); // never trust a client id: it could name someone else's email
 
         boolean success = database.saveEmail(email);
         if (success) {
             log.info("Email sent from {} to {} with subject '{}'", email.getFrom(), email.getTo(), email.getSubject());
             LogHandler.info("Email sent: from=" + email.getFrom() + ", to=" + email.getTo());
+            notifyRecipient(email);
         } else {
             log.error("Failed to save email to database for from={} to={}", email.getFrom(), email.getTo());
             LogHandler.error("Failed to save email: " + email.getId());
@@ -57,6 +74,25 @@ public class EmailService {
         return success;
     }
 
+    /**
+     * Pushes a lightweight NEW_EMAIL header (no body) to the recipient's live
+     * connection, if any. The client fetches the body with READ_EMAIL.
+     */
+    private void notifyRecipient(Email email) {
+        if (sessionManager == null) {
+            return;
+        }
+        JsonObject header = new JsonObject();
+        header.addProperty("id", email.getId());
+        header.addProperty("from", email.getFrom());
+        header.addProperty("subject", email.getSubject());
+        header.addProperty("timestamp", email.getTimestamp());
+        if (sessionManager.push(email.getTo(), ProtocolConstants.PUSH_NEW_EMAIL + ProtocolConstants.DELIMITER
+                + header)) {
+            log.debug("NEW_EMAIL pushed to {}", email.getTo());
+        }
+    }
+
     /**
      * Retrieves all emails received by a given user.
      * 
@@ -79,6 +115,80 @@ public class EmailService {
         return database.getEmailsForUser(email.toLowerCase(), true);
     }
 
+    /**
+     * Retrieves one page of a user's mailbox, newest first.
+     *
+     * @param email  mailbox owner
+     * @param type   "sent" or "received"
+     * @param cursor opaque cursor from a previous page, or null for the first page
+     * @param limit  requested page size (clamped to {@link ServerConstants#MAX_PAGE_SIZE})
+     * @return the page and the cursor of the following page
+     * @throws IllegalArgumentException if the cursor is not one issued by this server
+     */
+    public EmailPage<Email> getEmailPage(String email, String type, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, ServerConstants.MAX_PAGE_SIZE));
+        int fromPosition = cursor == null ? Integer.MAX_VALUE : decodeCursor(cursor);
+        log.debug("Fetching {} page for {} (from={} limit={})", type, email, fromPosition, pageSize);
+
+        List<Email> page = new ArrayList<>(pageSize);
+        int next = database.collectEmailsForUser(email.toLowerCase(), "sent".equalsIgnoreCase(type),
+                fromPosition, pageSize, page);
+        return new EmailPage<>(page, next < 0 ? null : encodeCursor(next));
+    }
+
+    private static String encodeCursor(int position) {
+        byte[] raw = (CURSOR_PREFIX + position).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    private static int decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith(CURSOR_PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            int position = Integer.parseInt(raw.substring(CURSOR_PREFIX.length()));
+            if (position < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return position;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Returns the current version of a user's mailbox, used to answer
+     * conditional RETRIEVE_EMAILS requests without listing.
+     */
+    public String getMailboxVersion(String email) {
+        return database.getMailboxVersion(email);
+    }
+
+    /**
+     * Returns what changed in a user's mailbox since the client's last SYNC.
+     *
+     * @param email mailbox owner
+     * @param epoch epoch from the previous SYNC response, or null on first sync
+     * @param since sequence from the previous SYNC response
+     * @return added/edited emails and hidden ids, or a full-resync signal
+     */
+    public SyncResult syncMailbox(String email, String epoch, long since) {
+        log.debug("Syncing mailbox for {} (epoch={} since={})", email, epoch, since);
+        return database.getChangesSince(email.toLowerCase(), epoch, since);
+    }
+
+    /**
+     * Waits for a user's mailbox to change after the client's SYNC bookmark.
+     *
+     * @return future completed with true on a change (or a stale bookmark),
+     *         false on timeout, or null if the server has too many waiters
+     */
+    public CompletableFuture<Boolean> awaitMailboxChange(String email, String epoch, long since, long timeoutMs) {
+        log.debug("Parking IDLE for {} (epoch={} since={} timeout={}ms)", email, epoch, since, timeoutMs);
+        return database.awaitChange(email, epoch, since, timeoutMs);
+    }
+
     /**
      * Searches user's emails (sent or received) for a keyword match.
      * 
@@ -115,4 +225,29 @@ public class EmailService {
         LogHandler.info("READ_EMAIL success: " + emailId);
         return email;
     }
+
+    /**
+     * @return true if {@code fields} names a listing projection
+     */
+    public static boolean isProjection(String fields) {
+        return ProtocolConstants.FIELDS_HEADERS.equals(fields)
+                || ProtocolConstants.FIELDS_SNIPPET.equals(fields)
+                || ProtocolConstants.FIELDS_FULL.equals(fields);
+    }
+
+    /**
+     * Applies a listing projection. Only "full" ships bodies; the others send
+     * headers, optionally with a short preview computed here.
+     */
+    public static List<?> project(List<Email> emails, String fields) {
+        if (ProtocolConstants.FIELDS_FULL.equals(fields)) {
+            return emails;
+        }
+        int previewLength = ProtocolConstants.FIELDS_SNIPPET.equals(fields) ? ServerConstants.PREVIEW_LENGTH : 0;
+        List<EmailHeader> headers = new ArrayList<>(emails.size());
+        for (Email email : emails) {
+            headers.add(EmailHeader.of(email, previewLength));
+        }
+        return headers;
+    }
 }
@@ -0,0 +1,19 @@
+package server.service;
+
+/**
+ * Outbound channel of a live client connection that the server can push
+ * unsolicited messages to (e.g. NEW_EMAIL notifications).
+ * <p>
+ * Implementations must never interleave a pushed line with a response that
+ * is being written on the same connection.
+ */
+public interface PushChannel {
+
+    /**
+     * Queues a protocol line for delivery to the client.
+     *
+     * @param line complete protocol line (without line terminator)
+     * @return false if the line was dropped because the outbound queue is full
+     */
+    boolean push(String line);
+}
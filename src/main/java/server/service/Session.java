@@ -0,0 +1,126 @@
+package server.service;
+
+import java.net.Socket;
+
+/**
+ * One authenticated session, identified by an opaque, unguessable token.
+ * <p>
+ * The connection that logged in keeps a reference to its session, so later
+ * commands are authorised by reading {@link #isActive()} rather than looking
+ * anything up. Ending a session flips that flag, which every holder sees.
+ * <p>
+ * A session expires at the earlier of an absolute deadline, fixed at login,
+ * and a sliding one that {@link #touch()} pushes forward on every command.
+ */
+public final class Session {
+
+    private final String email;
+    private final String deviceId; // null for token-only sessions
+    private final String token;
+    private final Socket socket; // null for token-only sessions (HTTP)
+    private final long absoluteDeadlineMillis;
+    private final long idleTtlMillis;
+    private volatile long idleDeadlineMillis;
+    private volatile boolean active = true;
+
+    /**
+     * Creates a session that only expires at {@code expiresAtMillis}
+     * ({@link Long#MAX_VALUE} for never).
+     */
+    public Session(String email, String token, Socket socket, long expiresAtMillis) {
+        this(email, token, socket, expiresAtMillis, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param absoluteDeadlineMillis time after which the session expires regardless of activity
+     * @param idleTtlMillis          how long the session survives without a {@link #touch()}
+     */
+    public Session(String email, String token, Socket socket, long absoluteDeadlineMillis, long idleTtlMillis) {
+        this(email, null, token, socket, absoluteDeadlineMillis, idleTtlMillis);
+    }
+
+    /**
+     * @param deviceId client-chosen id of the device; a new login from the same
+     *                 device replaces this session
+     */
+    public Session(String email, String deviceId, String token, Socket socket, long absoluteDeadlineMillis,
+            long idleTtlMillis) {
+        this.email = email;
+        this.deviceId = deviceId;
+        this.token = token;
+        this.socket = socket;
+        this.absoluteDeadlineMillis = absoluteDeadlineMillis;
+        this.idleTtlMillis = idleTtlMillis;
+        this.idleDeadlineMillis = saturatedAdd(System.currentTimeMillis(), idleTtlMillis);
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * @return id of the device that logged in, or null for a token-only session
+     */
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the connection that logged in, or null for a token-only session
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * @return true until the session is ended or expires
+     */
+    public boolean isActive() {
+        if (!active) {
+            return false;
+        }
+        long deadline = deadlineMillis();
+        return deadline == Long.MAX_VALUE || System.currentTimeMillis() < deadline;
+    }
+
+    /**
+     * @return time after which the session expires regardless of activity
+     */
+    public long absoluteDeadlineMillis() {
+        return absoluteDeadlineMillis;
+    }
+
+    /**
+     * @return time at which the session expires unless touched again
+     */
+    public long deadlineMillis() {
+        return Math.min(absoluteDeadlineMillis, idleDeadlineMillis);
+    }
+
+    /**
+     * Records activity, extending the sliding deadline. An expired session
+     * stays expired.
+     */
+    public void touch() {
+        if (idleTtlMillis == Long.MAX_VALUE || !isActive()) {
+            return;
+        }
+        idleDeadlineMillis = saturatedAdd(System.currentTimeMillis(), idleTtlMillis);
+    }
+
+    private static long saturatedAdd(long time, long millis) {
+        return millis >= Long.MAX_VALUE - time ? Long.MAX_VALUE : time + millis;
+    }
+
+    void invalidate() {
+        active = false;
+    }
+
+    boolean isInvalidated() {
+        return !active;
+    }
+}
@@ -1,43 +1,430 @@
 package server.service;
 
 import lombok.extern.slf4j.Slf4j;
+import server.data.SessionStore.StoredSession;
 import utils.LogHandler;
+import utils.ProtocolConstants;
+import utils.SecurityUtils;
+import utils.ServerConstants;
 
 import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages active user sessions for authenticated clients.
- * Maintains a thread-safe map of email → socket.
- * Supports session start, termination, lookup, and reverse socket lookup.
+ * Maintains thread-safe maps of email → connection sessions and the reverse,
+ * socket → connection session, so both lookups are O(1); email → token-only
+ * sessions, so logging a user out everywhere reaches them too; token → session
+ * for every session including token-only ones; plus socket → push channel for
+ * connections that can receive server pushes.
+ * Supports session start, termination, lookup, reverse socket lookup, push,
+ * and cleanup when a connection closes.
+ * <p>
+ * Each session carries a random token. A connection is authorised through the
+ * {@link Session} bound to its {@link ConnectionContext}; the token map only
+ * serves callers without a connection, such as the HTTP gateway.
+ * <p>
+ * A user may be logged in on several devices at once, up to
+ * {@link ServerConstants#MAX_SESSIONS_PER_USER}. A new login from a device
+ * that already has a session replaces it; past the cap the oldest session is
+ * ended. Each user's sessions are held in a copy-on-write set, so pushes fan
+ * out over a stable snapshot without locking, while logins and logouts, which
+ * are far rarer, pay for the copy.
+ * <p>
+ * Sessions expire after an absolute TTL or, sooner, after an idle TTL without
+ * activity. Expiry is driven by one {@link TimingWheel}: each session is filed
+ * under its current deadline, and when that tick comes round a session that
+ * was touched in the meantime is simply refiled under its new deadline.
+ * Expired connection sessions get an {@code UNAUTHORIZED} push.
+ * <p>
+ * Sessions outlive a clean restart: the server {@link #suspend()}s before
+ * draining, so closing connections no longer end their sessions, and saves
+ * {@link #exportSessions()}. The next run {@link #restoreSessions restores}
+ * them keyed by token digest, detached from any connection, until a client
+ * resumes its session with RESUME or an HTTP client presents its token again.
+ * Taking one up costs a digest and a map lookup, never a password hash.
  */
 @Slf4j
 public class SessionManager {
 
-    private final Map<String, Socket> sessionMap = new ConcurrentHashMap<>();
+    private static final int TOKEN_BYTES = 32;
+    private static final int DEVICE_ID_BYTES = 9;
+
+    private final Map<String, Set<Session>> sessionMap = new ConcurrentHashMap<>();
+    private final Map<Socket, Session> socketMap = new ConcurrentHashMap<>();
+    private final Map<String, Set<Session>> tokenSessionMap = new ConcurrentHashMap<>(); // email → token-only sessions
+    private final Map<String, Session> tokenMap = new ConcurrentHashMap<>();
+    private final Map<String, Session> restoredMap = new ConcurrentHashMap<>(); // token digest → restored session
+    private final Map<Socket, PushChannel> channelMap = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long absoluteTtlMillis;
+    private final long idleTtlMillis;
+    private final TimingWheel<Session> expiryWheel = new TimingWheel<>(ServerConstants.SESSION_WHEEL_TICK_MS,
+            ServerConstants.SESSION_WHEEL_SLOTS, System.currentTimeMillis());
+    private ScheduledExecutorService expiryTimer;
+    private volatile boolean suspended; // shutting down: closing connections keep their sessions
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder ended = new LongAdder();
+    private final LongAdder endedOnDisconnect = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+
+    public SessionManager() {
+        this(TimeUnit.SECONDS.toMillis(ServerConstants.SESSION_ABSOLUTE_TTL_SECONDS),
+                TimeUnit.SECONDS.toMillis(ServerConstants.SESSION_IDLE_TTL_SECONDS));
+    }
+
+    /**
+     * @param absoluteTtlMillis lifetime of a connection session regardless of activity
+     * @param idleTtlMillis     lifetime of any session without activity
+     */
+    public SessionManager(long absoluteTtlMillis, long idleTtlMillis) {
+        this.absoluteTtlMillis = absoluteTtlMillis;
+        this.idleTtlMillis = idleTtlMillis;
+    }
+
+    /**
+     * Starts the timer that expires sessions once per wheel tick. Until it
+     * runs, expired sessions are still refused but not removed.
+     */
+    public synchronized void startExpiry() {
+        if (expiryTimer != null) {
+            return;
+        }
+        expiryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiryTimer.scheduleAtFixedRate(() -> expireSessions(System.currentTimeMillis()),
+                ServerConstants.SESSION_WHEEL_TICK_MS, ServerConstants.SESSION_WHEEL_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopExpiry() {
+        if (expiryTimer != null) {
+            expiryTimer.shutdownNow();
+            expiryTimer = null;
+        }
+    }
+
+    /**
+     * Starts a session for a user on a connection, as a new device.
+     *
+     * @see #startSession(String, String, Socket)
+     */
+    public Session startSession(String email, Socket socket) {
+        return startSession(email, null, socket);
+    }
+
+    /**
+     * Starts a new session for a user on a connection. The user's previous
+     * session from the same device, and any other session on the same
+     * connection, is ended; sessions on other devices are kept.
+     *
+     * @param email    User's email
+     * @param deviceId id the client chose for its device, or null to assign a new one
+     * @param socket   Associated client socket
+     * @return the session, to be bound to the connection
+     */
+    public Session startSession(String email, String deviceId, Socket socket) {
+        return startSession(email, deviceId != null ? deviceId : newId(DEVICE_ID_BYTES), socket,
+                System.currentTimeMillis() + absoluteTtlMillis);
+    }
+
+    private Session startSession(String email, String device, Socket socket, long absoluteDeadlineMillis) {
+        Session session = new Session(email, device, newId(TOKEN_BYTES), socket, absoluteDeadlineMillis,
+                idleTtlMillis);
+        started.increment();
+        tokenMap.put(session.getToken(), session);
+        expiryWheel.schedule(session, session.deadlineMillis());
+        Session previousOnSocket = socket == null ? null : socketMap.put(socket, session);
+        if (previousOnSocket != null) {
+            retire(previousOnSocket); // this connection was logged in before
+        }
+
+        List<Session> displaced = new ArrayList<>();
+        sessionMap.compute(email, (key, sessions) -> {
+            Set<Session> updated = sessions != null ? sessions : new CopyOnWriteArraySet<>();
+            int kept = 0;
+            for (Session existing : updated) {
+                if (device.equals(existing.getDeviceId())) {
+                    displaced.add(existing);
+                } else {
+                    kept++;
+                }
+            }
+            for (Session existing : updated) { // oldest first
+                if (kept < ServerConstants.MAX_SESSIONS_PER_USER) {
+                    break;
+                }
+                if (!displaced.contains(existing)) {
+                    displaced.add(existing);
+                    kept--;
+                }
+            }
+            updated.add(session);
+            return updated;
+        });
+        displaced.forEach(this::retire); // outside compute: retire updates sessionMap itself
+        log.info("Session started for: {} on device {}", email, device);
+        LogHandler.info("Session started for: " + email + " on device " + device);
+        return session;
+    }
 
     /**
-     * Starts a new session for a user.
+     * Starts a session that is only reachable through its token, for
+     * transports without a connection. It leaves connection sessions alone.
      *
-     * @param email  User's email
-     * @param socket Associated client socket
+     * @param ttlMillis lifetime of the session regardless of activity
      */
-    public void startSession(String email, Socket socket) {
-        sessionMap.put(email, socket);
-        log.info("Session started for: {}", email);
-        LogHandler.info("Session started for: " + email);
+    public Session startTokenSession(String email, long ttlMillis) {
+        Session session = new Session(email, newId(TOKEN_BYTES), null, System.currentTimeMillis() + ttlMillis,
+                idleTtlMillis);
+        started.increment();
+        indexTokenSession(session);
+        expiryWheel.schedule(session, session.deadlineMillis());
+        log.info("Token session started for: {}", email);
+        LogHandler.info("Token session started for: " + email);
+        return session;
     }
 
     /**
-     * Ends the session for the given user.
+     * Resolves a session token and counts it as activity of that session.
+     *
+     * @return the active session, or null if the token is unknown, ended or expired
+     */
+    public Session findSession(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = tokenMap.get(token);
+        if (session == null) {
+            session = adoptRestored(token);
+        }
+        if (session == null) {
+            return null;
+        }
+        if (!session.isActive()) {
+            tokenMap.remove(token, session);
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Resumes a connection session restored from the previous run on a new
+     * connection. The session keeps its user, device and absolute deadline but
+     * gets a new token; the old one stops working.
+     *
+     * @param token token the client held before the restart
+     * @return the resumed session, to be bound to the connection, or null if
+     *         the token belongs to no restored connection session
+     */
+    public Session resumeSession(String token, Socket socket) {
+        Session restored = claimRestored(token, true);
+        if (restored == null) {
+            return null;
+        }
+        Session session = startSession(restored.getEmail(), restored.getDeviceId(), socket,
+                restored.absoluteDeadlineMillis());
+        log.info("Session resumed for: {} on device {}", session.getEmail(), session.getDeviceId());
+        LogHandler.info("Session resumed for: " + session.getEmail() + " on device " + session.getDeviceId());
+        return session;
+    }
+
+    // A restored token-only session is taken up, under the same token, by the first lookup of that token
+    private Session adoptRestored(String token) {
+        Session restored = claimRestored(token, false);
+        if (restored == null) {
+            return tokenMap.get(token); // a concurrent lookup may have just adopted it
+        }
+        Session session = new Session(restored.getEmail(), token, null, restored.absoluteDeadlineMillis(),
+                idleTtlMillis);
+        started.increment();
+        indexTokenSession(session);
+        expiryWheel.schedule(session, session.deadlineMillis());
+        log.info("Token session resumed for: {}", session.getEmail());
+        LogHandler.info("Token session resumed for: " + session.getEmail());
+        return session;
+    }
+
+    // Added inside compute, so a concurrent retire cannot drop the set it is being added to
+    private void indexTokenSession(Session session) {
+        tokenMap.put(session.getToken(), session);
+        tokenSessionMap.compute(session.getEmail(), (key, sessions) -> {
+            Set<Session> updated = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            updated.add(session);
+            return updated;
+        });
+    }
+
+    // Removes the restored session a token belongs to, if it is live and of the wanted kind
+    private Session claimRestored(String token, boolean connection) {
+        if (token == null || restoredMap.isEmpty()) {
+            return null; // nothing restored, or all taken up: skip the digest
+        }
+        String digest = SecurityUtils.digestToken(token);
+        Session restored = restoredMap.get(digest);
+        if (restored == null || (restored.getDeviceId() != null) != connection) {
+            return null;
+        }
+        if (!restored.isActive()) {
+            retire(restored);
+            return null;
+        }
+        if (!restoredMap.remove(digest, restored)) {
+            return null; // claimed concurrently
+        }
+        restored.invalidate(); // superseded by the session that takes it up, not ended
+        resumed.increment();
+        return restored;
+    }
+
+    /**
+     * Ends every session of the given user.
      *
      * @param email User's email
      */
     public void endSession(String email) {
-        sessionMap.remove(email);
-        log.info("Session ended for: {}", email);
-        LogHandler.info("Session ended for: " + email);
+        endAllSessions(email, null);
+    }
+
+    /**
+     * Ends every session of a user, e.g. for logout-all: connection sessions,
+     * telling each connection why, token-only sessions, and restored sessions
+     * not yet resumed.
+     *
+     * @param reason pushed as {@code UNAUTHORIZED%%<reason>} to each session's
+     *               connection, or null to end them silently
+     * @return number of sessions ended
+     */
+    public int endAllSessions(String email, String reason) {
+        int count = 0;
+        Set<Session> sessions = sessionMap.remove(email);
+        if (sessions != null) {
+            for (Session session : sessions) {
+                retire(session);
+                if (reason != null) {
+                    pushTo(session, ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER + reason);
+                }
+            }
+            count += sessions.size();
+        }
+        Set<Session> tokenSessions = tokenSessionMap.remove(email);
+        if (tokenSessions != null) {
+            tokenSessions.forEach(this::retire);
+            count += tokenSessions.size();
+        }
+        for (Session restored : restoredMap.values()) { // rarely more than a few, and empty once all are resumed
+            if (email.equals(restored.getEmail())) {
+                retire(restored);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        log.info("{} session(s) ended for: {}", count, email);
+        LogHandler.info(count + " session(s) ended for: " + email);
+        return count;
+    }
+
+    /**
+     * Ends one specific session, connection-bound or token-only.
+     */
+    public void endSession(Session session) {
+        retire(session);
+        log.info("Session ended for: {}", session.getEmail());
+        LogHandler.info("Session ended for: " + session.getEmail());
+    }
+
+    /**
+     * Ends whatever session is logged in on a connection; called when the
+     * connection closes, so abandoned sessions do not linger.
+     *
+     * @return email of the user whose session was ended, or null
+     */
+    public String endConnection(Socket socket) {
+        Session session = socketMap.get(socket);
+        if (session == null) {
+            return null;
+        }
+        if (suspended) {
+            return session.getEmail(); // kept for the session store
+        }
+        retire(session);
+        endedOnDisconnect.increment();
+        log.info("Session ended on disconnect for: {}", session.getEmail());
+        LogHandler.info("Session ended on disconnect for: " + session.getEmail());
+        return session.getEmail();
+    }
+
+    /**
+     * Processes the wheel up to {@code nowMillis}: sessions past their deadline
+     * are ended, and those touched since they were filed are refiled.
+     *
+     * @return number of sessions expired
+     */
+    public int expireSessions(long nowMillis) {
+        int count = 0;
+        for (Session session : expiryWheel.advance(nowMillis)) {
+            if (session.isInvalidated()) {
+                continue; // ended some other way after it was filed
+            }
+            long deadline = session.deadlineMillis();
+            if (deadline > nowMillis) {
+                expiryWheel.schedule(session, deadline);
+                continue;
+            }
+            retire(session);
+            expired.increment();
+            count++;
+            log.info("Session expired for: {}", session.getEmail());
+            LogHandler.info("Session expired for: " + session.getEmail());
+            pushTo(session, ProtocolConstants.RESPONSE_UNAUTHORIZED + ProtocolConstants.DELIMITER + "Session expired");
+        }
+        return count;
+    }
+
+    // Removes a session from every index; entries already replaced by a newer session are left alone
+    private void retire(Session session) {
+        if (!session.isInvalidated()) {
+            session.invalidate();
+            ended.increment();
+        }
+        sessionMap.computeIfPresent(session.getEmail(), (key, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+        tokenSessionMap.computeIfPresent(session.getEmail(), (key, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+        tokenMap.remove(session.getToken(), session);
+        restoredMap.remove(session.getToken(), session); // a restored session's token is its digest
+        if (session.getSocket() != null) {
+            socketMap.remove(session.getSocket(), session);
+        }
+    }
+
+    private String newId(int bytes) {
+        byte[] raw = new byte[bytes];
+        random.nextBytes(raw);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
     }
 
     /**
@@ -48,29 +435,153 @@ public class SessionManager {
     }
 
     /**
-     * Gets the socket associated with a logged-in user.
+     * Gets the socket of a user's most recently started session.
      */
     public Socket getSessionSocket(String email) {
-        return sessionMap.get(email);
+        Session latest = null;
+        for (Session session : sessionMap.getOrDefault(email, Set.of())) {
+            latest = session; // sets keep insertion order
+        }
+        return latest == null ? null : latest.getSocket();
+    }
+
+    /**
+     * @return the user's live connection sessions, oldest first
+     */
+    public List<Session> getSessions(String email) {
+        return List.copyOf(sessionMap.getOrDefault(email, Set.of()));
     }
 
     /**
      * Finds the user email associated with a socket.
-     * Used during forced cleanup (e.g., disconnect).
      */
     public String getEmailForSocket(Socket socket) {
-        return sessionMap.entrySet().stream()
-                .filter(entry -> entry.getValue().equals(socket))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElse(null);
+        Session session = socketMap.get(socket);
+        return session == null ? null : session.getEmail();
+    }
+
+    /**
+     * Registers the outbound channel of a live connection so pushes can reach
+     * whichever user logs in on it.
+     */
+    public void registerChannel(Socket socket, PushChannel channel) {
+        channelMap.put(socket, channel);
+    }
+
+    /**
+     * Removes a connection's outbound channel once the connection closes.
+     */
+    public void unregisterChannel(Socket socket) {
+        channelMap.remove(socket);
+    }
+
+    /**
+     * Pushes a protocol line to every live connection a user is logged in on.
+     *
+     * @return true if the line was queued for at least one connection
+     */
+    public boolean push(String email, String line) {
+        boolean delivered = false;
+        for (Session session : sessionMap.getOrDefault(email, Set.of())) {
+            delivered |= pushTo(session, line);
+        }
+        return delivered;
+    }
+
+    private boolean pushTo(Session session, String line) {
+        PushChannel channel = session.getSocket() == null ? null : channelMap.get(session.getSocket());
+        return channel != null && channel.push(line);
+    }
+
+    /**
+     * Pushes a protocol line to every live connection, logged in or not.
+     *
+     * @return number of connections the line was queued for
+     */
+    public int broadcast(String line) {
+        int delivered = 0;
+        for (PushChannel channel : channelMap.values()) {
+            if (channel.push(line)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * @return point-in-time session gauges and lifetime counters
+     */
+    public SessionStats stats() {
+        return new SessionStats(sessionMap.size(), socketMap.size(), tokenMap.size() - socketMap.size(),
+                channelMap.size(), started.sum(), ended.sum(), endedOnDisconnect.sum(), expired.sum(),
+                restoredMap.size(), resumed.sum());
+    }
+
+    /**
+     * Stops ending sessions when their connection closes, so that the sessions
+     * live at shutdown can still be exported once every connection has drained.
+     */
+    public void suspend() {
+        suspended = true;
+    }
+
+    /**
+     * @return every live session, including restored ones not yet resumed,
+     *         in the form the session store keeps
+     */
+    public List<StoredSession> exportSessions() {
+        List<StoredSession> sessions = new ArrayList<>();
+        for (Session session : tokenMap.values()) {
+            if (session.isActive()) {
+                sessions.add(new StoredSession(SecurityUtils.digestToken(session.getToken()), session.getEmail(),
+                        session.getDeviceId(), session.absoluteDeadlineMillis()));
+            }
+        }
+        for (Session session : restoredMap.values()) {
+            if (session.isActive()) {
+                sessions.add(new StoredSession(session.getToken(), session.getEmail(), session.getDeviceId(),
+                        session.absoluteDeadlineMillis()));
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Restores sessions saved by the previous run. They wait, detached from
+     * any connection, until resumed or expired; the idle clock starts afresh,
+     * since nobody could be active while the server was down.
+     *
+     * @return number of sessions restored; ones past their absolute deadline are dropped
+     */
+    public int restoreSessions(Collection<StoredSession> sessions) {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (StoredSession stored : sessions) {
+            if (stored.absoluteDeadlineMillis() <= now) {
+                continue;
+            }
+            // The digest stands in for the token, which was never saved
+            Session session = new Session(stored.email(), stored.deviceId(), stored.tokenDigest(), null,
+                    stored.absoluteDeadlineMillis(), idleTtlMillis);
+            restoredMap.put(stored.tokenDigest(), session);
+            expiryWheel.schedule(session, session.deadlineMillis());
+            count++;
+        }
+        log.info("{} sessions restored for resumption", count);
+        LogHandler.info(count + " sessions restored for resumption");
+        return count;
     }
 
     /**
      * Clears all active sessions (e.g., during shutdown).
      */
     public void clearAllSessions() {
+        tokenMap.values().forEach(this::retire); // every session has a token
+        restoredMap.values().forEach(this::retire);
         sessionMap.clear();
+        tokenSessionMap.clear();
+        socketMap.clear();
+        expiryWheel.clear();
         log.info("All sessions cleared");
         LogHandler.info("All sessions cleared");
     }
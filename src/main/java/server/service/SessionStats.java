@@ -0,0 +1,26 @@
+package server.service;
+
+/**
+ * Snapshot of a {@link SessionManager}.
+ *
+ * @param users              users logged in on at least one connection
+ * @param connectionSessions sessions bound to a connection, across all devices
+ * @param tokenSessions      token-only sessions (HTTP), including expired ones not yet swept
+ * @param liveChannels       open connections that can receive pushes
+ * @param started            sessions started since boot
+ * @param ended              sessions ended since boot, for any reason
+ * @param endedOnDisconnect  of those, sessions ended because their connection closed
+ * @param expired            of those, sessions ended by the absolute or idle TTL
+ * @param awaitingResume     sessions restored from the previous run that no client has resumed yet
+ * @param resumed            restored sessions taken up again since boot
+ */
+public record SessionStats(int users, int connectionSessions, int tokenSessions, int liveChannels,
+        long started, long ended, long endedOnDisconnect, long expired, int awaitingResume, long resumed) {
+
+    @Override
+    public String toString() {
+        return String.format("users=%d, connections=%d, tokens=%d, channels=%d, started=%d, ended=%d (disconnect=%d, expired=%d), restored=%d (resumed=%d)",
+                users, connectionSessions, tokenSessions, liveChannels, started, ended, endedOnDisconnect, expired,
+                awaitingResume, resumed);
+    }
+}
@@ -0,0 +1,102 @@
+package server.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timing wheel: a ring of slots, each covering one tick. An item is
+ * filed under the slot of its deadline's tick, so scheduling is O(1) and each
+ * tick only looks at one slot instead of every scheduled item. Deadlines more
+ * than one revolution away share a slot with nearer ones and are skipped
+ * until their own tick comes round.
+ * <p>
+ * Items cannot be cancelled; owners check on expiry whether the item is still
+ * due and reschedule or drop it. Resolution is one tick: an item expires up
+ * to a tick after its deadline, never before.
+ *
+ * @param <T> type of scheduled item
+ */
+public class TimingWheel<T> {
+
+    private record Entry<T>(T item, long tick) {
+    }
+
+    private final long tickMillis;
+    private final List<ArrayDeque<Entry<T>>> slots;
+    private final int mask;
+    private final long startMillis;
+    private long currentTick; // every tick before this one has been processed
+    private int size;
+
+    /**
+     * @param tickMillis  duration of one slot
+     * @param slotCount   number of slots, rounded up to a power of two
+     * @param startMillis time of tick 0
+     */
+    public TimingWheel(long tickMillis, int slotCount, long startMillis) {
+        if (tickMillis <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("Tick and slot count must be positive");
+        }
+        int count = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = count - 1;
+        this.startMillis = startMillis;
+        this.slots = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            slots.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Schedules an item to be returned by the first {@link #advance} at or
+     * after {@code deadlineMillis}.
+     */
+    public synchronized void schedule(T item, long deadlineMillis) {
+        long delta = Math.max(0, deadlineMillis - startMillis);
+        long tick = Math.max(currentTick, (delta + tickMillis - 1) / tickMillis); // round up: never early
+        slots.get((int) (tick & mask)).addLast(new Entry<>(item, tick));
+        size++;
+    }
+
+    /**
+     * Processes every tick up to {@code nowMillis}.
+     *
+     * @return items whose deadline has passed, in no particular order
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        if (nowMillis < startMillis) {
+            return expired;
+        }
+        long lastTick = (nowMillis - startMillis) / tickMillis;
+        // After a full revolution every slot has been visited; jump ahead instead of looping over idle laps
+        long from = Math.max(currentTick, lastTick - mask);
+        for (long tick = from; tick <= lastTick; tick++) {
+            Iterator<Entry<T>> entries = slots.get((int) (tick & mask)).iterator();
+            while (entries.hasNext()) {
+                Entry<T> entry = entries.next();
+                if (entry.tick() <= lastTick) {
+                    expired.add(entry.item());
+                    entries.remove();
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, lastTick + 1);
+        size -= expired.size();
+        return expired;
+    }
+
+    /**
+     * @return number of scheduled items, including ones their owner no longer cares about
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        slots.forEach(ArrayDeque::clear);
+        size = 0;
+    }
+}
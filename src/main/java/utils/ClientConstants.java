@@ -32,6 +32,10 @@ public class ClientConstants {
     public static final int RECONNECT_DELAY_MS = 2000;
     public static final int COMMAND_RESPONSE_TIMEOUT_MS = 5000;
 
+    // === Mailbox Listing ===
+    public static final int EMAIL_PAGE_SIZE = 20; // emails fetched per LIST request
+    public static final int IDLE_DEFAULT_SECONDS = 60; // how long IDLE waits for changes unless told otherwise
+
     // === Client-side flags ===
     public static final boolean ENABLE_LOCAL_CACHE = false; // If you implement caching
     public static final boolean DEBUG_MODE = true; // For verbose client logs
@@ -1,6 +1,8 @@
 package utils;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -48,19 +50,51 @@ public class CommandFormatter {
      * Constructs a LOGIN command with user credentials.
      */
     public static String login(String email, String password) {
+        return login(email, password, null);
+    }
+
+    /**
+     * Constructs a LOGIN command with user credentials and the id of this
+     * device, if any.
+     */
+    public static String login(String email, String password, String deviceId) {
         Map<String, String> payload = new HashMap<>();
         payload.put("email", email);
         payload.put("password", password);
+        if (deviceId != null) {
+            payload.put("deviceId", deviceId);
+        }
         return format(CMD_LOGIN, payload);
     }
 
+    /**
+     * Constructs a RESUME command that takes up a session saved across a
+     * server restart.
+     */
+    public static String resume(String token) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("token", token);
+        return CMD_RESUME + DELIMITER + payload;
+    }
+
     /**
      * Constructs a LOGOUT command for the given user.
      */
     public static String logout(String email) {
-        Map<String, String> payload = new HashMap<>();
-        payload.put("email", email);
-        return format(CMD_LOGOUT, payload);
+        return logout(email, false);
+    }
+
+    /**
+     * Constructs a LOGOUT command; with {@code all}, the user is logged out on
+     * every device.
+     */
+    public static String logout(String email, boolean all) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("email", email);
+        if (all) {
+            payload.addProperty("all", true);
+        }
+        return CMD_LOGOUT + DELIMITER + payload;
     }
 
     /**
@@ -86,6 +120,70 @@ public class CommandFormatter {
         return format(CMD_RETRIEVE_EMAILS, payload);
     }
 
+    /**
+     * Constructs a paged RETRIEVE_EMAILS command.
+     *
+     * @param cursor opaque cursor returned with the previous page, or null for the first page
+     */
+    public static String retrieveEmails(String email, String type, int limit, String cursor) {
+        return retrieveEmails(email, type, limit, cursor, null);
+    }
+
+    /**
+     * Constructs a paged RETRIEVE_EMAILS command that the server may answer
+     * with NOT_MODIFIED.
+     *
+     * @param ifVersion mailbox version of the cached first page, or null
+     */
+    public static String retrieveEmails(String email, String type, int limit, String cursor, String ifVersion) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("email", email);
+        payload.addProperty("type", type);
+        payload.addProperty("limit", limit);
+        if (cursor != null) {
+            payload.addProperty("cursor", cursor);
+        }
+        if (ifVersion != null) {
+            payload.addProperty("ifVersion", ifVersion);
+        }
+        return CMD_RETRIEVE_EMAILS + DELIMITER + payload;
+    }
+
+    /**
+     * Constructs a SYNC command asking for mailbox changes since the last sync.
+     *
+     * @param epoch epoch from the previous SYNC response, or null on first sync
+     * @param since sequence from the previous SYNC response
+     */
+    public static String sync(String email, String epoch, long since) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("email", email);
+        if (epoch != null) {
+            payload.addProperty("epoch", epoch);
+            payload.addProperty("since", since);
+        }
+        return CMD_SYNC + DELIMITER + payload;
+    }
+
+    /**
+     * Constructs an IDLE command that waits for mailbox changes after the last
+     * sync, answered like SYNC once something changes or the timeout expires.
+     *
+     * @param epoch     epoch from the previous SYNC response, or null
+     * @param since     sequence from the previous SYNC response
+     * @param timeoutMs how long the server should wait
+     */
+    public static String idle(String email, String epoch, long since, long timeoutMs) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("email", email);
+        if (epoch != null) {
+            payload.addProperty("epoch", epoch);
+            payload.addProperty("since", since);
+        }
+        payload.addProperty("timeoutMs", timeoutMs);
+        return CMD_IDLE + DELIMITER + payload;
+    }
+
     /**
      * Constructs a SEARCH_EMAIL command to find emails by keyword and type.
      */
@@ -116,6 +214,44 @@ public class CommandFormatter {
         return format(CMD_EXIT, payload);
     }
 
+    /**
+     * Constructs a HELLO handshake offering the given connection capabilities.
+     */
+    public static String hello(String... capabilities) {
+        JsonArray offered = new JsonArray();
+        for (String capability : capabilities) {
+            offered.add(capability);
+        }
+        JsonObject payload = new JsonObject();
+        payload.addProperty("version", PROTOCOL_VERSION);
+        payload.add("capabilities", offered);
+        return CMD_HELLO + DELIMITER + payload;
+    }
+
+    /**
+     * Wraps one sub-command for {@link #batch(String, boolean, JsonArray)}.
+     * The acting user may be omitted from the payload; the server fills it in.
+     */
+    public static JsonObject batchItem(String command, JsonObject payload) {
+        JsonObject item = new JsonObject();
+        item.addProperty("command", command);
+        item.add("payload", payload);
+        return item;
+    }
+
+    /**
+     * Constructs a BATCH command carrying several sub-commands in one round trip.
+     *
+     * @param parallel allow the server to run the items concurrently (honoured only if all are read-only)
+     */
+    public static String batch(String email, boolean parallel, JsonArray commands) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("email", email);
+        payload.addProperty("parallel", parallel);
+        payload.add("commands", commands);
+        return CMD_BATCH + DELIMITER + payload;
+    }
+
     // === Future Extension Placeholders ===
     // public static String deleteEmail(String id) { ... }
     // public static String markAsRead(String emailId) { ... }
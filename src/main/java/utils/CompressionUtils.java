@@ -0,0 +1,67 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Utility class for compressing protocol lines once a connection has agreed
+ * on the "deflate" capability during HELLO.
+ * <p>
+ * Compressed lines are deflated and Base64-encoded so they remain a single
+ * line on the wire: {@code COMPRESSED%%<base64 deflate data>}.
+ */
+public class CompressionUtils {
+
+    /**
+     * Deflates a protocol line and encodes the result as Base64.
+     *
+     * @param line the uncompressed line (without line terminator)
+     * @return Base64-encoded deflate data
+     */
+    public static String deflate(String line) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(line.length() / 4 + 64);
+        try (OutputStream deflater = deflatingStream(buffer)) {
+            deflater.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to deflate line", e);
+        }
+        return buffer.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Opens a stream that deflates and Base64-encodes everything written to it
+     * into {@code target}, producing the same encoding as {@link #deflate(String)}
+     * without holding the whole line in memory. Closing it closes {@code target}.
+     */
+    public static OutputStream deflatingStream(OutputStream target) {
+        return new DeflaterOutputStream(Base64.getEncoder().wrap(target));
+    }
+
+    /**
+     * Decodes and inflates a line produced by {@link #deflate(String)}.
+     *
+     * @param encoded Base64-encoded deflate data
+     * @return the original protocol line
+     * @throws IllegalArgumentException if the data is not valid Base64/deflate
+     */
+    public static String inflate(String encoded) {
+        byte[] compressed = Base64.getDecoder().decode(encoded.trim());
+        try (InputStream inflater = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(inflater.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupted compressed payload", e);
+        }
+    }
+
+    private CompressionUtils() {
+        // Prevent instantiation
+    }
+}
@@ -30,12 +30,14 @@ public class ConsoleConstants {
 
     public static final String POST_LOGIN_COMMANDS = """
             You may now use the following commands:
-            [1] LOGOUT
+            [1] LOGOUT [all]
             [2] SEND <to> <subject> <body>
-            [3] LIST [sent|received]
+            [3] LIST [sent|received|next]
             [4] READ <emailId>
             [5] SEARCH <sent|received> <keyword>
             [6] EXIT
+            [7] SYNC
+            [8] IDLE [seconds]
             """;
 
     // === Command Input ===
@@ -47,6 +49,11 @@ public class ConsoleConstants {
     public static final String SERVER_TERMINATION = "[CLIENT] Server requested termination.";
     public static final String LISTENER_SHUTDOWN = "[CLIENT] Listener shutting down.";
     public static final String SERVER_PREFIX = "[SERVER] ";
+    public static final String HELLO_FAIL_MSG = "Server rejected capability negotiation; using plain protocol.";
+    public static final String BATCH_FAIL_MSG = "Batch rejected: ";
+    public static final String EMAIL_LIST_UNCHANGED_MSG = "Mailbox unchanged since the last listing.";
+    public static final String RATE_LIMITED_MSG = "Too many %s requests. Try again in %.1f seconds.";
+    public static final String COMPRESSED_RESPONSE_FAIL_MSG = "Received a corrupted compressed response.";
 
     // === Email Operation Messages ===
     public static final String EMAIL_SEND_SUCCESS_MSG = "Email sent successfully!";
@@ -54,10 +61,26 @@ public class ConsoleConstants {
     public static final String EMAIL_RETRIEVE_FAIL_MSG = "Email retrieval failed: missing payload.";
     public static final String EMAIL_LIST_EMPTY_MSG = "No emails found.";
     public static final String EMAIL_LIST_HEADER_MSG = "Displaying emails:";
+    public static final String EMAIL_READ_FAIL_MSG = "Could not open email: ";
+    public static final String EMAIL_LIST_MORE_MSG = "More emails available. Type 'LIST next' to load them.";
+
+    // === Sync Messages ===
+    public static final String SYNC_STARTED_MSG = "Sync bookmark set. Future SYNC calls only fetch changes.";
+    public static final String SYNC_RESYNC_MSG = "Mailbox history expired. Use LIST to refresh, then SYNC again.";
+    public static final String SYNC_SUMMARY_MSG = "Sync complete: %d new, %d edited, %d removed.";
+    public static final String IDLE_WAITING_MSG = "Waiting up to %d seconds for mailbox changes...";
+    public static final String IDLE_FAIL_MSG = "IDLE failed: ";
+
+    public static final String NEW_EMAIL_PREFIX = "[NEW MAIL] ";
+    public static final String SERVER_GOING_AWAY_MSG =
+            "Server is shutting down. Reconnect in a moment; SYNC will pick up where you left off.";
 
     // === Session Messages ===
     public static final String LOGOUT_SUCCESS_MSG = "You have been logged out.";
     public static final String EXIT_SUCCESS_MSG = "Server confirmed disconnection.";
+    public static final String UNAUTHORIZED_MSG = "Not logged in: %s. Please LOGIN again.";
+    public static final String RESUME_SUCCESS_MSG = "Session resumed.";
+    public static final String RESUME_FAIL_MSG = "Could not resume session: %s. Please LOGIN again.";
 
     // === Fallback / Debug ===
     public static final String UNHANDLED_RESPONSE_MSG = "Unhandled response: ";
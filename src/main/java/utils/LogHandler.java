@@ -4,9 +4,11 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
 import java.nio.file.*;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.*;
+import java.util.function.BiConsumer;
 
 /**
  * LogHandler is a hybrid logging utility that bridges SLF4J logging
@@ -16,12 +18,23 @@ import java.util.concurrent.*;
  * - Debugging during development
  * - Auditable logging during assessment
  * - Runtime crash diagnostics
+ *
+ * File output goes through a {@link LogWriter}: callers only enqueue the
+ * entry, and one background thread appends batches to the log file it keeps
+ * open. The calling thread captures just the time and the calling class,
+ * found with a {@link StackWalker} that stops at the first frame outside this
+ * class; the timestamp and the line are rendered on the writer thread.
  */
 @Slf4j
 public class LogHandler {
 
     private static final String LOG_FILE = ServerConstants.LOG_FILE_PATH;
-    private static ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    private static volatile LogWriter<Entry> writer = newWriter();
+
+    /** One log call, as captured on the calling thread. */
+    private record Entry(long timeMillis, String level, String origin, String message) {
+    }
 
     static {
         init(); // Setup log file at server startup
@@ -39,9 +52,34 @@ public class LogHandler {
         }
     }
 
-    /** Returns timestamp in format [yyyy-MM-dd HH:mm:ss] */
-    private static String timestamp() {
-        return "[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "]";
+    private static LogWriter<Entry> newWriter() {
+        return new LogWriter<>(Paths.get(LOG_FILE), ServerConstants.LOG_BUFFER_CAPACITY,
+                ServerConstants.LOG_BATCH_CHARS, ServerConstants.LOG_FLUSH_INTERVAL_MS, new EntryRenderer());
+    }
+
+    /**
+     * Renders entries as {@code [yyyy-MM-dd HH:mm:ss] [LEVEL] (origin): message}.
+     * Used by one writer thread only, so the timestamp of the current second
+     * is cached without synchronisation.
+     */
+    private static final class EntryRenderer implements BiConsumer<Entry, StringBuilder> {
+        private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        private final ZoneId zone = ZoneId.systemDefault();
+        private long cachedSecond = Long.MIN_VALUE;
+        private String cachedTimestamp;
+
+        @Override
+        public void accept(Entry entry, StringBuilder out) {
+            long second = Math.floorDiv(entry.timeMillis(), 1000);
+            if (second != cachedSecond) {
+                cachedTimestamp = "[" + FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timeMillis()),
+                        zone)) + "]";
+                cachedSecond = second;
+            }
+            out.append(cachedTimestamp).append(" [").append(entry.level()).append("] (").append(entry.origin())
+                    .append("): ").append(entry.message());
+        }
     }
 
     /**
@@ -79,48 +117,43 @@ public class LogHandler {
      * @param message content to log
      */
     private static void logAsync(String level, String message) {
-        if (executor.isShutdown()) {
+        LogWriter<Entry> current = writer;
+        if (current.isClosed()) {
             System.err.println("[WARN] Logger is shut down. Skipping: " + message);
             return;
         }
 
-        String origin = Thread.currentThread().getStackTrace()[3].getClassName();
-        String entry = String.format("%s [%s] (%s): %s", timestamp(), level, origin, message);
+        current.append(new Entry(System.currentTimeMillis(), level, callerClassName(), message));
+    }
 
-        executor.submit(() -> {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE, true))) {
-                writer.write(entry);
-                writer.newLine();
-            } catch (IOException e) {
-                System.err.println("[LOG_WRITE_ERROR] Failed to write to log file: " + e.getMessage());
-            }
-        });
+    // Walks only as far as the first frame outside LogHandler, without materialising a stack trace
+    private static String callerClassName() {
+        return WALKER.walk(frames -> frames
+                .map(StackWalker.StackFrame::getClassName)
+                .filter(name -> !name.equals(LogHandler.class.getName()))
+                .findFirst()
+                .orElse(LogHandler.class.getName()));
     }
 
     /**
-     * Call this during shutdown to flush and terminate the logging executor
-     * cleanly.
+     * Call this during shutdown to write out queued entries and close the log
+     * file cleanly.
      */
     public static void shutdown() {
         info("Shutting down LogHandler...");
-        executor.shutdown();
         try {
-            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
-                if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
-                    System.err.println("[LOG_HANDLER] Forced shutdown failed.");
-                }
+            if (!writer.close(ServerConstants.LOG_SHUTDOWN_TIMEOUT_MS)) {
+                System.err.println("[LOG_HANDLER] Log writer did not finish in time; some entries may be lost.");
             }
         } catch (InterruptedException e) {
-            executor.shutdownNow();
             Thread.currentThread().interrupt();
         }
     }
 
-    /** Resets executor after shutdown for use in test environments */
-    public static void resetExecutorForTests() {
-        if (executor.isShutdown() || executor.isTerminated()) {
-            executor = Executors.newSingleThreadExecutor();
+    /** Starts a new writer after shutdown for use in test environments */
+    public static void resetWriterForTests() {
+        if (writer.isClosed()) {
+            writer = newWriter();
         }
     }
 }
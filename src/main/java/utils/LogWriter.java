@@ -0,0 +1,219 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Appends entries to a file from a single background thread.
+ * <p>
+ * Callers only enqueue: an entry goes into a bounded ring buffer and
+ * {@link #append(Object)} returns. The writer thread renders each entry as
+ * one line, so formatting stays off the callers' threads too, and drains the
+ * buffer in batches into one {@link FileChannel} that stays open between
+ * writes. A batch is written once it reaches {@code batchChars} or its oldest
+ * entry has waited {@code flushIntervalMillis}, so a burst of entries costs
+ * one write call instead of an open, a write and a close per line.
+ * <p>
+ * A full buffer drops the entry rather than block the caller; the writer
+ * records how many were lost in the next batch. Before each batch the writer
+ * checks that the file it holds is still the one at the path, and reopens it
+ * if the file was deleted or rotated away.
+ *
+ * @param <E> type of entry, rendered by the writer thread
+ */
+public class LogWriter<E> {
+
+    private static final Object WAKE_UP = new Object(); // compared by identity, never written
+    private static final int DRAIN_CHUNK = 256;
+    private static final Object MISSING = new Object(); // file key of a path with no file
+
+    private final Path path;
+    private final BlockingQueue<Object> buffer; // entries, plus WAKE_UP on close
+    private final BiConsumer<? super E, StringBuilder> renderer;
+    private final int batchChars;
+    private final long flushIntervalNanos;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Writer thread only
+    private FileChannel channel;
+    private Object fileKey;
+
+    /**
+     * Starts a writer of plain lines.
+     *
+     * @see #LogWriter(Path, int, int, long, BiConsumer)
+     */
+    public static LogWriter<String> lines(Path path, int capacity, int batchChars, long flushIntervalMillis) {
+        return new LogWriter<>(path, capacity, batchChars, flushIntervalMillis, (line, out) -> out.append(line));
+    }
+
+    /**
+     * Starts the writer thread. The file is opened, and created if needed, on
+     * the first batch.
+     *
+     * @param capacity            entries the buffer holds before dropping
+     * @param batchChars          size at which a batch is written without waiting
+     * @param flushIntervalMillis longest an entry waits in a batch
+     * @param renderer            appends one entry, without line separator; called on the writer thread only
+     */
+    public LogWriter(Path path, int capacity, int batchChars, long flushIntervalMillis,
+            BiConsumer<? super E, StringBuilder> renderer) {
+        this.path = path;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.renderer = renderer;
+        this.batchChars = batchChars;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.writer = new Thread(this::run, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues one entry; it is rendered and ended with a line separator by the writer.
+     *
+     * @return false if the entry was dropped because the buffer is full or the writer is closed
+     */
+    public boolean append(E entry) {
+        if (closed) {
+            return false;
+        }
+        if (!buffer.offer(entry)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops accepting entries, writes those already queued and closes the file.
+     *
+     * @return true if the writer finished within the timeout
+     */
+    public boolean close(long timeoutMillis) throws InterruptedException {
+        closed = true;
+        buffer.offer(WAKE_UP); // if full, the writer is busy anyway and sees the flag after its batch
+        writer.join(timeoutMillis);
+        return !writer.isAlive();
+    }
+
+    private void run() {
+        StringBuilder batch = new StringBuilder(batchChars);
+        List<Object> drained = new ArrayList<>(DRAIN_CHUNK);
+        long oldestAt = 0;
+        while (!closed || !buffer.isEmpty()) {
+            long waitNanos = batch.length() == 0 ? flushIntervalNanos : oldestAt + flushIntervalNanos - System.nanoTime();
+            Object entry;
+            try {
+                entry = buffer.poll(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                closed = true; // write what is queued, then stop
+                continue;
+            }
+            if (entry != null) {
+                if (batch.length() == 0) {
+                    oldestAt = System.nanoTime();
+                }
+                add(batch, entry);
+                drained.clear();
+                buffer.drainTo(drained, DRAIN_CHUNK);
+                drained.forEach(next -> add(batch, next));
+            }
+            if (batch.length() > 0 && (closed || batch.length() >= batchChars
+                    || System.nanoTime() - oldestAt >= flushIntervalNanos)) {
+                write(batch);
+                batch.setLength(0);
+            }
+        }
+        if (batch.length() > 0) {
+            write(batch);
+        }
+        closeChannel();
+    }
+
+    @SuppressWarnings("unchecked") // everything but WAKE_UP came in through append(E)
+    private void add(StringBuilder batch, Object entry) {
+        if (entry == WAKE_UP) {
+            return;
+        }
+        try {
+            renderer.accept((E) entry, batch);
+        } catch (RuntimeException e) {
+            batch.append("[LOG_RENDER_ERROR] ").append(e);
+        }
+        batch.append(System.lineSeparator());
+    }
+
+    private void write(StringBuilder batch) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            batch.append("[WARN] ").append(lost).append(" log lines dropped: buffer full")
+                    .append(System.lineSeparator());
+        }
+        try {
+            ensureOpen();
+            ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            System.err.println("[LOG_WRITE_ERROR] Failed to write to log file: " + e.getMessage());
+            closeChannel(); // retry with a fresh open on the next batch
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel != null && !Objects.equals(fileKey, currentFileKey())) {
+            closeChannel(); // deleted or rotated: follow the path, not the old file
+        }
+        if (channel == null) {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            fileKey = currentFileKey();
+        }
+    }
+
+    // One stat per batch; null on file systems without keys, where only deletion is noticed
+    private Object currentFileKey() {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return MISSING;
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[LOG_WRITE_ERROR] Failed to close log file: " + e.getMessage());
+        }
+        channel = null;
+    }
+}
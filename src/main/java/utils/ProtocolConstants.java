@@ -10,40 +10,72 @@ public final class ProtocolConstants {
 
     // === General Protocol ===
     public static final String DELIMITER = "%%";
+    public static final int PROTOCOL_VERSION = 1;
+
+    // === Capabilities negotiated through HELLO ===
+    public static final String CAP_DEFLATE = "deflate";
+    public static final String CAP_PIPELINING = "pipelining";
+
+    // === Field projections for RETRIEVE_EMAILS / SEARCH_EMAIL ("fields") ===
+    public static final String FIELDS_HEADERS = "headers"; // id, from, to, subject, timestamp, edited
+    public static final String FIELDS_SNIPPET = "snippet"; // headers + short body preview (default)
+    public static final String FIELDS_FULL = "full"; // complete emails including body
 
     // === Client-to-Server Commands ===
     public static final String CMD_REGISTER = "REGISTER";
     public static final String CMD_LOGIN = "LOGIN";
     public static final String CMD_LOGOUT = "LOGOUT";
+    public static final String CMD_RESUME = "RESUME";
     public static final String CMD_EXIT = "EXIT";
     public static final String CMD_SEND_EMAIL = "SEND_EMAIL";
     public static final String CMD_RETRIEVE_EMAILS = "RETRIEVE_EMAILS";
     public static final String CMD_READ_EMAIL = "READ_EMAIL";
     public static final String CMD_SEARCH_EMAIL = "SEARCH_EMAIL";
+    public static final String CMD_HELLO = "HELLO";
+    public static final String CMD_SYNC = "SYNC";
+    public static final String CMD_BATCH = "BATCH";
+    public static final String CMD_IDLE = "IDLE";
 
     // === Server-to-Client Success Responses ===
     public static final String RESPONSE_REGISTER_SUCCESS = "REGISTER_SUCCESS";
     public static final String RESPONSE_LOGIN_SUCCESS = "LOGIN_SUCCESS";
     public static final String RESPONSE_LOGOUT_SUCCESS = "LOGOUT_SUCCESS";
+    public static final String RESPONSE_RESUME_SUCCESS = "RESUME_SUCCESS";
     public static final String RESPONSE_EXIT_SUCCESS = "EXIT_SUCCESS";
     public static final String RESPONSE_SEND_EMAIL_SUCCESS = "SEND_EMAIL_SUCCESS";
     public static final String RESPONSE_RETRIEVE_EMAILS_SUCCESS = "RETRIEVE_EMAILS_SUCCESS";
     public static final String RESPONSE_READ_EMAIL_SUCCESS = "READ_EMAIL_SUCCESS";
     public static final String RESPONSE_SEARCH_EMAIL_SUCCESS = "SEARCH_EMAIL_SUCCESS";
+    public static final String RESPONSE_HELLO_SUCCESS = "HELLO_SUCCESS";
+    public static final String RESPONSE_SYNC_SUCCESS = "SYNC_SUCCESS";
+    public static final String RESPONSE_BATCH_SUCCESS = "BATCH_SUCCESS";
+    public static final String RESPONSE_IDLE_SUCCESS = "IDLE_SUCCESS";
 
     // === Server-to-Client Failure Responses ===
     public static final String RESPONSE_REGISTER_FAIL = "REGISTER_FAIL";
     public static final String RESPONSE_LOGIN_FAIL = "LOGIN_FAIL";
     public static final String RESPONSE_LOGOUT_FAIL = "LOGOUT_FAIL";
+    public static final String RESPONSE_RESUME_FAIL = "RESUME_FAIL";
     public static final String RESPONSE_SEND_EMAIL_FAIL = "SEND_EMAIL_FAIL";
     public static final String RESPONSE_RETRIEVE_EMAILS_FAIL = "RETRIEVE_EMAILS_FAIL";
     public static final String RESPONSE_READ_EMAIL_FAIL = "READ_EMAIL_FAIL";
     public static final String RESPONSE_SEARCH_EMAIL_FAIL = "SEARCH_EMAIL_FAIL";
+    public static final String RESPONSE_HELLO_FAIL = "HELLO_FAIL";
+    public static final String RESPONSE_SYNC_FAIL = "SYNC_FAIL";
+    public static final String RESPONSE_BATCH_FAIL = "BATCH_FAIL";
+    public static final String RESPONSE_IDLE_FAIL = "IDLE_FAIL";
+
+    // === Server-to-Client Push Messages (unsolicited) ===
+    public static final String PUSH_NEW_EMAIL = "NEW_EMAIL";
+    public static final String PUSH_SERVER_GOING_AWAY = "SERVER_GOING_AWAY"; // server is draining for shutdown
 
     // === Server Errors / Special Cases ===
     public static final String RESPONSE_INVALID_FORMAT = "INVALID_FORMAT"; // Malformed JSON, missing fields, etc.
     public static final String RESPONSE_UNAUTHORIZED = "UNAUTHORIZED"; // Action requires login
     public static final String RESPONSE_UNKNOWN = "UNKNOWN_COMMAND"; // Unrecognized command
+    public static final String RESPONSE_COMPRESSED = "COMPRESSED"; // Base64 deflated response line
+    public static final String RESPONSE_RATE_LIMITED = "RATE_LIMITED"; // Too many requests, carries retryAfterMs
+    public static final String RESPONSE_NOT_MODIFIED = "NOT_MODIFIED"; // Listing unchanged since ifVersion
 
     // === Reserved for Future Protocol Commands (not implemented) ===
     // public static final String CMD_EDIT_EMAIL = "EDIT_EMAIL";
@@ -2,8 +2,11 @@ package utils;
 
 import lombok.extern.slf4j.Slf4j;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
@@ -11,13 +14,47 @@ import static utils.ServerConstants.*;
 
 /**
  * Utility class for handling password hashing, salting, and verification logic
- * using SHA-256 and secure random generation.
+ * using PBKDF2 and secure random generation.
+ * <p>
+ * Passwords are stored as {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}.
+ * The iteration count is calibrated once at startup so one hash takes about
+ * {@link ServerConstants#KDF_TARGET_MILLIS}; entries below the floor or well
+ * below the calibrated count, or in the legacy single-pass SHA-256
+ * {@code <salt>$<hash>} format, still verify and are reported by
+ * {@link #needsRehash(String)} so they can be upgraded on the next successful
+ * login.
+ * <p>
+ * Hashing is deliberately slow; callers run it on the bounded auth executor,
+ * never on a connection thread. Each thread keeps its own {@link SecureRandom},
+ * {@link SecretKeyFactory} and {@link MessageDigest}, so the hot path neither
+ * looks up providers nor reseeds, and threads never contend for one instance.
  * <p>
  * Supports centralized security operations for AuthService.
  */
 @Slf4j
 public class SecurityUtils {
 
+    private static final int CALIBRATION_PROBE_ITERATIONS = 20_000;
+    private static final int CALIBRATION_ROUNDS = 3;
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static final ThreadLocal<SecretKeyFactory> KDF = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(KDF_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(KDF_ALGORITHM + " not available", e);
+        }
+    });
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " not available", e);
+        }
+    });
+
+    private static volatile int kdfIterations = KDF_MIN_ITERATIONS;
+
     /**
      * Generates a cryptographically secure random salt.
      *
@@ -25,12 +62,137 @@ public class SecurityUtils {
      */
     public static String generateSalt() {
         byte[] salt = new byte[SALT_LENGTH];
-        new SecureRandom().nextBytes(salt);
+        RANDOM.get().nextBytes(salt);
         return Base64.getEncoder().encodeToString(salt);
     }
 
     /**
-     * Hashes a password with a given salt using SHA-256.
+     * Hashes a password with a fresh salt and the current iteration count.
+     *
+     * @param password Raw user password
+     * @return the complete entry to store
+     */
+    public static String hashPassword(String password) {
+        int iterations = kdfIterations;
+        String salt = generateSalt();
+        return KDF_ID + SALT_DELIMITER + iterations + SALT_DELIMITER + salt + SALT_DELIMITER
+                + pbkdf2(password, salt, iterations);
+    }
+
+    /**
+     * Verifies a raw password against a stored entry in either format.
+     *
+     * @return true if the password matches; false if it does not or the entry is malformed
+     */
+    public static boolean verifyPassword(String rawPassword, String storedEntry) {
+        String[] parts = storedEntry.split("\\$");
+        if (parts.length == 2) {
+            return verifyPassword(rawPassword, parts[1], parts[0]);
+        }
+        int iterations = iterationsOf(parts);
+        if (iterations <= 0) {
+            return false;
+        }
+        boolean match = MessageDigest.isEqual(
+                pbkdf2(rawPassword, parts[2], iterations).getBytes(StandardCharsets.UTF_8),
+                parts[3].getBytes(StandardCharsets.UTF_8));
+        if (!match) {
+            log.warn("Password verification failed");
+        }
+        return match;
+    }
+
+    /**
+     * @return true if the entry is in a format {@link #verifyPassword(String, String)} understands
+     */
+    public static boolean isWellFormed(String storedEntry) {
+        String[] parts = storedEntry.split("\\$");
+        return parts.length == 2 || iterationsOf(parts) > 0;
+    }
+
+    /**
+     * Calibration is re-run on every start and its result moves with load, so
+     * an entry is only upgraded when it falls below the floor or short of the
+     * calibrated count by more than {@link ServerConstants#KDF_REHASH_FACTOR};
+     * otherwise one slightly higher measurement would rehash every user.
+     *
+     * @return true if the entry is legacy SHA-256 or uses too few iterations
+     */
+    public static boolean needsRehash(String storedEntry) {
+        int iterations = iterationsOf(storedEntry.split("\\$"));
+        return iterations < KDF_MIN_ITERATIONS || iterations < kdfIterations / KDF_REHASH_FACTOR;
+    }
+
+    // Iteration count of a PBKDF2 entry, or -1 if the parts are not one
+    private static int iterationsOf(String[] parts) {
+        if (parts.length != 4 || !KDF_ID.equals(parts[0])) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Measures this machine and sets the iteration count so that one hash
+     * takes about {@code targetMillis}, never fewer than
+     * {@link ServerConstants#KDF_MIN_ITERATIONS}.
+     *
+     * @return the iteration count now in use
+     */
+    public static int calibrate(long targetMillis) {
+        String salt = generateSalt();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) { // first round warms up the JIT; keep the fastest
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, CALIBRATION_PROBE_ITERATIONS);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long scaled = CALIBRATION_PROBE_ITERATIONS * (targetMillis * 1_000_000L) / Math.max(1, best);
+        int iterations = (int) Math.min(Integer.MAX_VALUE, Math.max(KDF_MIN_ITERATIONS, scaled / 1000 * 1000));
+        kdfIterations = iterations;
+        log.info("Password hashing calibrated: {} iterations (~{} ms target)", iterations, targetMillis);
+        LogHandler.info("Password hashing calibrated: " + iterations + " iterations (~" + targetMillis + " ms target)");
+        return iterations;
+    }
+
+    public static int getIterations() {
+        return kdfIterations;
+    }
+
+    private static String pbkdf2(String password, String salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt.getBytes(StandardCharsets.UTF_8),
+                iterations, KDF_KEY_BITS);
+        try {
+            byte[] hashed = KDF.get().generateSecret(spec).getEncoded();
+            return Base64.getEncoder().encodeToString(hashed);
+        } catch (Exception e) {
+            log.error("Hashing error: {}", e.getMessage());
+            LogHandler.log("Hashing error: " + e.getMessage());
+            throw new RuntimeException("Failed to hash password", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Digests a session token for storage, so the token itself never reaches
+     * disk. Tokens are long and random, so one unsalted pass is enough.
+     *
+     * @return URL-safe base64 SHA-256 of the token
+     */
+    public static String digestToken(String token) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        byte[] hashed = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hashed);
+    }
+
+    /**
+     * Hashes a password with a given salt using a single SHA-256 pass: the
+     * legacy format, kept only to verify entries that predate PBKDF2.
      *
      * @param password Raw user password
      * @param salt     Salt string to prepend before hashing
@@ -38,7 +200,8 @@ public class SecurityUtils {
      */
     public static String hashPassword(String password, String salt) {
         try {
-            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            MessageDigest digest = SHA256.get();
+            digest.reset(); // in case an earlier call on this thread failed midway
             digest.update(salt.getBytes(StandardCharsets.UTF_8));
             byte[] hashed = digest.digest(password.getBytes(StandardCharsets.UTF_8));
             return Base64.getEncoder().encodeToString(hashed);
@@ -50,7 +213,7 @@ public class SecurityUtils {
     }
 
     /**
-     * Verifies a raw password by comparing its salted hash to a stored hash.
+     * Verifies a raw password against a legacy SHA-256 hash.
      *
      * @param rawPassword Raw password input
      * @param storedHash  Hash stored in the database
@@ -10,9 +10,15 @@ import java.util.Optional;
 public class ServerConstants {
 
         // === Cryptographic Settings ===
-        public static final String HASH_ALGORITHM = "SHA-256";
+        public static final String HASH_ALGORITHM = "SHA-256"; // legacy entries, upgraded on login
         public static final String SALT_DELIMITER = "$";
         public static final int SALT_LENGTH = 16; // in bytes
+        public static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+        public static final String KDF_ID = "pbkdf2-sha256"; // prefix of stored entries
+        public static final int KDF_KEY_BITS = 256;
+        public static final int KDF_MIN_ITERATIONS = 100_000; // floor for calibration, and the uncalibrated default
+        public static final long KDF_TARGET_MILLIS = 100; // startup calibration aims for this per hash
+        public static final int KDF_REHASH_FACTOR = 2; // entries within this factor of the calibrated count are kept
 
         // === Server Networking Configuration ===
         public static final int SERVER_PORT = parsePort(System.getenv("SERVER_PORT"), 18080);
@@ -21,7 +27,12 @@ public class ServerConstants {
         // === File System Paths ===
         public static final String USERS_DB_PATH = "src/main/resources/users.db";
         public static final String EMAILS_DB_PATH = "src/main/resources/emails.db";
+        public static final String SESSIONS_DB_PATH = "src/main/resources/sessions.db"; // written on clean shutdown only
         public static final String LOG_FILE_PATH = "logs/server.log";
+        public static final int LOG_BUFFER_CAPACITY = 16_384; // queued log lines before new ones are dropped
+        public static final int LOG_BATCH_CHARS = 64 * 1024; // a batch this large is written at once
+        public static final long LOG_FLUSH_INTERVAL_MS = 50; // longest a log line waits for its batch
+        public static final long LOG_SHUTDOWN_TIMEOUT_MS = 2000;
 
         // === Keystore Configuration (used for TLS or future HTTPS support) ===
         public static final String KEYSTORE_PATH = "resources/server.p12";
@@ -32,6 +43,12 @@ public class ServerConstants {
         public static final String KEYSTORE_PASSWORD = Optional.ofNullable(System.getenv("KEYSTORE_PASSWORD"))
                         .orElse(DEFAULT_KEYSTORE_PASSWORD);
 
+        // === Client Truststore (server certificate only, never the server's private key) ===
+        public static final String TRUSTSTORE_PATH = Optional.ofNullable(System.getenv("TRUSTSTORE_PATH"))
+                        .orElse("resources/client-truststore.p12");
+        public static final String TRUSTSTORE_PASSWORD = Optional.ofNullable(System.getenv("TRUSTSTORE_PASSWORD"))
+                        .orElse("changeit"); // guards integrity only; the store holds no secrets
+
         // === Required Directories for Application Startup ===
         public static final String[] REQUIRED_DIRECTORIES = {
                         "src/main/resources",
@@ -45,7 +62,15 @@ public class ServerConstants {
         // === Server Behavior Flags ===
         public static final boolean DEBUG_MODE = true;
         public static final boolean IS_TEST_ENVIRONMENT = false;
-        public static final boolean ENABLE_TLS = false;
+        public static final boolean ENABLE_TLS = Boolean.parseBoolean(System.getenv("ENABLE_TLS"));
+
+        // === TLS Configuration (applies when ENABLE_TLS is set) ===
+        public static final String[] TLS_PROTOCOLS = { "TLSv1.3", "TLSv1.2" };
+        // Comma-separated cipher suites from env var TLS_CIPHER_SUITES; empty keeps the JSSE defaults
+        public static final String TLS_CIPHER_SUITES = Optional.ofNullable(System.getenv("TLS_CIPHER_SUITES"))
+                        .orElse("");
+        public static final int TLS_SESSION_CACHE_SIZE = 1024; // resumable sessions kept by the server
+        public static final int TLS_SESSION_TIMEOUT_SECONDS = 3600;
 
         // === Reserved Headers (e.g., for future authentication token support) ===
         public static final String SESSION_TOKEN_HEADER = "Session-Token";
@@ -70,6 +95,73 @@ public class ServerConstants {
         // === Socket Behavior Flags ===
         public static final int SOCKET_TIMEOUT_MS = 300_000; // 5 minutes
 
+        // === Mailbox Pagination (RETRIEVE_EMAILS with limit/cursor) ===
+        public static final int DEFAULT_PAGE_SIZE = 50;
+        public static final int MAX_PAGE_SIZE = 200;
+
+        // === Listing Projection (snippet preview length in characters) ===
+        public static final int PREVIEW_LENGTH = 80;
+
+        // === Delta Sync (changes retained per mailbox before a full resync is required) ===
+        public static final int SYNC_HISTORY_LIMIT = 1000;
+
+        // === BATCH (sub-commands accepted in one envelope) ===
+        public static final int MAX_BATCH_SIZE = 100;
+
+        // === Server Push (NEW_EMAIL notifications) ===
+        public static final int PUSH_QUEUE_CAPACITY = 256; // pending pushes per connection before dropping
+        public static final long PUSH_DRAIN_TIMEOUT_MS = 1000; // wait for queued pushes when a connection closes
+
+        // === Response Compression (enabled per connection through HELLO) ===
+        public static final int COMPRESSION_THRESHOLD_BYTES = 2048; // smaller lines are sent as-is
+
+        // === IDLE (long-poll for mailbox changes) ===
+        public static final long IDLE_DEFAULT_TIMEOUT_MS = 30_000;
+        public static final long IDLE_MAX_TIMEOUT_MS = 300_000; // clients re-issue IDLE after each answer
+        public static final int IDLE_MAX_WAITERS = 10_000; // parked waiters cost a future each, not a thread
+
+        // === HTTP/JSON Gateway (optional, for internal tooling; enable with env var ENABLE_HTTP) ===
+        public static final boolean ENABLE_HTTP = Boolean.parseBoolean(System.getenv("ENABLE_HTTP"));
+        public static final int HTTP_PORT = parsePort(System.getenv("HTTP_PORT"), 18081);
+        public static final String HTTP_BIND_ADDRESS = Optional.ofNullable(System.getenv("HTTP_BIND_ADDRESS"))
+                        .orElse("127.0.0.1"); // loopback unless explicitly exposed
+        public static final int HTTP_THREADS = 16;
+        public static final int HTTP_QUEUE_LIMIT = 256; // beyond this the accepting thread runs requests itself
+        public static final int HTTP_MAX_BODY_BYTES = 1 << 20;
+        public static final int HTTP_SESSION_TTL_SECONDS = 3600;
+
+        // === Session Expiry (absolute cap, sliding idle timeout, checked by a timing wheel) ===
+        public static final long SESSION_ABSOLUTE_TTL_SECONDS = 12 * 3600;
+        public static final long SESSION_IDLE_TTL_SECONDS = 30 * 60; // refreshed by every command
+        public static final long SESSION_WHEEL_TICK_MS = 1000; // expiry resolution
+        public static final int SESSION_WHEEL_SLOTS = 512;
+        public static final int MAX_SESSIONS_PER_USER = 8; // devices; the oldest session is ended beyond this
+        public static final int MAX_DEVICE_ID_LENGTH = 64;
+
+        // === Graceful Shutdown (drain before persisting) ===
+        public static final int DRAIN_TIMEOUT_MS = 10_000; // in-flight commands get this long to finish
+
+        // === Rate Limiting (COMMAND=burst/perSecond, per user; override with env var RATE_LIMITS) ===
+        public static final String RATE_LIMITS = Optional.ofNullable(System.getenv("RATE_LIMITS"))
+                        .orElse("SEND_EMAIL=20/2,SEARCH_EMAIL=10/2,LOGIN=5/0.2,REGISTER=3/0.1");
+        public static final int RATE_LIMIT_IP_MULTIPLIER = 4; // allowance of one client address vs one user
+
+        // === Login Throttling (failed logins per account / client address, checked before hashing) ===
+        public static final long LOGIN_FAILURE_WINDOW_SECONDS = 15 * 60;
+        public static final int LOGIN_ACCOUNT_FAILURE_THRESHOLD = 5;
+        public static final int LOGIN_ADDRESS_FAILURE_THRESHOLD = 20; // several users may share one address
+        public static final long LOGIN_LOCKOUT_BASE_MS = 1000; // doubles with each further failure
+        public static final long LOGIN_LOCKOUT_MAX_MS = 15 * 60 * 1000;
+
+        // === Command Executors (see server.dispatch.CommandExecutors) ===
+        private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+        public static final int AUTH_POOL_THREADS = Math.max(2, CPU_COUNT / 2); // password hashing
+        public static final int AUTH_QUEUE_LIMIT = 64; // logins waiting before "Server busy"
+        public static final int SEARCH_PARALLELISM = CPU_COUNT;
+        public static final int SEARCH_QUEUE_LIMIT = 128;
+        public static final int IDLE_ANSWER_THREADS = 2; // write IDLE answers, never on the thread that woke them
+        public static final int IDLE_ANSWER_QUEUE_LIMIT = 1024; // beyond this answers go through the push queue
+
         // Prevent instantiation
         private ServerConstants() {
         }
@@ -0,0 +1,115 @@
+package utils;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Utility class for the optional TLS transport (see {@code server/sslcertificate.md}
+ * for generating the PKCS12 keystore).
+ * <p>
+ * Server contexts keep a session cache so that reconnecting clients resume
+ * their TLS session with an abbreviated handshake instead of a full one.
+ * Clients get resumption automatically as long as they reuse one
+ * {@link SSLContext} for all their connections.
+ */
+public class TlsUtils {
+
+    private static final String KEYSTORE_TYPE = "PKCS12";
+
+    /**
+     * Builds a server-side TLS context from a PKCS12 keystore.
+     */
+    public static SSLContext createServerContext(String keystorePath, char[] password)
+            throws IOException, GeneralSecurityException {
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(loadKeyStore(keystorePath, password), password);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        configureSessionCache(context.getServerSessionContext());
+        return context;
+    }
+
+    /**
+     * Builds a client-side TLS context that trusts the certificates in the
+     * given PKCS12 truststore (e.g. the server's self-signed certificate).
+     */
+    public static SSLContext createClientContext(String truststorePath, char[] password)
+            throws IOException, GeneralSecurityException {
+        TrustManagerFactory trustManagers =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(loadKeyStore(truststorePath, password));
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        configureSessionCache(context.getClientSessionContext());
+        return context;
+    }
+
+    /**
+     * Opens a TLS server socket restricted to the configured protocols and,
+     * if any are configured, cipher suites.
+     *
+     * @param cipherSuites comma-separated suite names, or empty for the JSSE defaults
+     * @throws IllegalArgumentException if none of the requested suites is supported
+     */
+    public static SSLServerSocket createServerSocket(SSLContext context, int port, String[] protocols,
+            String cipherSuites) throws IOException {
+        SSLServerSocket serverSocket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(port);
+        serverSocket.setEnabledProtocols(protocols);
+        String[] suites = selectCipherSuites(cipherSuites, serverSocket.getSupportedCipherSuites());
+        if (suites.length > 0) {
+            serverSocket.setEnabledCipherSuites(suites);
+        }
+        return serverSocket;
+    }
+
+    /**
+     * Keeps the requested suites that this JVM supports, in the requested order.
+     *
+     * @return the supported subset, or an empty array if nothing was requested
+     * @throws IllegalArgumentException if suites were requested but none is supported
+     */
+    public static String[] selectCipherSuites(String requested, String[] supported) {
+        if (requested == null || requested.isBlank()) {
+            return new String[0];
+        }
+        List<String> available = Arrays.asList(supported);
+        String[] selected = Arrays.stream(requested.split(","))
+                .map(String::trim)
+                .filter(available::contains)
+                .toArray(String[]::new);
+        if (selected.length == 0) {
+            throw new IllegalArgumentException("None of the configured TLS cipher suites is supported: " + requested);
+        }
+        return selected;
+    }
+
+    private static KeyStore loadKeyStore(String path, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+        try (InputStream in = Files.newInputStream(Path.of(path))) {
+            keyStore.load(in, password);
+        }
+        return keyStore;
+    }
+
+    private static void configureSessionCache(SSLSessionContext sessions) {
+        sessions.setSessionCacheSize(ServerConstants.TLS_SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(ServerConstants.TLS_SESSION_TIMEOUT_SECONDS);
+    }
+
+    private TlsUtils() {
+        // Prevent instantiation
+    }
+}
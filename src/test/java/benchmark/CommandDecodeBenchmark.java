@@ -0,0 +1,80 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import server.protocol.CommandDecoder;
+import server.protocol.CredentialsRequest;
+import server.protocol.MailboxQuery;
+import utils.ProtocolConstants;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request decoding cost: the previous path (split in ClientHandler, split
+ * again in CommandHandler, JsonObject tree, and for LOGIN a second parse of the
+ * raw payload in AuthService) against a single {@link CommandDecoder} pass.
+ * Run with the GC profiler to compare bytes allocated per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDecodeBenchmark {
+
+    private static final String LOGIN =
+            "LOGIN%%{\"email\":\"alice@example.com\",\"password\":\"correct horse battery staple\"}";
+    private static final String RETRIEVE =
+            "RETRIEVE_EMAILS%%{\"email\":\"alice@example.com\",\"type\":\"received\",\"limit\":20,"
+                    + "\"cursor\":\"cDE6MTIzNDU\"}";
+
+    private final Gson gson = new Gson();
+
+    @Benchmark
+    public Object loginLegacy() {
+        String command = LOGIN.contains("%%") ? LOGIN.split("%%")[0] : "MALFORMED"; // ClientHandler
+        String[] parts = LOGIN.split(ProtocolConstants.DELIMITER, 2); // CommandHandler
+        JsonObject json = JsonParser.parseString(parts[1]).getAsJsonObject();
+        User user = gson.fromJson(parts[1], User.class); // AuthService re-parse
+        return command.length() + json.size() + user.getEmail().length();
+    }
+
+    @Benchmark
+    public Object loginDecoder() {
+        return CommandDecoder.decode(LOGIN).body(CredentialsRequest.class);
+    }
+
+    @Benchmark
+    public Object retrieveLegacy() {
+        String command = RETRIEVE.contains("%%") ? RETRIEVE.split("%%")[0] : "MALFORMED";
+        String[] parts = RETRIEVE.split(ProtocolConstants.DELIMITER, 2);
+        JsonObject json = JsonParser.parseString(parts[1]).getAsJsonObject();
+        String email = json.has("email") ? json.get("email").getAsString() : null;
+        String type = json.has("type") ? json.get("type").getAsString() : null;
+        int limit = json.has("limit") ? json.get("limit").getAsInt() : 0;
+        String cursor = json.has("cursor") ? json.get("cursor").getAsString() : null;
+        return command.length() + email.length() + type.length() + limit + cursor.length();
+    }
+
+    @Benchmark
+    public Object retrieveDecoder() {
+        return CommandDecoder.decode(RETRIEVE).body(MailboxQuery.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CommandDecodeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work a {@code LogHandler} call does on the calling thread before the entry
+ * is queued. The previous path captured the whole stack trace for the
+ * caller's class name and formatted the line, building a new
+ * {@link DateTimeFormatter} each time. The current path walks the stack only
+ * as far as the first frame outside the logger and captures the time; the
+ * line is rendered later on the writer thread. Both are reproduced here two
+ * frames below a stand-in for the logger, as they run inside it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogCallerBenchmark {
+
+    private static final String MESSAGE = "Session started for: user42@example.com on device laptop";
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private record Entry(long timeMillis, String level, String origin, String message) {
+    }
+
+    @Benchmark
+    public String stackTraceAndFormat() {
+        return Logger.stackTraceAndFormat("INFO", MESSAGE);
+    }
+
+    @Benchmark
+    public Entry stackWalkerAndCapture() {
+        return Logger.stackWalkerAndCapture("INFO", MESSAGE);
+    }
+
+    private static final class Logger {
+
+        static String stackTraceAndFormat(String level, String message) {
+            return logAsyncBefore(level, message);
+        }
+
+        static Entry stackWalkerAndCapture(String level, String message) {
+            return logAsyncAfter(level, message);
+        }
+
+        private static String logAsyncBefore(String level, String message) {
+            String origin = Thread.currentThread().getStackTrace()[3].getClassName();
+            String timestamp = "[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "]";
+            return String.format("%s [%s] (%s): %s", timestamp, level, origin, message);
+        }
+
+        private static Entry logAsyncAfter(String level, String message) {
+            String origin = WALKER.walk(frames -> frames
+                    .map(StackWalker.StackFrame::getClassName)
+                    .filter(name -> !name.equals(Logger.class.getName()))
+                    .findFirst()
+                    .orElse(Logger.class.getName()));
+            return new Entry(System.currentTimeMillis(), level, origin, message);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LogCallerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
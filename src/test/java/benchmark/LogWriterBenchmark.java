@@ -0,0 +1,82 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import utils.LogWriter;
+import utils.ServerConstants;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log file throughput of {@link LogWriter} against the previous path, which
+ * opened the file, wrote one line and closed it again for every entry. Each
+ * invocation writes a burst of {@value #LINES} lines until they are on disk.
+ * For the batched writer that includes starting its thread and closing it,
+ * so the comparison is not flattered by work left in the buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogWriterBenchmark {
+
+    private static final int LINES = 10_000;
+    private static final String ENTRY = "[2026-10-19 12:00:00] [INFO] (server.service.SessionManager): "
+            + "Session started for: user42@example.com on device 3f2a9c1e-77b0-4d1e-9a51-0c8e2d6b4f10";
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("log-writer-benchmark", ".log");
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() throws IOException {
+        Files.write(file, new byte[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void openWriteClosePerLine() throws IOException {
+        for (int i = 0; i < LINES; i++) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file.toFile(), true))) {
+                writer.write(ENTRY);
+                writer.newLine();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public boolean batchedChannel() throws InterruptedException {
+        LogWriter<String> writer = LogWriter.lines(file, ServerConstants.LOG_BUFFER_CAPACITY,
+                ServerConstants.LOG_BATCH_CHARS, ServerConstants.LOG_FLUSH_INTERVAL_MS);
+        for (int i = 0; i < LINES; i++) {
+            writer.append(ENTRY);
+        }
+        return writer.close(10_000);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LogWriterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
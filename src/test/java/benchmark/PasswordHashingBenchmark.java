@@ -0,0 +1,113 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import utils.SecurityUtils;
+import utils.ServerConstants;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Register and login throughput of {@link SecurityUtils} with thread-confined
+ * crypto primitives, against the previous path that created a
+ * {@link SecureRandom}, {@link SecretKeyFactory} or {@link MessageDigest} on
+ * every call. "Register" is salt plus hash, "login" is one verification; the
+ * legacy pair measures single-pass SHA-256, where per-call setup is not hidden
+ * behind the KDF's cost. Runs on four threads, as the auth pool does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private String entry;
+    private String legacySalt;
+    private String legacyHash;
+
+    @Setup
+    public void setUp() {
+        entry = SecurityUtils.hashPassword(PASSWORD);
+        legacySalt = SecurityUtils.generateSalt();
+        legacyHash = SecurityUtils.hashPassword(PASSWORD, legacySalt);
+    }
+
+    @Benchmark
+    public String registerFresh() throws GeneralSecurityException {
+        byte[] salt = new byte[ServerConstants.SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        String encodedSalt = Base64.getEncoder().encodeToString(salt);
+        return encodedSalt + freshPbkdf2(encodedSalt, SecurityUtils.getIterations());
+    }
+
+    @Benchmark
+    public String registerPooled() {
+        return SecurityUtils.hashPassword(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean loginFresh() throws GeneralSecurityException {
+        String[] parts = entry.split("\\$");
+        return MessageDigest.isEqual(freshPbkdf2(parts[2], Integer.parseInt(parts[1]))
+                .getBytes(StandardCharsets.UTF_8), parts[3].getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public boolean loginPooled() {
+        return SecurityUtils.verifyPassword(PASSWORD, entry);
+    }
+
+    @Benchmark
+    public boolean legacyLoginFresh() throws GeneralSecurityException {
+        MessageDigest digest = MessageDigest.getInstance(ServerConstants.HASH_ALGORITHM);
+        digest.update(legacySalt.getBytes(StandardCharsets.UTF_8));
+        String attempt = Base64.getEncoder().encodeToString(digest.digest(PASSWORD.getBytes(StandardCharsets.UTF_8)));
+        return attempt.equals(legacyHash);
+    }
+
+    @Benchmark
+    public boolean legacyLoginPooled() {
+        return SecurityUtils.verifyPassword(PASSWORD, legacyHash, legacySalt);
+    }
+
+    @Benchmark
+    public String saltFresh() {
+        byte[] salt = new byte[ServerConstants.SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
+
+    @Benchmark
+    public String saltPooled() {
+        return SecurityUtils.generateSalt();
+    }
+
+    private static String freshPbkdf2(String salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(PASSWORD.toCharArray(), salt.getBytes(StandardCharsets.UTF_8),
+                iterations, ServerConstants.KDF_KEY_BITS);
+        return Base64.getEncoder().encodeToString(
+                SecretKeyFactory.getInstance(ServerConstants.KDF_ALGORITHM).generateSecret(spec).getEncoded());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PasswordHashingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,77 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import model.Email;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import server.handler.ConnectionWriter;
+import utils.ProtocolConstants;
+import utils.ServerConstants;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building a RETRIEVE_EMAILS response as one String (the previous
+ * approach) with streaming it through {@link ConnectionWriter#printlnStreamed}.
+ * Run with the GC profiler to compare bytes allocated per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+    private static final String PREFIX = ProtocolConstants.RESPONSE_RETRIEVE_EMAILS_SUCCESS
+            + ProtocolConstants.DELIMITER;
+
+    @Param({"100", "1000"})
+    private int mailboxSize;
+
+    @Param({"false", "true"})
+    private boolean compression;
+
+    private final Gson gson = new Gson();
+    private List<Email> emails;
+    private ConnectionWriter writer;
+
+    @Setup
+    public void setUp() {
+        emails = new ArrayList<>(mailboxSize);
+        for (int i = 0; i < mailboxSize; i++) {
+            emails.add(new Email(UUID.randomUUID().toString(), "reader@example.com", "sender" + i + "@example.com",
+                    "Subject " + i, "Body of message " + i + " ".repeat(200), "2025-05-11T14:00:00Z", true, false));
+        }
+        writer = new ConnectionWriter(OutputStream.nullOutputStream());
+        if (compression) {
+            writer.enableCompression(ServerConstants.COMPRESSION_THRESHOLD_BYTES);
+        }
+    }
+
+    @Benchmark
+    public void buildWholeLine() {
+        writer.println(PREFIX + gson.toJson(emails));
+    }
+
+    @Benchmark
+    public void streamLine() {
+        writer.printlnStreamed(PREFIX, out -> gson.toJson(emails, out));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ResponseSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
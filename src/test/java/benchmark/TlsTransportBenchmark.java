@@ -0,0 +1,172 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import utils.ServerConstants;
+import utils.TestKeystore;
+import utils.TlsUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quantifies what TLS costs the line protocol compared with plaintext:
+ * connection setup (full vs. resumed handshake) and steady-state round trips
+ * of a large response-sized line. A self-signed keystore is generated at
+ * setup time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsTransportBenchmark {
+
+    private static final String PING = "HELLO%%{}";
+
+    @Param({"16384"})
+    private int lineLength;
+
+    private Path keystoreDir;
+    private ExecutorService serverThreads;
+    private ServerSocket plainServer;
+    private ServerSocket tlsServer;
+    private SSLContext clientContext;
+
+    private Connection plainConnection;
+    private Connection tlsConnection;
+    private String largeLine;
+
+    @Setup
+    public void setUp() throws Exception {
+        keystoreDir = Files.createTempDirectory("tls-bench");
+        Path keystore = TestKeystore.generate(keystoreDir);
+        char[] password = TestKeystore.PASSWORD.toCharArray();
+        Path truststore = TestKeystore.exportTruststore(keystore, keystoreDir);
+        clientContext = TlsUtils.createClientContext(truststore.toString(), password);
+
+        serverThreads = Executors.newCachedThreadPool();
+        plainServer = new ServerSocket(0);
+        tlsServer = TlsUtils.createServerSocket(TlsUtils.createServerContext(keystore.toString(), password), 0,
+                ServerConstants.TLS_PROTOCOLS, ServerConstants.TLS_CIPHER_SUITES);
+        serveEcho(plainServer);
+        serveEcho(tlsServer);
+
+        plainConnection = new Connection(new Socket("localhost", plainServer.getLocalPort()));
+        tlsConnection = new Connection(clientContext.getSocketFactory()
+                .createSocket("localhost", tlsServer.getLocalPort()));
+        largeLine = "RETRIEVE_EMAILS_SUCCESS%%" + "x".repeat(lineLength);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        plainConnection.socket.close();
+        tlsConnection.socket.close();
+        plainServer.close();
+        tlsServer.close();
+        serverThreads.shutdownNow();
+        Files.deleteIfExists(keystoreDir.resolve("test-server.p12"));
+        Files.deleteIfExists(keystoreDir.resolve("test-server.cer"));
+        Files.deleteIfExists(keystoreDir.resolve("test-truststore.p12"));
+        Files.deleteIfExists(keystoreDir);
+    }
+
+    @Benchmark
+    public String connectPlain() throws IOException {
+        try (Socket socket = new Socket("localhost", plainServer.getLocalPort())) {
+            return new Connection(socket).roundTrip(PING);
+        }
+    }
+
+    @Benchmark
+    public String connectTlsFullHandshake() throws IOException {
+        try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory()
+                .createSocket("localhost", tlsServer.getLocalPort())) {
+            String reply = new Connection(socket).roundTrip(PING);
+            socket.getSession().invalidate(); // next connection cannot resume
+            return reply;
+        }
+    }
+
+    @Benchmark
+    public String connectTlsResumed() throws IOException {
+        try (Socket socket = clientContext.getSocketFactory().createSocket("localhost", tlsServer.getLocalPort())) {
+            return new Connection(socket).roundTrip(PING);
+        }
+    }
+
+    @Benchmark
+    public String largeLinePlain() throws IOException {
+        return plainConnection.roundTrip(largeLine);
+    }
+
+    @Benchmark
+    public String largeLineTls() throws IOException {
+        return tlsConnection.roundTrip(largeLine);
+    }
+
+    private void serveEcho(ServerSocket server) {
+        serverThreads.submit(() -> {
+            while (!server.isClosed()) {
+                Socket client;
+                try {
+                    client = server.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                serverThreads.submit(() -> {
+                    try (Socket socket = client) {
+                        Connection connection = new Connection(socket);
+                        String line;
+                        while ((line = connection.in.readLine()) != null) {
+                            connection.out.println(line);
+                        }
+                    } catch (IOException ignored) {
+                        // client went away
+                    }
+                });
+            }
+        });
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        Connection(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true); // measure TLS, not Nagle/delayed-ACK stalls
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        String roundTrip(String line) throws IOException {
+            out.println(line);
+            return in.readLine();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TlsTransportBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,42 @@
+package model;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmailHeaderModelTest {
+
+    private static Email sample(String body) {
+        return new Email("123", "to@example.com", "from@example.com", "Subject", body,
+                "2025-05-01T10:00:00Z", true, true);
+    }
+
+    @Test
+    public void testHeadersCopyEverythingButBody() {
+        EmailHeader header = EmailHeader.of(sample("Secret body"), 0);
+
+        assertEquals("123", header.getId());
+        assertEquals("to@example.com", header.getTo());
+        assertEquals("from@example.com", header.getFrom());
+        assertEquals("Subject", header.getSubject());
+        assertEquals("2025-05-01T10:00:00Z", header.getTimestamp());
+        assertTrue(header.isEdited());
+        assertNull(header.getPreview());
+        assertFalse(new Gson().toJson(header).contains("Secret body"));
+    }
+
+    @Test
+    public void testPreviewCollapsesWhitespaceAndTruncates() {
+        EmailHeader shortPreview = EmailHeader.of(sample("  Hello\n\n  there\tfriend  "), 40);
+        assertEquals("Hello there friend", shortPreview.getPreview());
+
+        EmailHeader longPreview = EmailHeader.of(sample("abcdefghij klmnopqrst"), 11);
+        assertEquals("abcdefghij...", longPreview.getPreview());
+    }
+
+    @Test
+    public void testPreviewOfMissingBodyIsEmpty() {
+        assertEquals("", EmailHeader.of(sample(null), 20).getPreview());
+    }
+}
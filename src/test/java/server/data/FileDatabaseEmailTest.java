@@ -1,13 +1,19 @@
 package server.data;
 
 import model.Email;
+import model.SyncResult;
 import org.junit.jupiter.api.*;
+import utils.ServerConstants;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -15,6 +21,7 @@ class FileDatabaseEmailTest {
 
     private static final Path TEMP_EMAILS_DB = Path.of("src", "test", "resources", "test_emails.db");
     private static final Path TEMP_USERS_DB = Path.of("src", "test", "resources", "test_users.db");
+    private static final Path TEMP_SYNC_STATE = Path.of("src", "test", "resources", "test_emails.db.sync");
 
     private FileDatabase fileDatabase;
     private Email email;
@@ -25,6 +32,7 @@ class FileDatabaseEmailTest {
             Files.createDirectories(TEMP_EMAILS_DB.getParent());
             Files.deleteIfExists(TEMP_EMAILS_DB);
             Files.deleteIfExists(TEMP_USERS_DB);
+            Files.deleteIfExists(TEMP_SYNC_STATE);
             Files.createFile(TEMP_EMAILS_DB);
             Files.createFile(TEMP_USERS_DB);
         } catch (IOException e) {
@@ -68,6 +76,20 @@ class FileDatabaseEmailTest {
         assertEquals("ID Check", result.getSubject());
     }
 
+    @Test
+    void testDuplicateIdCannotReplaceExistingEmail() {
+        Email original = createSampleEmail("victim@example.com", "friend@example.com", "Original");
+        original.setId("taken-id");
+        assertTrue(fileDatabase.saveEmail(original));
+
+        Email forged = createSampleEmail("attacker@example.com", "attacker@example.com", "Forged");
+        forged.setId("taken-id");
+        assertFalse(fileDatabase.saveEmail(forged), "A second email must not take an existing id");
+
+        assertEquals("Original", fileDatabase.getEmailById("taken-id").getSubject());
+        assertTrue(fileDatabase.getEmailsForUser("attacker@example.com", false).isEmpty());
+    }
+
     @Test
     void testSearchEmailsReturnsMatchingResult() {
         email = createSampleEmail("alice@example.com", "bob@example.com", "Weekly Update");
@@ -88,6 +110,149 @@ class FileDatabaseEmailTest {
         assertTrue(result.isEmpty(), "Expected empty list for nonexistent user");
     }
 
+    @Test
+    void testSyncReturnsOnlyChangesSinceBookmark() {
+        SyncResult initial = fileDatabase.getChangesSince("alice@example.com", null, 0);
+        assertTrue(initial.isFullResync(), "A client without a bookmark must list its mailbox first");
+
+        Email first = createSampleEmail("alice@example.com", "bob@example.com", "First");
+        fileDatabase.saveEmail(first);
+        SyncResult afterFirst = fileDatabase.getChangesSince("alice@example.com", initial.getEpoch(),
+                initial.getSeq());
+        assertFalse(afterFirst.isFullResync());
+        assertEquals(1, afterFirst.getAdded().size());
+
+        Email second = createSampleEmail("alice@example.com", "bob@example.com", "Second");
+        fileDatabase.saveEmail(second);
+        first.setVisible(false);
+        fileDatabase.updateEmail(first);
+
+        SyncResult delta = fileDatabase.getChangesSince("alice@example.com", afterFirst.getEpoch(),
+                afterFirst.getSeq());
+        assertEquals(List.of("Second"), delta.getAdded().stream().map(Email::getSubject).toList());
+        assertEquals(List.of(first.getId()), delta.getHidden());
+        assertTrue(delta.getEdited().isEmpty());
+        assertTrue(delta.getSeq() > afterFirst.getSeq());
+
+        // The sender's mailbox changed too; an email added then hidden is only reported as hidden
+        SyncResult sender = fileDatabase.getChangesSince("bob@example.com", delta.getEpoch(), 0);
+        assertEquals(List.of("Second"), sender.getAdded().stream().map(Email::getSubject).toList());
+        assertEquals(List.of(first.getId()), sender.getHidden());
+    }
+
+    @Test
+    void testSyncSignalsFullResyncForForeignEpochOrCompactedHistory() {
+        fileDatabase.saveEmail(createSampleEmail("alice@example.com", "bob@example.com", "Hello"));
+        String epoch = fileDatabase.getSyncEpoch();
+
+        assertTrue(fileDatabase.getChangesSince("alice@example.com", "old-epoch", 0).isFullResync());
+
+        for (int i = 0; i < ServerConstants.SYNC_HISTORY_LIMIT; i++) {
+            fileDatabase.saveEmail(createSampleEmail("alice@example.com", "bob@example.com", "Bulk " + i));
+        }
+        assertTrue(fileDatabase.getChangesSince("alice@example.com", epoch, 0).isFullResync(),
+                "History before the retained window must trigger a full resync");
+        assertFalse(fileDatabase.getChangesSince("alice@example.com", epoch, 1).isFullResync());
+    }
+
+    @Test
+    void testMailboxVersionChangesOnlyForAffectedMailboxes() {
+        String alice = fileDatabase.getMailboxVersion("alice@example.com");
+        String carol = fileDatabase.getMailboxVersion("carol@example.com");
+        assertEquals(alice, fileDatabase.getMailboxVersion("ALICE@example.com"), "Versions are case-insensitive");
+
+        Email sent = createSampleEmail("alice@example.com", "bob@example.com", "Hello");
+        fileDatabase.saveEmail(sent);
+        String aliceAfterAdd = fileDatabase.getMailboxVersion("alice@example.com");
+        assertNotEquals(alice, aliceAfterAdd);
+        assertEquals(carol, fileDatabase.getMailboxVersion("carol@example.com"));
+
+        sent.setVisible(false);
+        fileDatabase.updateEmail(sent);
+        assertNotEquals(aliceAfterAdd, fileDatabase.getMailboxVersion("alice@example.com"));
+    }
+
+    @Test
+    void testSyncBookmarkSurvivesCleanRestart() {
+        fileDatabase.saveEmail(createSampleEmail("alice@example.com", "bob@example.com", "Before"));
+        SyncResult bookmark = fileDatabase.getChangesSince("alice@example.com", fileDatabase.getSyncEpoch(), 0);
+        fileDatabase.saveAll();
+        assertTrue(Files.exists(TEMP_SYNC_STATE), "Clean shutdown must persist the sync state");
+
+        FileDatabase restarted = new FileDatabase(TEMP_USERS_DB.toString(), TEMP_EMAILS_DB.toString());
+        restarted.loadAll();
+        assertFalse(Files.exists(TEMP_SYNC_STATE), "Sync state is consumed on load");
+        assertEquals(bookmark.getEpoch(), restarted.getSyncEpoch());
+
+        SyncResult unchanged = restarted.getChangesSince("alice@example.com", bookmark.getEpoch(), bookmark.getSeq());
+        assertFalse(unchanged.isFullResync(), "Bookmark from before the restart must still be served as a delta");
+        assertTrue(unchanged.getAdded().isEmpty());
+
+        restarted.saveEmail(createSampleEmail("alice@example.com", "bob@example.com", "After"));
+        SyncResult delta = restarted.getChangesSince("alice@example.com", bookmark.getEpoch(), bookmark.getSeq());
+        assertEquals(List.of("After"), delta.getAdded().stream().map(Email::getSubject).toList());
+    }
+
+    @Test
+    void testSyncStateIgnoredWhenEmailFileDoesNotMatch() throws IOException {
+        fileDatabase.saveEmail(createSampleEmail("alice@example.com", "bob@example.com", "Hello"));
+        String epoch = fileDatabase.getSyncEpoch();
+        fileDatabase.saveAll();
+        Files.writeString(TEMP_EMAILS_DB, ""); // email file replaced behind the server's back
+
+        FileDatabase restarted = new FileDatabase(TEMP_USERS_DB.toString(), TEMP_EMAILS_DB.toString());
+        restarted.loadAll();
+
+        assertNotEquals(epoch, restarted.getSyncEpoch());
+        assertTrue(restarted.getChangesSince("alice@example.com", epoch, 1).isFullResync());
+        assertFalse(Files.exists(TEMP_SYNC_STATE));
+    }
+
+    @Test
+    void testAwaitChangeWakesOnlyAffectedMailbox() throws Exception {
+        String epoch = fileDatabase.getSyncEpoch();
+        CompletableFuture<Boolean> alice = fileDatabase.awaitChange("Alice@example.com", epoch, 0, 10_000);
+        CompletableFuture<Boolean> carol = fileDatabase.awaitChange("carol@example.com", epoch, 0, 50);
+        assertFalse(alice.isDone());
+        assertEquals(2, fileDatabase.getWatcherCount());
+
+        fileDatabase.saveEmail(createSampleEmail("alice@example.com", "bob@example.com", "Wake up"));
+
+        assertTrue(alice.isDone(), "Saving must wake the recipient's waiter");
+        assertTrue(alice.get());
+        assertFalse(carol.get(1, TimeUnit.SECONDS), "An unrelated mailbox only wakes on timeout");
+        assertEquals(0, fileDatabase.getWatcherCount());
+    }
+
+    @Test
+    void testAwaitChangeCompletesAtOnceForStaleBookmark() {
+        fileDatabase.saveEmail(createSampleEmail("alice@example.com", "bob@example.com", "Already here"));
+        String epoch = fileDatabase.getSyncEpoch();
+
+        assertTrue(fileDatabase.awaitChange("alice@example.com", epoch, 0, 10_000).getNow(false));
+        assertTrue(fileDatabase.awaitChange("alice@example.com", "old-epoch", 1, 10_000).getNow(false));
+        assertFalse(fileDatabase.awaitChange("alice@example.com", epoch, 1, 10_000).isDone());
+    }
+
+    @Test
+    void testParkRacingTimeoutOfLastWaiterIsStillSignalled() throws Exception {
+        MailboxWatchers watchers = new MailboxWatchers(10);
+        ExecutorService parker = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                CompletableFuture<Boolean> expiring = watchers.park("bob@example.com", 1);
+                CompletableFuture<Boolean> parked = parker.submit(() -> watchers.park("bob@example.com", 60_000)).get();
+                expiring.get(5, TimeUnit.SECONDS);
+
+                watchers.signal("bob@example.com");
+                assertTrue(parked.getNow(false), "Waiter parked as the last one timed out was not signalled");
+            }
+        } finally {
+            parker.shutdownNow();
+        }
+        assertEquals(0, watchers.size());
+    }
+
     private Email createSampleEmail(String to, String from, String subject) {
         Email e = new Email();
         e.setId(UUID.randomUUID().toString());
@@ -117,6 +282,7 @@ class FileDatabaseEmailTest {
         try {
             Files.deleteIfExists(TEMP_EMAILS_DB);
             Files.deleteIfExists(TEMP_USERS_DB);
+            Files.deleteIfExists(TEMP_SYNC_STATE);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -13,6 +13,7 @@ class FileDatabaseUserTest {
 
     private static final Path TEMP_USERS_DB = Path.of("src", "test", "resources", "test_users.db");
     private static final Path TEMP_EMAILS_DB = Path.of("src", "test", "resources", "test_emails.db");
+    private static final Path TEMP_SYNC_STATE = Path.of("src", "test", "resources", "test_emails.db.sync");
     private FileDatabase fileDatabase;
 
     @BeforeEach
@@ -21,6 +22,7 @@ class FileDatabaseUserTest {
             Files.createDirectories(TEMP_USERS_DB.getParent());
             Files.deleteIfExists(TEMP_USERS_DB);
             Files.deleteIfExists(TEMP_EMAILS_DB);
+            Files.deleteIfExists(TEMP_SYNC_STATE);
             Files.createFile(TEMP_USERS_DB);
             Files.createFile(TEMP_EMAILS_DB);
         } catch (IOException e) {
@@ -93,6 +95,7 @@ class FileDatabaseUserTest {
         try {
             Files.deleteIfExists(TEMP_USERS_DB);
             Files.deleteIfExists(TEMP_EMAILS_DB);
+            Files.deleteIfExists(TEMP_SYNC_STATE);
         } catch (IOException e) {
             e.printStackTrace();
         }
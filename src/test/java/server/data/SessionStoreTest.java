@@ -0,0 +1,65 @@
+package server.data;
+
+import org.junit.jupiter.api.*;
+import server.data.SessionStore.StoredSession;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+
+    private static final Path TEMP_SESSIONS_DB = Path.of("src", "test", "resources", "test_sessions.db");
+    private SessionStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(TEMP_SESSIONS_DB.getParent());
+        Files.deleteIfExists(TEMP_SESSIONS_DB);
+        store = new SessionStore(TEMP_SESSIONS_DB.toString());
+    }
+
+    @Test
+    void testSaveAndLoadRoundTrip() {
+        List<StoredSession> sessions = List.of(
+                new StoredSession("digest-1", "alice@example.com", "laptop", 1_000L),
+                new StoredSession("digest-2", "bob@example.com", null, 2_000L));
+
+        store.save(sessions);
+
+        assertEquals(sessions, new SessionStore(TEMP_SESSIONS_DB.toString()).load());
+    }
+
+    @Test
+    void testLoadConsumesFile() {
+        store.save(List.of(new StoredSession("digest-1", "alice@example.com", "laptop", 1_000L)));
+
+        assertEquals(1, store.load().size());
+        assertFalse(Files.exists(TEMP_SESSIONS_DB), "Sessions must not be revived by a later crash");
+        assertTrue(store.load().isEmpty());
+    }
+
+    @Test
+    void testMissingFileLoadsNothing() {
+        assertTrue(store.load().isEmpty());
+    }
+
+    @Test
+    void testUnreadableLinesAreSkipped() throws IOException {
+        Files.writeString(TEMP_SESSIONS_DB, "not json\n"
+                + "{\"email\":\"nodigest@example.com\"}\n"
+                + "{\"tokenDigest\":\"digest-1\",\"email\":\"alice@example.com\",\"absoluteDeadlineMillis\":5}\n");
+
+        List<StoredSession> loaded = store.load();
+
+        assertEquals(List.of(new StoredSession("digest-1", "alice@example.com", null, 5L)), loaded);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(TEMP_SESSIONS_DB);
+    }
+}
@@ -0,0 +1,122 @@
+package server.dispatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedExecutorTest {
+
+    private BoundedExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testInlineRunsOnCallerThread() {
+        executor = BoundedExecutor.inline("inline");
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+        CompletableFuture<Void> done = executor.submit(() -> ranOn.set(Thread.currentThread()));
+
+        assertTrue(done.isDone());
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(1, executor.stats().completed());
+    }
+
+    @Test
+    void testFixedPoolRunsOnNamedWorker() throws Exception {
+        executor = BoundedExecutor.fixed("auth", 2, 4);
+        AtomicReference<String> threadName = new AtomicReference<>();
+
+        executor.submit(() -> threadName.set(Thread.currentThread().getName())).get(5, TimeUnit.SECONDS);
+
+        assertTrue(threadName.get().startsWith("auth-"));
+    }
+
+    @Test
+    void testRejectsBeyondQueueLimit() throws Exception {
+        executor = BoundedExecutor.fixed("auth", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Void> running = executor.submit(() -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> queued = executor.submit(() -> {
+        });
+
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> {
+        }));
+        ExecutorStats busy = executor.stats();
+        assertEquals(1, busy.active());
+        assertEquals(1, busy.queued());
+        assertEquals(1, busy.rejected());
+
+        release.countDown();
+        CompletableFuture.allOf(running, queued).get(5, TimeUnit.SECONDS);
+        executor.submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(3, executor.stats().completed());
+    }
+
+    @Test
+    void testForkJoinPoolCompletesTasks() throws Exception {
+        executor = BoundedExecutor.forkJoin("search", 2, 8);
+
+        CompletableFuture.allOf(executor.submit(() -> {
+        }), executor.submit(() -> {
+        })).get(5, TimeUnit.SECONDS);
+
+        ExecutorStats stats = executor.stats();
+        assertEquals(2, stats.completed());
+        assertEquals(0, stats.active());
+        assertEquals(0, stats.rejected());
+    }
+
+    @Test
+    void testDrainWaitsForAcceptedTasksAndRejectsNewOnes() throws Exception {
+        executor = BoundedExecutor.fixed("search", 1, 4);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<String> answer = new AtomicReference<>();
+        executor.submit(() -> {
+            started.countDown();
+            sleepQuietly(100);
+            answer.set("SEARCH_EMAIL_SUCCESS");
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(executor.drain(5_000));
+        assertEquals("SEARCH_EMAIL_SUCCESS", answer.get(), "Drain must let the running task finish");
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> {
+        }));
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package server.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginThrottleTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(-5_000 * SECOND); // nanoTime may be negative
+    private final LoginThrottle throttle = new LoginThrottle(
+            new LoginThrottle.Policy(60_000, 3, 10, 1_000, 8_000), now::get);
+
+    @Test
+    void testLockoutStartsAtThresholdAndDoubles() {
+        assertEquals(0, throttle.recordFailure("a@b.com", "10.0.0.1"));
+        assertEquals(0, throttle.recordFailure("a@b.com", "10.0.0.1"));
+        assertEquals(0, throttle.lockedForMillis("a@b.com", "10.0.0.1"));
+
+        assertEquals(1_000, throttle.recordFailure("a@b.com", "10.0.0.1"));
+        assertEquals(1_000, throttle.lockedForMillis("a@b.com", "10.0.0.1"));
+        assertEquals(1_000, throttle.lockedForMillis("A@B.COM", "10.0.0.2"), "Accounts are case-insensitive");
+
+        now.addAndGet(SECOND);
+        assertEquals(0, throttle.lockedForMillis("a@b.com", "10.0.0.1"));
+        assertEquals(2_000, throttle.recordFailure("a@b.com", "10.0.0.1"));
+        now.addAndGet(2 * SECOND);
+        assertEquals(4_000, throttle.recordFailure("a@b.com", "10.0.0.1"));
+        now.addAndGet(4 * SECOND);
+        assertEquals(8_000, throttle.recordFailure("a@b.com", "10.0.0.1"));
+        now.addAndGet(8 * SECOND);
+        assertEquals(8_000, throttle.recordFailure("a@b.com", "10.0.0.1"), "Capped at the maximum");
+    }
+
+    @Test
+    void testAddressIsLockedAcrossAccounts() {
+        for (int i = 0; i < 9; i++) {
+            assertEquals(0, throttle.recordFailure("user" + i + "@b.com", "10.0.0.9"));
+        }
+        assertEquals(1_000, throttle.recordFailure("user9@b.com", "10.0.0.9"));
+
+        assertTrue(throttle.lockedForMillis("fresh@b.com", "10.0.0.9") > 0);
+        assertEquals(0, throttle.lockedForMillis("fresh@b.com", "10.0.0.10"));
+    }
+
+    @Test
+    void testFailuresLeaveTheWindowAndSuccessClearsAccount() {
+        throttle.recordFailure("a@b.com", null);
+        throttle.recordFailure("a@b.com", null);
+        now.addAndGet(61 * SECOND);
+        assertEquals(0, throttle.recordFailure("a@b.com", null), "Earlier failures have left the window");
+
+        throttle.recordFailure("a@b.com", null);
+        throttle.recordSuccess("a@b.com");
+        assertEquals(0, throttle.recordFailure("a@b.com", null));
+        assertEquals(0, throttle.lockedForMillis("a@b.com", null));
+    }
+
+    @Test
+    void testCountersTrackFailuresAndRejections() {
+        for (int i = 0; i < 3; i++) {
+            throttle.recordFailure("a@b.com", null);
+        }
+        throttle.lockedForMillis("a@b.com", null);
+        throttle.lockedForMillis("other@b.com", null);
+
+        assertEquals(3, throttle.getFailureCount());
+        assertEquals(1, throttle.getRejectedCount());
+    }
+
+    @Test
+    void testSlidingWindowDropsOldSlots() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(10 * SECOND, 10);
+        long start = now.get();
+
+        assertEquals(1, counter.increment(start));
+        assertEquals(2, counter.increment(start + 5 * SECOND));
+        assertEquals(2, counter.sum(start + 9 * SECOND));
+        assertEquals(1, counter.sum(start + 10 * SECOND), "First slot has left the window");
+        assertEquals(1, counter.increment(start + 20 * SECOND), "Reused slot restarts from zero");
+        counter.reset();
+        assertEquals(0, counter.sum(start + 20 * SECOND));
+    }
+
+    @Test
+    void testSlidingWindowCountsConcurrentIncrementsExactly() throws InterruptedException {
+        SlidingWindowCounter counter = new SlidingWindowCounter(60 * SECOND, 6);
+        long at = now.get();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    counter.increment(at);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(8000, counter.sum(at));
+    }
+
+    @Test
+    void testIdleSweepRunsAtMostOncePerInterval() {
+        Map<String, Long> entries = new ConcurrentHashMap<>();
+        AtomicInteger checks = new AtomicInteger();
+        IdleSweeper<Long> sweeper = new IdleSweeper<>(entries, 2, SECOND, now.get(), (lastSeen, at) -> {
+            checks.incrementAndGet();
+            return at - lastSeen > SECOND;
+        });
+        entries.put("a", now.get());
+        entries.put("b", now.get());
+        assertFalse(sweeper.sweepIfDue(now.get()), "At the threshold nothing is swept");
+
+        entries.put("c", now.get());
+        assertTrue(sweeper.sweepIfDue(now.get()));
+        for (int i = 0; i < 1000; i++) {
+            entries.put("new" + i, now.get());
+            assertFalse(sweeper.sweepIfDue(now.get()), "A flood of new keys must not sweep on every call");
+        }
+        assertEquals(3, checks.get(), "Only the first sweep walked the map");
+
+        now.addAndGet(2 * SECOND);
+        assertTrue(sweeper.sweepIfDue(now.get()));
+        assertFalse(sweeper.sweepIfDue(now.get()));
+        assertTrue(entries.isEmpty(), "Entries idle by the second sweep are dropped");
+        assertEquals(2, sweeper.getSweepCount());
+    }
+
+    @Test
+    void testIdleSweepHasOneWinnerAcrossThreads() throws InterruptedException {
+        Map<String, Long> entries = new ConcurrentHashMap<>(Map.of("a", 0L, "b", 0L));
+        IdleSweeper<Long> sweeper = new IdleSweeper<>(entries, 1, SECOND, now.get(), (value, at) -> false);
+        long at = now.get();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sweeper.sweepIfDue(at);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, sweeper.getSweepCount());
+    }
+}
@@ -0,0 +1,121 @@
+package server.dispatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void testBurstThenRetryAfterHint() {
+        RateLimiter limiter = new RateLimiter(Map.of("SEARCH_EMAIL", new RateLimiter.Limit(3, 2)), 1, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire("SEARCH_EMAIL", "a@b.com", "10.0.0.1"));
+        }
+        long retryAfterMs = limiter.acquire("SEARCH_EMAIL", "a@b.com", "10.0.0.1");
+        assertEquals(500, retryAfterMs, "One token refills every 500 ms at 2/s");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(retryAfterMs));
+        assertEquals(0, limiter.acquire("SEARCH_EMAIL", "a@b.com", "10.0.0.1"));
+    }
+
+    @Test
+    void testUsersBehindOneAddressHaveSeparateAllowances() {
+        RateLimiter limiter = new RateLimiter(Map.of("SEND_EMAIL", new RateLimiter.Limit(1, 1)), 2, now::get);
+
+        assertEquals(0, limiter.acquire("SEND_EMAIL", "a@b.com", "10.0.0.1"));
+        assertTrue(limiter.acquire("SEND_EMAIL", "a@b.com", "10.0.0.1") > 0);
+        assertEquals(0, limiter.acquire("SEND_EMAIL", "c@d.com", "10.0.0.1"));
+        assertTrue(limiter.acquire("SEND_EMAIL", "e@f.com", "10.0.0.1") > 0,
+                "The address allowance (2x) is used up by now");
+        assertEquals(0, limiter.acquire("SEND_EMAIL", "e@f.com", "10.0.0.2"));
+    }
+
+    @Test
+    void testUnconfiguredCommandsAreNeverLimited() {
+        RateLimiter limiter = new RateLimiter(Map.of("LOGIN", new RateLimiter.Limit(1, 1)), 1, now::get);
+
+        assertFalse(limiter.isLimited("READ_EMAIL"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.acquire("READ_EMAIL", null, "10.0.0.1"));
+        }
+        assertEquals(List.of(new RateLimitStats("LOGIN", 0, 0)), limiter.stats());
+    }
+
+    @Test
+    void testStatsCountDecisions() {
+        RateLimiter limiter = new RateLimiter(Map.of("LOGIN", new RateLimiter.Limit(2, 1)), 1, now::get);
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire("LOGIN", null, "10.0.0.1");
+        }
+        assertEquals(List.of(new RateLimitStats("LOGIN", 2, 3)), limiter.stats());
+    }
+
+    @Test
+    void testParseLimits() {
+        Map<String, RateLimiter.Limit> limits = RateLimiter.parseLimits("SEARCH_EMAIL=10/2, LOGIN=5/0.2");
+        assertEquals(new RateLimiter.Limit(10, 2), limits.get("SEARCH_EMAIL"));
+        assertEquals(new RateLimiter.Limit(5, 0.2), limits.get("LOGIN"));
+        assertTrue(RateLimiter.parseLimits("").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.parseLimits("LOGIN=5"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.parseLimits("LOGIN=x/1"));
+    }
+
+    @Test
+    void testConcurrentCallersNeverExceedCapacity() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 0.001, 0); // effectively no refill during the test
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int t = 0; t < 8; t++) {
+                pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        if (bucket.tryAcquire(0) == 0) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(100, granted.get());
+    }
+
+    @Test
+    void testIdleBucketsAreSweptAtMostOncePerSecond() {
+        RateLimiter limiter = new RateLimiter(Map.of("LOGIN", new RateLimiter.Limit(1, 1000)), 1, now::get);
+        for (int i = 0; i <= 10_001; i++) { // the last call finds the map over its threshold and sweeps
+            limiter.acquire("LOGIN", null, "10.0." + i);
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10)); // every bucket has refilled and is idle
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire("LOGIN", null, "192.168." + i);
+        }
+        assertEquals(10_102, limiter.getBucketCount(),
+                "Within a second of the last sweep, new callers must not trigger another");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.acquire("LOGIN", null, "172.16.0.1");
+        assertEquals(1, limiter.getBucketCount(), "Once due, the sweep drops every idle bucket");
+    }
+}
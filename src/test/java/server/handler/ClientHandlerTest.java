@@ -1,16 +1,31 @@
 package server.handler;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import server.service.ConnectionContext;
+import server.service.SessionManager;
+import utils.CompressionUtils;
+import utils.ServerConstants;
+import utils.TestKeystore;
+import utils.TlsUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
 
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -106,6 +121,221 @@ class ClientHandlerTest {
         assertTrue(responses[responses.length - 1].contains("EXIT_SUCCESS"));
     }
 
+    @Test
+    void testHelloNegotiatesCapabilitiesWithoutReachingCommandHandler() {
+        String input = "HELLO%%{\"version\":1,\"capabilities\":[\"deflate\",\"pipelining\",\"unknown\"]}\n"
+                + "EXIT%%{}\n";
+        socket = new FakeSocket(input);
+        handler = new FakeCommandHandler(handledCommands);
+
+        new ClientHandler(socket, handler).run();
+
+        String hello = socket.getCapturedOutput().split("\n")[0];
+        assertTrue(hello.startsWith("HELLO_SUCCESS%%"));
+        String agreed = JsonParser.parseString(hello.substring("HELLO_SUCCESS%%".length()))
+                .getAsJsonObject().get("capabilities").toString();
+        assertTrue(agreed.contains("deflate"));
+        assertTrue(agreed.contains("pipelining"));
+        assertFalse(agreed.contains("unknown"));
+        assertTrue(handledCommands.stream().noneMatch(cmd -> cmd.startsWith("HELLO")));
+    }
+
+    @Test
+    void testLargeResponsesAreCompressedAfterHello() {
+        String bigPayload = "{\"body\":\"" + "x".repeat(ServerConstants.COMPRESSION_THRESHOLD_BYTES) + "\"}";
+        String input = "HELLO%%{\"version\":1,\"capabilities\":[\"deflate\"]}\n"
+                + "SEND_EMAIL%%" + bigPayload + "\n"
+                + "EXIT%%{}\n";
+        socket = new FakeSocket(input);
+        handler = new FakeCommandHandler(handledCommands);
+
+        new ClientHandler(socket, handler).run();
+
+        String[] responses = socket.getCapturedOutput().split("\n");
+        String compressed = responses[1].trim();
+        assertTrue(compressed.startsWith("COMPRESSED%%"), "Large echo should be compressed");
+        assertTrue(compressed.length() < bigPayload.length(), "Compressed line should be smaller");
+        assertEquals("SEND_EMAIL%%" + bigPayload + "_RECEIVED",
+                CompressionUtils.inflate(compressed.substring("COMPRESSED%%".length())));
+        assertTrue(responses[responses.length - 1].contains("EXIT_SUCCESS"), "Small lines stay uncompressed");
+    }
+
+    @Test
+    void testResponsesStayUncompressedWithoutHello() {
+        String bigPayload = "{\"body\":\"" + "x".repeat(ServerConstants.COMPRESSION_THRESHOLD_BYTES) + "\"}";
+        socket = new FakeSocket("SEND_EMAIL%%" + bigPayload + "\n");
+        handler = new FakeCommandHandler(handledCommands);
+
+        new ClientHandler(socket, handler).run();
+
+        assertFalse(socket.getCapturedOutput().contains("COMPRESSED%%"));
+    }
+
+    @Test
+    void testPushDuringResponseIsDeliveredAfterIt() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        ConnectionWriter writer = new ConnectionWriter(sink);
+
+        writer.exclusive(() -> {
+            writer.println("PART_ONE");
+            assertTrue(writer.push("NEW_EMAIL%%{}"));
+            writer.println("PART_TWO");
+        });
+        writer.push("NEW_EMAIL%%{\"second\":true}");
+        writer.close(); // waits for the push writer to deliver the queue
+
+        String[] lines = sink.toString(StandardCharsets.UTF_8).split("\\R");
+        assertArrayEquals(new String[]{"PART_ONE", "PART_TWO", "NEW_EMAIL%%{}", "NEW_EMAIL%%{\"second\":true}"},
+                lines);
+    }
+
+    @Test
+    void testPushDoesNotWaitForSlowRecipient() throws Exception {
+        CountDownLatch recipientReads = new CountDownLatch(1);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        ConnectionWriter writer = new ConnectionWriter(new FilterOutputStream(sink) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (recipientReads.getCount() > 0) { // a client that stopped reading
+                    try {
+                        recipientReads.await();
+                    } catch (InterruptedException e) {
+                        // like a socket write, not interruptible
+                    }
+                }
+                out.write(b, off, len);
+            }
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            assertTrue(writer.push("NEW_EMAIL%%{\"n\":1}"));
+            assertTrue(writer.push("NEW_EMAIL%%{\"n\":2}"));
+        }, "Pushing must only queue, never write to the recipient's socket");
+
+        recipientReads.countDown();
+        writer.close();
+        assertArrayEquals(new String[]{"NEW_EMAIL%%{\"n\":1}", "NEW_EMAIL%%{\"n\":2}"},
+                sink.toString(StandardCharsets.UTF_8).split("\\R"));
+    }
+
+    @Test
+    void testStopDuringCommandAnswersItThenCloses() {
+        socket = new FakeSocket("FIRST%%{}\nSECOND%%{}\n");
+        ClientHandler[] clientHandler = new ClientHandler[1];
+        handler = new FakeCommandHandler(handledCommands) {
+            @Override
+            public void handle(String input, ConnectionContext connection, PrintWriter out) {
+                clientHandler[0].stopWhenIdle(); // drain arrives while this command runs
+                super.handle(input, connection, out);
+            }
+        };
+        clientHandler[0] = new ClientHandler(socket, handler);
+
+        clientHandler[0].run();
+
+        assertEquals(List.of("FIRST%%{}"), handledCommands, "No command may start after the stop");
+        assertTrue(socket.getCapturedOutput().contains("FIRST%%{}_RECEIVED"));
+    }
+
+    @Test
+    void testStopWhenIdleEndsTlsConnectionBlockedInRead(@TempDir Path tempDir) throws Exception {
+        Path keystore = TestKeystore.generate(tempDir);
+        char[] password = TestKeystore.PASSWORD.toCharArray();
+        SSLContext serverContext = TlsUtils.createServerContext(keystore.toString(), password);
+        SSLContext clientContext = TlsUtils.createClientContext(
+                TestKeystore.exportTruststore(keystore, tempDir).toString(), password);
+
+        try (SSLServerSocket listener = TlsUtils.createServerSocket(serverContext, 0, ServerConstants.TLS_PROTOCOLS, "");
+                SSLSocket client = (SSLSocket) clientContext.getSocketFactory()
+                        .createSocket("localhost", listener.getLocalPort())) {
+            Socket accepted = listener.accept();
+            ClientHandler clientHandler = new ClientHandler(accepted, new FakeCommandHandler(handledCommands));
+            Thread connectionThread = new Thread(clientHandler);
+            connectionThread.start();
+            client.startHandshake(); // completed by the handler's first read
+            Thread.sleep(200); // let it block in readLine
+
+            clientHandler.stopWhenIdle();
+
+            connectionThread.join(2_000);
+            assertFalse(connectionThread.isAlive(), "An idle TLS connection must end without waiting for the client");
+            assertTrue(accepted.isClosed());
+        }
+    }
+
+    @Test
+    void testConnectionRegistersPushChannelForItsLifetime() {
+        SessionManager sessionManager = new SessionManager();
+        socket = new FakeSocket("LOGIN%%{}\n");
+        handler = new FakeCommandHandler(handledCommands) {
+            @Override
+            public void handle(String input, ConnectionContext connection, PrintWriter out) {
+                sessionManager.startSession("live@example.com", connection.socket());
+                assertTrue(sessionManager.push("live@example.com", "NEW_EMAIL%%{}"));
+            }
+        };
+
+        new ClientHandler(socket, handler, sessionManager).run();
+
+        assertTrue(socket.getCapturedOutput().contains("NEW_EMAIL%%{}"));
+        assertFalse(sessionManager.push("live@example.com", "NEW_EMAIL%%{}"),
+                "Channel should be unregistered once the connection closes");
+    }
+
+    @Test
+    void testSessionIsEndedWhenConnectionCloses() {
+        SessionManager sessionManager = new SessionManager();
+        socket = new FakeSocket("LOGIN%%{}\n");
+        handler = new FakeCommandHandler(handledCommands) {
+            @Override
+            public void handle(String input, ConnectionContext connection, PrintWriter out) {
+                connection.bind(sessionManager.startSession("gone@example.com", connection.socket()));
+            }
+        };
+
+        new ClientHandler(socket, handler, sessionManager).run();
+
+        assertFalse(sessionManager.isLoggedIn("gone@example.com"));
+        assertNull(sessionManager.getEmailForSocket(socket));
+        assertEquals(1, sessionManager.stats().endedOnDisconnect());
+    }
+
+    @Test
+    void testStreamedResponseMatchesWholeLine() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        ConnectionWriter writer = new ConnectionWriter(sink);
+        List<String> body = List.of("alpha", "beta", "gamma");
+
+        writer.printlnStreamed("RETRIEVE_EMAILS_SUCCESS%%", out -> new Gson().toJson(body, out));
+
+        assertEquals("RETRIEVE_EMAILS_SUCCESS%%" + new Gson().toJson(body),
+                sink.toString(StandardCharsets.UTF_8).strip());
+    }
+
+    @Test
+    void testStreamedResponseIsCompressedOnlyPastThreshold() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        ConnectionWriter writer = new ConnectionWriter(sink);
+        writer.enableCompression(ServerConstants.COMPRESSION_THRESHOLD_BYTES);
+        List<String> small = List.of("tiny");
+        List<String> large = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            large.add("entry-" + i + "-é");
+        }
+
+        writer.printlnStreamed("SEARCH_EMAIL_SUCCESS%%", out -> new Gson().toJson(small, out));
+        writer.printlnStreamed("SEARCH_EMAIL_SUCCESS%%", out -> new Gson().toJson(large, out));
+        writer.println("EXIT_SUCCESS");
+
+        String[] lines = sink.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals(3, lines.length);
+        assertEquals("SEARCH_EMAIL_SUCCESS%%[\"tiny\"]", lines[0]);
+        assertTrue(lines[1].startsWith("COMPRESSED%%"));
+        assertEquals("SEARCH_EMAIL_SUCCESS%%" + new Gson().toJson(large),
+                CompressionUtils.inflate(lines[1].substring("COMPRESSED%%".length())));
+        assertEquals("EXIT_SUCCESS", lines[2]);
+    }
+
     // === Fake Mocks ===
 
     static class FakeSocket extends Socket {
@@ -173,7 +403,7 @@ class ClientHandlerTest {
         }
 
         @Override
-        public void handle(String input, Socket clientSocket, PrintWriter out) {
+        public void handle(String input, ConnectionContext connection, PrintWriter out) {
             input = input.trim();
             record.add(input);
             out.println(input + "_RECEIVED");
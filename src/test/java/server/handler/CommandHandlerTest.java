@@ -1,6 +1,7 @@
 package server.handler;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import model.Email;
 import model.User;
@@ -10,14 +11,25 @@ import static utils.ProtocolConstants.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import server.data.FileDatabase;
+import server.dispatch.BoundedExecutor;
+import server.dispatch.CommandExecutors;
+import server.dispatch.RateLimitStats;
+import server.dispatch.RateLimiter;
 import server.service.AuthService;
+import server.service.ConnectionContext;
 import server.service.EmailService;
+import server.service.Session;
 import server.service.SessionManager;
+import utils.CommandFormatter;
+import utils.ServerConstants;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,8 +39,9 @@ class CommandHandlerTest {
     private StringWriter writer;
     private PrintWriter out;
     private Socket dummySocket;
+    private ConnectionContext connection;
     private FakeDatabase db;
-    private FakeSessionManager sessions;
+    private SessionManager sessions;
     private EmailService emailService;
     private AuthService authService;
     private Gson gson;
@@ -38,8 +51,9 @@ class CommandHandlerTest {
         writer = new StringWriter();
         out = new PrintWriter(writer, true);
         dummySocket = new Socket();
+        connection = new ConnectionContext(dummySocket);
         db = new FakeDatabase();
-        sessions = new FakeSessionManager();
+        sessions = new SessionManager();
         emailService = new EmailService(db);
         authService = new AuthService(db, sessions);
         handler = new CommandHandler(authService, emailService, sessions);
@@ -48,13 +62,13 @@ class CommandHandlerTest {
 
     @Test
     void testUnknownCommand() {
-        handler.handle("UNKNOWN%%{}", dummySocket, out);
+        handler.handle("UNKNOWN%%{}", connection, out);
         assertTrue(writer.toString().contains(RESPONSE_UNKNOWN));
     }
 
     @Test
     void testInvalidFormat() {
-        handler.handle("NO_DELIMITER_INPUT", dummySocket, out);
+        handler.handle("NO_DELIMITER_INPUT", connection, out);
         assertTrue(writer.toString().contains(RESPONSE_INVALID_FORMAT));
     }
 
@@ -70,7 +84,7 @@ class CommandHandlerTest {
         email.setTimestamp("2025-04-18T14:00:00Z");
         email.setVisible(true);
 
-        handler.handle("SEND_EMAIL%%" + gson.toJson(email), dummySocket, out);
+        handler.handle("SEND_EMAIL%%" + gson.toJson(email), connection, out);
 
         assertTrue(writer.toString().contains(RESPONSE_UNAUTHORIZED));
     }
@@ -79,7 +93,7 @@ class CommandHandlerTest {
     void testSendEmailSuccess() {
         db.saveUser(new User("sender@example.com", "any"));
         db.saveUser(new User("recipient@example.com", "any"));
-        sessions.startSession("sender@example.com", dummySocket);
+        signIn("sender@example.com");
 
         Email email = new Email();
         email.setTo("recipient@example.com");
@@ -89,7 +103,7 @@ class CommandHandlerTest {
         email.setTimestamp("2025-04-18T14:00:00Z");
         email.setVisible(true);
 
-        handler.handle("SEND_EMAIL%%" + gson.toJson(email), dummySocket, out);
+        handler.handle("SEND_EMAIL%%" + gson.toJson(email), connection, out);
 
         assertTrue(writer.toString().contains(RESPONSE_SEND_EMAIL_SUCCESS));
     }
@@ -112,7 +126,7 @@ class CommandHandlerTest {
         db.saveEmail(email);
 
         String json = "{\"email\":\"intruder@example.com\",\"id\":\"id123\"}";
-        handler.handle("READ_EMAIL%%" + json, dummySocket, out);
+        handler.handle("READ_EMAIL%%" + json, connection, out);
 
         assertTrue(writer.toString().contains(RESPONSE_UNAUTHORIZED));
     }
@@ -120,7 +134,7 @@ class CommandHandlerTest {
     @Test
     void testRegisterSuccess() {
         User user = new User("newuser@example.com", "password123");
-        handler.handle("REGISTER%%" + gson.toJson(user), dummySocket, out);
+        handler.handle("REGISTER%%" + gson.toJson(user), connection, out);
         assertTrue(writer.toString().contains(RESPONSE_REGISTER_SUCCESS));
     }
 
@@ -128,7 +142,7 @@ class CommandHandlerTest {
     void testRegisterDuplicate() {
         db.saveUser(new User("newuser@example.com", "existing$hash"));
         User user = new User("newuser@example.com", "password123");
-        handler.handle("REGISTER%%" + gson.toJson(user), dummySocket, out);
+        handler.handle("REGISTER%%" + gson.toJson(user), connection, out);
         assertTrue(writer.toString().contains(RESPONSE_REGISTER_FAIL));
     }
 
@@ -138,10 +152,10 @@ class CommandHandlerTest {
         String password = "password123";
 
         User user = new User(email, password);
-        handler.handle("REGISTER%%" + gson.toJson(user), dummySocket, out);
+        handler.handle("REGISTER%%" + gson.toJson(user), connection, out);
         writer.getBuffer().setLength(0);
 
-        handler.handle("LOGIN%%" + gson.toJson(user), dummySocket, out);
+        handler.handle("LOGIN%%" + gson.toJson(user), connection, out);
         assertTrue(writer.toString().contains(RESPONSE_LOGIN_SUCCESS));
         assertTrue(sessions.isLoggedIn(email));
     }
@@ -149,11 +163,11 @@ class CommandHandlerTest {
     @Test
     void testLoginWrongPassword() {
         User user = new User("wrongpass@example.com", "correctpass");
-        handler.handle("REGISTER%%" + gson.toJson(user), dummySocket, out);
+        handler.handle("REGISTER%%" + gson.toJson(user), connection, out);
         writer.getBuffer().setLength(0);
 
         User wrong = new User("wrongpass@example.com", "wrongpass");
-        handler.handle("LOGIN%%" + gson.toJson(wrong), dummySocket, out);
+        handler.handle("LOGIN%%" + gson.toJson(wrong), connection, out);
         assertTrue(writer.toString().contains(RESPONSE_LOGIN_FAIL));
         assertTrue(writer.toString().contains("Invalid credentials"));
     }
@@ -161,22 +175,107 @@ class CommandHandlerTest {
     @Test
     void testLogoutSuccess() {
         User user = new User("logoutuser@example.com", "password123");
-        handler.handle("REGISTER%%" + gson.toJson(user), dummySocket, out);
-        handler.handle("LOGIN%%" + gson.toJson(user), dummySocket, out);
+        handler.handle("REGISTER%%" + gson.toJson(user), connection, out);
+        handler.handle("LOGIN%%" + gson.toJson(user), connection, out);
         writer.getBuffer().setLength(0);
 
         String logoutJson = "{\"email\":\"logoutuser@example.com\"}";
-        handler.handle("LOGOUT%%" + logoutJson, dummySocket, out);
+        handler.handle("LOGOUT%%" + logoutJson, connection, out);
 
         assertTrue(writer.toString().contains(RESPONSE_LOGOUT_SUCCESS));
         assertFalse(sessions.isLoggedIn("logoutuser@example.com"));
     }
 
+    @Test
+    void testLogoutEndsOnlyCallingDevice() {
+        Session phone = sessions.startSession("multi@example.com", "phone", new Socket());
+        connection.bind(sessions.startSession("multi@example.com", "laptop", dummySocket));
+
+        handler.handle("LOGOUT%%{\"email\":\"multi@example.com\"}", connection, out);
+
+        assertTrue(writer.toString().contains(RESPONSE_LOGOUT_SUCCESS));
+        assertNull(connection.user());
+        assertTrue(phone.isActive(), "Other devices stay logged in");
+        assertTrue(sessions.isLoggedIn("multi@example.com"));
+    }
+
+    @Test
+    void testLogoutAllEndsEveryDevice() {
+        Session phone = sessions.startSession("multi@example.com", "phone", new Socket());
+        connection.bind(sessions.startSession("multi@example.com", "laptop", dummySocket));
+
+        handler.handle("LOGOUT%%{\"email\":\"multi@example.com\",\"all\":true}", connection, out);
+
+        assertTrue(writer.toString().contains(RESPONSE_LOGOUT_SUCCESS));
+        assertFalse(phone.isActive());
+        assertFalse(sessions.isLoggedIn("multi@example.com"));
+    }
+
+    @Test
+    void testResumeBindsRestoredSession() {
+        SessionManager previousRun = new SessionManager();
+        Session before = previousRun.startSession("resumer@example.com", "laptop", new Socket());
+        sessions.restoreSessions(previousRun.exportSessions());
+
+        handler.handle("RESUME%%{\"token\":\"" + before.getToken() + "\"}", connection, out);
+
+        JsonObject body = parsePayload(RESPONSE_RESUME_SUCCESS);
+        assertEquals("resumer@example.com", connection.user());
+        assertEquals(connection.session().getToken(), body.get("token").getAsString());
+        assertEquals("laptop", body.get("deviceId").getAsString());
+    }
+
+    @Test
+    void testResumeUnknownTokenFails() {
+        handler.handle("RESUME%%{\"token\":\"made-up\"}", connection, out);
+
+        assertTrue(writer.toString().startsWith(RESPONSE_RESUME_FAIL));
+        assertNull(connection.user());
+    }
+
+    @Test
+    void testLoginReturnsTokenBoundToConnection() {
+        User user = new User("tokenuser@example.com", "password123");
+        handler.handle("REGISTER%%" + gson.toJson(user), connection, out);
+        writer.getBuffer().setLength(0);
+
+        handler.handle("LOGIN%%" + gson.toJson(user), connection, out);
+
+        JsonObject body = parsePayload(RESPONSE_LOGIN_SUCCESS);
+        assertEquals(connection.session().getToken(), body.get("token").getAsString());
+        assertEquals("tokenuser@example.com", connection.user());
+        assertSame(connection.session(), sessions.findSession(body.get("token").getAsString()));
+    }
+
+    @Test
+    void testPayloadEmailOfUserOnAnotherConnectionIsRejected() {
+        signIn("alice@example.com");
+        ConnectionContext intruder = new ConnectionContext(new Socket());
+
+        handler.handle("RETRIEVE_EMAILS%%{\"email\":\"alice@example.com\",\"type\":\"received\"}", intruder, out);
+        assertTrue(writer.toString().startsWith(RESPONSE_UNAUTHORIZED));
+
+        writer.getBuffer().setLength(0);
+        handler.handle("LOGOUT%%{\"email\":\"alice@example.com\"}", intruder, out);
+        assertTrue(writer.toString().startsWith(RESPONSE_UNAUTHORIZED));
+        assertEquals("alice@example.com", connection.user(), "A foreign LOGOUT must not end the session");
+    }
+
+    @Test
+    void testEndedSessionNoLongerAuthorisesConnection() {
+        signIn("alice@example.com");
+        sessions.endSession("alice@example.com");
+
+        handler.handle("SYNC%%{\"email\":\"alice@example.com\"}", connection, out);
+        assertTrue(writer.toString().startsWith(RESPONSE_UNAUTHORIZED));
+        assertNull(connection.user());
+    }
+
     @Test
     void testRetrieveReceivedEmailsSuccess() {
         String email = "bob@example.com";
         db.saveUser(new User(email, "pw")); // Ensure user exists
-        sessions.startSession(email, dummySocket); // Start session for user
+        signIn(email); // Start session for user
 
         Email emailObj = new Email();
         emailObj.setId("msg123");
@@ -196,7 +295,7 @@ class CommandHandlerTest {
         payload.addProperty("type", "received");
 
         writer.getBuffer().setLength(0); // Clear previous output
-        handler.handle("RETRIEVE_EMAILS%%" + payload.toString(), dummySocket, out);
+        handler.handle("RETRIEVE_EMAILS%%" + payload.toString(), connection, out);
 
         System.out.println("RESPONSE: " + writer); // Optional debug
 
@@ -207,7 +306,7 @@ class CommandHandlerTest {
     @Test
     void testSearchEmailsReturnsMatch() {
         String email = "alice@example.com";
-        sessions.startSession(email, dummySocket);
+        signIn(email);
         db.saveUser(new User(email, "pw"));
 
         Email emailObj = new Email();
@@ -226,12 +325,457 @@ class CommandHandlerTest {
         payload.addProperty("keyword", "update");
 
         writer.getBuffer().setLength(0);
-        handler.handle("SEARCH_EMAIL%%" + payload.toString(), dummySocket, out);
+        handler.handle("SEARCH_EMAIL%%" + payload.toString(), connection, out);
 
         assertTrue(writer.toString().contains(RESPONSE_SEARCH_EMAIL_SUCCESS));
         assertTrue(writer.toString().contains("Project Alpha"));
     }
 
+    @Test
+    void testRetrieveEmailsWithLimitReturnsPageAndCursor() {
+        String email = "pager@example.com";
+        signIn(email);
+        for (int i = 1; i <= 3; i++) {
+            db.saveEmail(new Email("page" + i, email, "alice@example.com", "Subject " + i, "Body",
+                    "2025-05-11T14:00:00Z", true, false));
+        }
+
+        handler.handle("RETRIEVE_EMAILS%%{\"email\":\"" + email + "\",\"type\":\"received\",\"limit\":2}",
+                connection, out);
+        JsonObject page = parsePayload(RESPONSE_RETRIEVE_EMAILS_SUCCESS);
+        assertEquals(2, page.getAsJsonArray("emails").size());
+        assertTrue(page.has("nextCursor"));
+
+        writer.getBuffer().setLength(0);
+        handler.handle("RETRIEVE_EMAILS%%{\"email\":\"" + email + "\",\"type\":\"received\",\"limit\":2,"
+                + "\"cursor\":\"" + page.get("nextCursor").getAsString() + "\"}", connection, out);
+        JsonObject last = parsePayload(RESPONSE_RETRIEVE_EMAILS_SUCCESS);
+        assertEquals(1, last.getAsJsonArray("emails").size());
+        assertEquals("page1", last.getAsJsonArray("emails").get(0).getAsJsonObject().get("id").getAsString());
+        assertFalse(last.has("nextCursor"));
+    }
+
+    @Test
+    void testRetrieveEmailsIfVersionAnsweredNotModified() {
+        db = new FakeDatabase() {
+            private int changes;
+
+            @Override
+            public boolean saveEmail(Email email) {
+                changes++;
+                return super.saveEmail(email);
+            }
+
+            @Override
+            public String getMailboxVersion(String email) {
+                return "test:" + changes;
+            }
+        };
+        emailService = new EmailService(db);
+        handler = new CommandHandler(authService, emailService, sessions);
+        String email = "cond@example.com";
+        signIn(email);
+        db.saveEmail(new Email("cond1", email, "alice@example.com", "First", "Body",
+                "2025-05-11T14:00:00Z", true, false));
+        String request = "RETRIEVE_EMAILS%%{\"email\":\"" + email + "\",\"type\":\"received\","
+                + "\"ifVersion\":\"@VERSION@\"}";
+
+        handler.handle(request.replace("@VERSION@", ""), connection, out);
+        JsonObject page = parsePayload(RESPONSE_RETRIEVE_EMAILS_SUCCESS);
+        String version = page.get("version").getAsString();
+        assertEquals(1, page.getAsJsonArray("emails").size());
+
+        writer.getBuffer().setLength(0);
+        handler.handle(request.replace("@VERSION@", version), connection, out);
+        JsonObject notModified = parsePayload(RESPONSE_NOT_MODIFIED);
+        assertEquals(version, notModified.get("version").getAsString());
+        assertFalse(notModified.has("emails"));
+
+        db.saveEmail(new Email("cond2", email, "alice@example.com", "Second", "Body",
+                "2025-05-11T15:00:00Z", true, false));
+        writer.getBuffer().setLength(0);
+        handler.handle(request.replace("@VERSION@", version), connection, out);
+        JsonObject changed = parsePayload(RESPONSE_RETRIEVE_EMAILS_SUCCESS);
+        assertEquals(2, changed.getAsJsonArray("emails").size());
+        assertNotEquals(version, changed.get("version").getAsString());
+    }
+
+    @Test
+    void testRetrieveEmailsWithInvalidCursorFails() {
+        signIn("pager@example.com");
+        handler.handle("RETRIEVE_EMAILS%%{\"email\":\"pager@example.com\",\"type\":\"received\","
+                + "\"cursor\":\"bogus\"}", connection, out);
+        assertTrue(writer.toString().startsWith(RESPONSE_RETRIEVE_EMAILS_FAIL));
+    }
+
+    @Test
+    void testSyncWithoutBookmarkRequestsFullResync() {
+        signIn("syncer@example.com");
+        handler.handle("SYNC%%{\"email\":\"syncer@example.com\"}", connection, out);
+
+        JsonObject result = parsePayload(RESPONSE_SYNC_SUCCESS);
+        assertTrue(result.get("fullResync").getAsBoolean());
+        assertTrue(result.has("epoch"));
+    }
+
+    @Test
+    void testIdleWithoutBookmarkAnswersAtOnce() {
+        signIn("idler@example.com");
+        handler.handle("IDLE%%{\"email\":\"idler@example.com\",\"timeoutMs\":60000}", connection, out);
+
+        JsonObject result = parsePayload(RESPONSE_IDLE_SUCCESS);
+        assertTrue(result.get("fullResync").getAsBoolean());
+    }
+
+    @Test
+    void testIdleTimesOutWithEmptySummary() throws Exception {
+        signIn("idler@example.com");
+        String epoch = db.getSyncEpoch();
+        handler.handle(CommandFormatter.idle("idler@example.com", epoch, 0, 50), connection, out);
+        assertEquals("", writer.toString(), "IDLE must not answer before a change or the timeout");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!writer.toString().endsWith(System.lineSeparator()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        JsonObject result = parsePayload(RESPONSE_IDLE_SUCCESS);
+        assertFalse(result.get("fullResync").getAsBoolean());
+        assertEquals(epoch, result.get("epoch").getAsString());
+        assertEquals(0, result.getAsJsonArray("added").size());
+    }
+
+    @Test
+    void testIdleIsCancelledWhenConnectionUnbinds() {
+        signIn("idler@example.com");
+        handler.handle(CommandFormatter.idle("idler@example.com", db.getSyncEpoch(), 0, 60_000), connection, out);
+        assertEquals(1, db.getWatcherCount());
+
+        connection.unbind(); // LOGOUT, LOGIN and connection close all unbind
+
+        assertEquals(0, db.getWatcherCount(), "A cancelled IDLE must free its waiter slot");
+        assertEquals("", writer.toString());
+    }
+
+    @Test
+    void testSecondIdleAnswersTheFirst() throws Exception {
+        signIn("idler@example.com");
+        String idle = CommandFormatter.idle("idler@example.com", db.getSyncEpoch(), 0, 60_000);
+        handler.handle(idle, connection, out);
+        handler.handle(idle, connection, out);
+        assertEquals(1, db.getWatcherCount(), "Only one IDLE per connection stays parked");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!writer.toString().endsWith(System.lineSeparator()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        JsonObject first = parsePayload(RESPONSE_IDLE_SUCCESS);
+        assertEquals(0, first.getAsJsonArray("added").size());
+        connection.unbind();
+    }
+
+    @Test
+    void testIdleAnswersUnauthorizedIfSessionEndsWhileParked() throws Exception {
+        signIn("idler@example.com");
+        handler.handle(CommandFormatter.idle("idler@example.com", db.getSyncEpoch(), 0, 50), connection, out);
+        sessions.endSession("idler@example.com");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!writer.toString().endsWith(System.lineSeparator()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(writer.toString().startsWith(RESPONSE_UNAUTHORIZED), "Unexpected response: " + writer);
+    }
+
+    @Test
+    void testIdleRequiresSession() {
+        handler.handle("IDLE%%{\"email\":\"stranger@example.com\"}", connection, out);
+        assertTrue(writer.toString().contains(RESPONSE_UNAUTHORIZED));
+    }
+
+    @Test
+    void testSyncRequiresSession() {
+        handler.handle("SYNC%%{\"email\":\"stranger@example.com\",\"since\":3}", connection, out);
+        assertTrue(writer.toString().contains(RESPONSE_UNAUTHORIZED));
+    }
+
+    @Test
+    void testRetrieveEmailsDefaultsToHeadersWithPreview() {
+        signIn("lister@example.com");
+        db.saveEmail(new Email("proj1", "lister@example.com", "alice@example.com", "Quarterly report",
+                "Numbers are up " + "and to the right ".repeat(20), "2025-05-11T14:00:00Z", true, false));
+
+        handler.handle("RETRIEVE_EMAILS%%{\"email\":\"lister@example.com\",\"type\":\"received\",\"limit\":5}",
+                connection, out);
+
+        JsonObject entry = parsePayload(RESPONSE_RETRIEVE_EMAILS_SUCCESS).getAsJsonArray("emails")
+                .get(0).getAsJsonObject();
+        assertEquals("Quarterly report", entry.get("subject").getAsString());
+        assertFalse(entry.has("body"), "Listings must not ship bodies by default");
+        assertTrue(entry.get("preview").getAsString().startsWith("Numbers are up"));
+        assertTrue(entry.get("preview").getAsString().length() <= ServerConstants.PREVIEW_LENGTH + 3);
+    }
+
+    @Test
+    void testSearchEmailsProjections() {
+        signIn("alice@example.com");
+        db.saveEmail(new Email("proj2", "bob@example.com", "alice@example.com", "Launch", "Full launch plan",
+                "2025-05-11T14:00:00Z", true, false));
+
+        handler.handle("SEARCH_EMAIL%%{\"email\":\"alice@example.com\",\"type\":\"sent\","
+                + "\"keyword\":\"launch\",\"fields\":\"full\"}", connection, out);
+        assertTrue(writer.toString().contains("\"body\":\"Full launch plan\""));
+
+        writer.getBuffer().setLength(0);
+        handler.handle("SEARCH_EMAIL%%{\"email\":\"alice@example.com\",\"type\":\"sent\","
+                + "\"keyword\":\"launch\",\"fields\":\"headers\"}", connection, out);
+        assertTrue(writer.toString().contains("Launch"));
+        assertFalse(writer.toString().contains("Full launch plan"), "Headers projection has no body or preview");
+
+        writer.getBuffer().setLength(0);
+        handler.handle("SEARCH_EMAIL%%{\"email\":\"alice@example.com\",\"type\":\"sent\","
+                + "\"keyword\":\"launch\",\"fields\":\"everything\"}", connection, out);
+        assertTrue(writer.toString().startsWith(RESPONSE_SEARCH_EMAIL_FAIL));
+    }
+
+    @Test
+    void testBatchRunsItemsInOrderAndRespondsOnce() {
+        db.saveUser(new User("batcher@example.com", "pw"));
+        db.saveUser(new User("friend@example.com", "pw"));
+        signIn("batcher@example.com");
+
+        JsonObject send = new JsonObject();
+        send.addProperty("to", "friend@example.com");
+        send.addProperty("subject", "Batched hello");
+        send.addProperty("body", "Body");
+        send.addProperty("timestamp", "2025-05-11T14:00:00Z");
+        send.addProperty("visible", true);
+        JsonObject retrieve = new JsonObject();
+        retrieve.addProperty("type", "sent");
+        JsonArray items = new JsonArray();
+        items.add(CommandFormatter.batchItem(CMD_SEND_EMAIL, send));
+        items.add(CommandFormatter.batchItem(CMD_RETRIEVE_EMAILS, retrieve));
+
+        handler.handle(CommandFormatter.batch("batcher@example.com", false, items), connection, out);
+
+        assertEquals(1, writer.toString().strip().split("\\R").length, "BATCH answers with a single line");
+        String[] results = parseBatch();
+        assertEquals(2, results.length);
+        assertEquals(RESPONSE_SEND_EMAIL_SUCCESS, results[0]);
+        assertTrue(results[1].startsWith(RESPONSE_RETRIEVE_EMAILS_SUCCESS + DELIMITER));
+        assertTrue(results[1].contains("Batched hello"), "Second item must see the first item's effect");
+    }
+
+    @Test
+    void testBatchParallelReadsKeepItemOrder() {
+        signIn("reader@example.com");
+        for (int i = 1; i <= 3; i++) {
+            db.saveEmail(new Email("batch" + i, "reader@example.com", "alice@example.com", "Subject " + i,
+                    "Body", "2025-05-11T14:00:00Z", true, false));
+        }
+        JsonArray items = new JsonArray();
+        for (int i = 1; i <= 3; i++) {
+            JsonObject read = new JsonObject();
+            read.addProperty("id", "batch" + i);
+            items.add(CommandFormatter.batchItem(CMD_READ_EMAIL, read));
+        }
+
+        handler.handle(CommandFormatter.batch("reader@example.com", true, items), connection, out);
+
+        String[] results = parseBatch();
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(results[i - 1].contains("Subject " + i), "Result " + i + " out of order: " + results[i - 1]);
+        }
+    }
+
+    @Test
+    void testBatchParallelReadsRunOnSearchExecutor() {
+        BoundedExecutor search = BoundedExecutor.fixed("search", 2, 4);
+        try {
+            handler = new CommandHandler(authService, emailService, sessions,
+                    new CommandExecutors(BoundedExecutor.inline("auth"), search, BoundedExecutor.inline("idle"),
+                            BoundedExecutor.inline("inline")));
+            signIn("pooled@example.com");
+            JsonArray items = new JsonArray();
+            for (int i = 1; i <= 3; i++) {
+                db.saveEmail(new Email("pooled" + i, "pooled@example.com", "alice@example.com", "Subject " + i,
+                        "Body", "2025-05-11T14:00:00Z", true, false));
+                JsonObject read = new JsonObject();
+                read.addProperty("id", "pooled" + i);
+                items.add(CommandFormatter.batchItem(CMD_READ_EMAIL, read));
+            }
+
+            handler.handle(CommandFormatter.batch("pooled@example.com", true, items), connection, out);
+
+            String[] results = parseBatch();
+            for (int i = 1; i <= 3; i++) {
+                assertTrue(results[i - 1].contains("Subject " + i), "Result " + i + " out of order: " + results[i - 1]);
+            }
+            assertEquals(3, search.stats().completed());
+        } finally {
+            search.shutdown();
+        }
+    }
+
+    @Test
+    void testBatchRejectsForeignUserAndSessionCommandsPerItem() {
+        signIn("batcher@example.com");
+        sessions.startSession("victim@example.com", new Socket());
+        JsonObject foreign = new JsonObject();
+        foreign.addProperty("email", "victim@example.com");
+        foreign.addProperty("type", "received");
+        JsonArray items = new JsonArray();
+        items.add(CommandFormatter.batchItem(CMD_RETRIEVE_EMAILS, foreign));
+        items.add(CommandFormatter.batchItem(CMD_LOGOUT, new JsonObject()));
+
+        handler.handle(CommandFormatter.batch("batcher@example.com", false, items), connection, out);
+
+        String[] results = parseBatch();
+        assertTrue(results[0].startsWith(RESPONSE_UNAUTHORIZED));
+        assertTrue(results[1].startsWith(RESPONSE_LOGOUT_FAIL));
+        assertTrue(sessions.isLoggedIn("batcher@example.com"), "LOGOUT inside BATCH must not run");
+    }
+
+    @Test
+    void testBatchRequiresSession() {
+        handler.handle(CommandFormatter.batch("stranger@example.com", false, new JsonArray()), connection, out);
+        assertTrue(writer.toString().startsWith(RESPONSE_UNAUTHORIZED));
+    }
+
+    @Test
+    void testLoginAnsweredBusyWhenAuthExecutorSaturated() throws Exception {
+        BoundedExecutor auth = BoundedExecutor.fixed("auth", 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            handler = new CommandHandler(authService, emailService, sessions,
+                    new CommandExecutors(auth, BoundedExecutor.inline("search"), BoundedExecutor.inline("idle"),
+                            BoundedExecutor.inline("inline")));
+            auth.submit(() -> awaitQuietly(release));
+            signIn("busy@example.com");
+
+            handler.handle(CommandFormatter.login("busy@example.com", "password123"), connection, out);
+            handler.handle("LOGOUT%%{\"email\":\"busy@example.com\"}", connection, out);
+
+            String[] lines = writer.toString().trim().split("\\R");
+            assertEquals(RESPONSE_LOGIN_FAIL + DELIMITER + "Server busy", lines[0]);
+            assertEquals(RESPONSE_LOGOUT_SUCCESS, lines[1]);
+            assertEquals(1, auth.stats().rejected());
+        } finally {
+            release.countDown();
+            auth.shutdown();
+        }
+    }
+
+    @Test
+    void testIdleAnswerGoesThroughPushQueueWhenIdleExecutorSaturated() throws Exception {
+        BoundedExecutor idle = BoundedExecutor.fixed("idle", 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        ConnectionWriter connectionOut = new ConnectionWriter(sink);
+        try {
+            handler = new CommandHandler(authService, emailService, sessions,
+                    new CommandExecutors(BoundedExecutor.inline("auth"), BoundedExecutor.inline("search"), idle,
+                            BoundedExecutor.inline("inline")));
+            idle.submit(() -> awaitQuietly(release));
+            signIn("idler@example.com");
+
+            handler.handle(CommandFormatter.idle("idler@example.com", db.getSyncEpoch(), 0, 20), connection,
+                    connectionOut);
+
+            long deadline = System.currentTimeMillis() + 2000;
+            while (!sink.toString(StandardCharsets.UTF_8).endsWith(System.lineSeparator())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(sink.toString(StandardCharsets.UTF_8).startsWith(RESPONSE_IDLE_SUCCESS + DELIMITER),
+                    "Rejected IDLE answer should be pushed, got: " + sink);
+            assertEquals(1, idle.stats().rejected());
+        } finally {
+            connectionOut.close();
+            release.countDown();
+            idle.shutdown();
+        }
+    }
+
+    @Test
+    void testLoginRunsOnAuthExecutor() {
+        BoundedExecutor auth = BoundedExecutor.fixed("auth", 1, 4);
+        try {
+            handler = new CommandHandler(authService, emailService, sessions,
+                    new CommandExecutors(auth, BoundedExecutor.inline("search"), BoundedExecutor.inline("idle"),
+                            BoundedExecutor.inline("inline")));
+            handler.handle(CommandFormatter.register("pool@example.com", "password123"), connection, out);
+            handler.handle(CommandFormatter.login("pool@example.com", "password123"), connection, out);
+
+            assertTrue(writer.toString().contains(RESPONSE_LOGIN_SUCCESS));
+            assertEquals(2, auth.stats().completed());
+        } finally {
+            auth.shutdown();
+        }
+    }
+
+    @Test
+    void testSearchOverRateLimitGetsRetryAfter() {
+        handler = new CommandHandler(authService, emailService, sessions, CommandExecutors.inlineOnly(),
+                new RateLimiter(Map.of(CMD_SEARCH_EMAIL, new RateLimiter.Limit(1, 0.5)), 1));
+        signIn("alice@example.com");
+        String search = "SEARCH_EMAIL%%{\"email\":\"alice@example.com\",\"type\":\"sent\",\"keyword\":\"x\"}";
+
+        handler.handle(search, connection, out);
+        writer.getBuffer().setLength(0);
+        handler.handle(search, connection, out);
+
+        JsonObject limited = parsePayload(RESPONSE_RATE_LIMITED);
+        assertEquals(CMD_SEARCH_EMAIL, limited.get("command").getAsString());
+        long retryAfterMs = limited.get("retryAfterMs").getAsLong();
+        assertTrue(retryAfterMs > 0 && retryAfterMs <= 2000, "Retry hint within one refill interval");
+        assertEquals(List.of(new RateLimitStats(CMD_SEARCH_EMAIL, 1, 1)), handler.rateLimitStats());
+    }
+
+    @Test
+    void testBatchItemsCountAgainstTheirCommandLimit() {
+        handler = new CommandHandler(authService, emailService, sessions, CommandExecutors.inlineOnly(),
+                new RateLimiter(Map.of(CMD_SEARCH_EMAIL, new RateLimiter.Limit(1, 0.5)), 1));
+        signIn("alice@example.com");
+        JsonObject search = new JsonObject();
+        search.addProperty("type", "sent");
+        search.addProperty("keyword", "x");
+        JsonArray items = new JsonArray();
+        items.add(CommandFormatter.batchItem(CMD_SEARCH_EMAIL, search));
+        items.add(CommandFormatter.batchItem(CMD_SEARCH_EMAIL, search));
+
+        handler.handle(CommandFormatter.batch("alice@example.com", false, items), connection, out);
+
+        String[] results = parseBatch();
+        assertTrue(results[0].startsWith(RESPONSE_SEARCH_EMAIL_FAIL), "First search runs (and finds nothing)");
+        assertTrue(results[1].startsWith(RESPONSE_RATE_LIMITED + DELIMITER));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String[] parseBatch() {
+        String response = writer.toString().trim();
+        assertTrue(response.startsWith(RESPONSE_BATCH_SUCCESS + DELIMITER), "Unexpected response: " + response);
+        return gson.fromJson(response.substring(RESPONSE_BATCH_SUCCESS.length() + DELIMITER.length()),
+                String[].class);
+    }
+
+    // Logs a user in on the test connection without going through LOGIN
+    private void signIn(String email) {
+        connection.bind(sessions.startSession(email, dummySocket));
+    }
+
+    private JsonObject parsePayload(String expectedCode) {
+        String response = writer.toString().trim();
+        assertTrue(response.startsWith(expectedCode + DELIMITER), "Unexpected response: " + response);
+        return gson.fromJson(response.substring(expectedCode.length() + DELIMITER.length()), JsonObject.class);
+    }
+
     // === Fake Test Utilities ===
 
     static class FakeDatabase extends FileDatabase {
@@ -285,6 +829,21 @@ class CommandHandlerTest {
                     .toList();
         }
 
+        @Override
+        public int collectEmailsForUser(String email, boolean sent, int fromPosition, int limit, List<Email> page) {
+            for (int i = Math.min(fromPosition, emails.size() - 1); i >= 0; i--) {
+                Email e = emails.get(i);
+                if (!(sent ? e.getFrom() : e.getTo()).equalsIgnoreCase(email)) {
+                    continue;
+                }
+                if (page.size() == limit) {
+                    return i;
+                }
+                page.add(e);
+            }
+            return -1;
+        }
+
         @Override
         public List<Email> getReceivedEmails(String email) {
             return getEmailsForUser(email, false); // false = received
@@ -308,28 +867,4 @@ class CommandHandlerTest {
                     .toList();
         }
     }
-
-    static class FakeSessionManager extends SessionManager {
-        private final Map<String, Socket> sessionMap = new HashMap<>();
-
-        @Override
-        public void startSession(String email, Socket socket) {
-            sessionMap.put(email, socket);
-        }
-
-        @Override
-        public void endSession(String email) {
-            sessionMap.remove(email);
-        }
-
-        @Override
-        public boolean isLoggedIn(String email) {
-            return sessionMap.containsKey(email);
-        }
-
-        @Override
-        public Socket getSessionSocket(String email) {
-            return sessionMap.get(email);
-        }
-    }
 }
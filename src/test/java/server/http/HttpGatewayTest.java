@@ -0,0 +1,238 @@
+package server.http;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import server.data.FileDatabase;
+import server.dispatch.RateLimiter;
+import server.handler.CommandHandler;
+import server.service.AuthService;
+import server.service.ConnectionContext;
+import server.service.EmailService;
+import server.service.Session;
+import server.service.SessionManager;
+import utils.CommandFormatter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpGatewayTest {
+
+    private static final Path TEMP_USERS_DB = Path.of("src", "test", "resources", "test_http_users.db");
+    private static final Path TEMP_EMAILS_DB = Path.of("src", "test", "resources", "test_http_emails.db");
+    private static final Path TEMP_SYNC_FILE = Path.of(TEMP_EMAILS_DB + ".sync");
+
+    private FileDatabase database;
+    private HttpGateway gateway;
+    private SessionManager sessionManager;
+    private HttpClient client;
+    private String base;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        cleanUp();
+        Files.createDirectories(TEMP_USERS_DB.getParent());
+        Files.createFile(TEMP_USERS_DB);
+        Files.createFile(TEMP_EMAILS_DB);
+
+        database = new FileDatabase(TEMP_USERS_DB.toString(), TEMP_EMAILS_DB.toString());
+        database.loadAll();
+        sessionManager = new SessionManager();
+        gateway = new HttpGateway(new AuthService(database, sessionManager),
+                new EmailService(database, sessionManager), sessionManager,
+                new RateLimiter(RateLimiter.parseLimits("LOGIN=3/0.001"), 1));
+        gateway.start(new InetSocketAddress("127.0.0.1", 0));
+
+        client = HttpClient.newHttpClient();
+        base = "http://127.0.0.1:" + gateway.getPort() + "/api/";
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        gateway.stop();
+        cleanUp();
+    }
+
+    private static void cleanUp() throws IOException {
+        Files.deleteIfExists(TEMP_USERS_DB);
+        Files.deleteIfExists(TEMP_EMAILS_DB);
+        Files.deleteIfExists(TEMP_SYNC_FILE);
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, String token, String body,
+            Map<String, String> headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        headers.forEach(request::header);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpResponse<byte[]> send(String method, String path, String token, String body) throws Exception {
+        return send(method, path, token, body, Map.of());
+    }
+
+    private static JsonObject json(HttpResponse<byte[]> response) {
+        return JsonParser.parseString(new String(response.body(), StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    // Logs in twice at most per test, below the LOGIN burst of 3 per address
+    private String registerAndLogin(String email) throws Exception {
+        String credentials = "{\"email\":\"" + email + "\",\"password\":\"secret1\"}";
+        assertEquals(201, send("POST", "register", null, credentials).statusCode());
+        HttpResponse<byte[]> login = send("POST", "login", null, credentials);
+        assertEquals(200, login.statusCode());
+        return json(login).get("token").getAsString();
+    }
+
+    @Test
+    void testRegisterLoginSendAndList() throws Exception {
+        String alice = registerAndLogin("alice@example.com");
+        String bob = registerAndLogin("bob@example.com");
+
+        HttpResponse<byte[]> sent = send("POST", "emails", alice,
+                "{\"to\":\"bob@example.com\",\"subject\":\"Hi\",\"body\":\"Hello Bob\"}");
+        assertEquals(201, sent.statusCode());
+        String id = json(sent).get("id").getAsString();
+
+        HttpResponse<byte[]> list = send("GET", "emails?type=received", bob, null);
+        assertEquals(200, list.statusCode());
+        JsonArray emails = json(list).getAsJsonArray("emails");
+        assertEquals(1, emails.size());
+        assertEquals(id, emails.get(0).getAsJsonObject().get("id").getAsString());
+
+        HttpResponse<byte[]> read = send("GET", "emails/" + id, bob, null);
+        assertEquals(200, read.statusCode());
+        assertEquals("Hello Bob", json(read).get("body").getAsString());
+        assertEquals("alice@example.com", json(read).get("from").getAsString());
+    }
+
+    @Test
+    void testDuplicateRegistrationConflicts() throws Exception {
+        registerAndLogin("alice@example.com");
+        HttpResponse<byte[]> again = send("POST", "register", null,
+                "{\"email\":\"alice@example.com\",\"password\":\"other12\"}");
+        assertEquals(409, again.statusCode());
+        assertEquals("Email already registered", json(again).get("error").getAsString());
+    }
+
+    @Test
+    void testRequestsWithoutTokenAreRejected() throws Exception {
+        assertEquals(401, send("GET", "emails?type=received", null, null).statusCode());
+        assertEquals(401, send("GET", "emails?type=received", "bogus", null).statusCode());
+        assertEquals(401, send("POST", "login", null,
+                "{\"email\":\"nobody@example.com\",\"password\":\"secret1\"}").statusCode());
+    }
+
+    @Test
+    void testLogoutInvalidatesToken() throws Exception {
+        String alice = registerAndLogin("alice@example.com");
+        assertEquals(204, send("POST", "logout", alice, null).statusCode());
+        assertEquals(401, send("GET", "emails?type=sent", alice, null).statusCode());
+    }
+
+    @Test
+    void testSocketSessionTokenIsAccepted() throws Exception {
+        registerAndLogin("alice@example.com");
+        Session socketSession = sessionManager.startSession("alice@example.com", new Socket());
+
+        assertEquals(200, send("GET", "emails?type=received", socketSession.getToken(), null).statusCode());
+        sessionManager.endSession("alice@example.com");
+        assertEquals(401, send("GET", "emails?type=received", socketSession.getToken(), null).statusCode());
+    }
+
+    @Test
+    void testLogoutAllOverSocketInvalidatesHttpToken() throws Exception {
+        String httpToken = registerAndLogin("alice@example.com");
+        CommandHandler handler = new CommandHandler(new AuthService(database, sessionManager),
+                new EmailService(database, sessionManager), sessionManager);
+        ConnectionContext connection = new ConnectionContext(new Socket());
+        StringWriter writer = new StringWriter();
+        PrintWriter out = new PrintWriter(writer, true);
+
+        handler.handle(CommandFormatter.login("alice@example.com", "secret1"), connection, out);
+        handler.handle(CommandFormatter.logout("alice@example.com", true), connection, out);
+
+        assertTrue(writer.toString().contains("LOGOUT_SUCCESS"), "Unexpected output: " + writer);
+        assertEquals(401, send("GET", "emails?type=received", httpToken, null).statusCode());
+    }
+
+    @Test
+    void testSyncAcceptsBookmarkBeyondIntRange() throws Exception {
+        String alice = registerAndLogin("alice@example.com");
+        String epoch = json(send("GET", "sync", alice, null)).get("epoch").getAsString();
+
+        HttpResponse<byte[]> sync = send("GET", "sync?epoch=" + epoch + "&since=3000000000", alice, null);
+        assertEquals(200, sync.statusCode());
+        assertEquals(400, send("GET", "sync?since=soon", alice, null).statusCode());
+    }
+
+    @Test
+    void testUnchangedListingAnswersNotModified() throws Exception {
+        String alice = registerAndLogin("alice@example.com");
+        HttpResponse<byte[]> first = send("GET", "emails?type=received", alice, null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> again = send("GET", "emails?type=received", alice, null,
+                Map.of("If-None-Match", etag));
+        assertEquals(304, again.statusCode());
+        assertEquals(0, again.body().length);
+
+        send("POST", "emails", alice, "{\"to\":\"alice@example.com\",\"subject\":\"Note\",\"body\":\"To self\"}");
+        HttpResponse<byte[]> changed = send("GET", "emails?type=received", alice, null,
+                Map.of("If-None-Match", etag));
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void testLargeResponsesAreGzippedWhenAccepted() throws Exception {
+        String alice = registerAndLogin("alice@example.com");
+        String body = "x".repeat(4000);
+        send("POST", "emails", alice, "{\"to\":\"alice@example.com\",\"subject\":\"Big\",\"body\":\"" + body + "\"}");
+        String id = json(send("GET", "emails?type=received", alice, null))
+                .getAsJsonArray("emails").get(0).getAsJsonObject().get("id").getAsString();
+
+        HttpResponse<byte[]> plain = send("GET", "emails/" + id, alice, null);
+        assertTrue(plain.headers().firstValue("Content-Encoding").isEmpty());
+
+        HttpResponse<byte[]> gzipped = send("GET", "emails/" + id, alice, null, Map.of("Accept-Encoding", "gzip"));
+        assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElseThrow());
+        assertTrue(gzipped.body().length < plain.body().length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.body()))) {
+            assertArrayEquals(plain.body(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testLoginIsRateLimited() throws Exception {
+        String credentials = "{\"email\":\"alice@example.com\",\"password\":\"wrong12\"}";
+        for (int i = 0; i < 3; i++) {
+            assertEquals(401, send("POST", "login", null, credentials).statusCode());
+        }
+        HttpResponse<byte[]> limited = send("POST", "login", null, credentials);
+        assertEquals(429, limited.statusCode());
+        assertTrue(limited.headers().firstValue("Retry-After").isPresent());
+    }
+}
@@ -0,0 +1,71 @@
+package server.protocol;
+
+import com.google.gson.JsonObject;
+import model.Email;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandDecoderTest {
+
+    @Test
+    void testDecodesCredentialsIntoTypedRequest() {
+        Request request = CommandDecoder.decode("LOGIN%%{\"email\":\"a@b.com\",\"password\":\"pw\"}");
+
+        assertEquals("LOGIN", request.command());
+        assertFalse(request.isMalformed());
+        CredentialsRequest credentials = request.body(CredentialsRequest.class);
+        assertEquals("a@b.com", credentials.email());
+        assertEquals("pw", credentials.password());
+    }
+
+    @Test
+    void testOnlyFirstDelimiterSplitsTheFrame() {
+        Request request = CommandDecoder.decode(
+                "SEND_EMAIL%%{\"to\":\"b@c.com\",\"from\":\"a@b.com\",\"subject\":\"100%% sure\",\"body\":\"x%%y\"}");
+
+        Email email = request.body(Email.class);
+        assertEquals("100%% sure", email.getSubject());
+        assertEquals("x%%y", email.getBody());
+    }
+
+    @Test
+    void testOptionalFieldsAreNullWhenAbsent() {
+        MailboxQuery query = CommandDecoder.decode("RETRIEVE_EMAILS%%{\"email\":\"a@b.com\",\"type\":\"sent\"}")
+                .body(MailboxQuery.class);
+
+        assertEquals("sent", query.type());
+        assertNull(query.limit());
+        assertNull(query.cursor());
+        assertNull(query.fields());
+    }
+
+    @Test
+    void testMalformedPayloadsAreFlagged() {
+        assertTrue(CommandDecoder.decode("REGISTER%%not_json").isMalformed());
+        assertTrue(CommandDecoder.decode("EXIT%%").isMalformed());
+        assertTrue(CommandDecoder.decode("RETRIEVE_EMAILS%%{\"limit\":\"many\"}").isMalformed());
+    }
+
+    @Test
+    void testUnknownCommandKeepsRawPayload() {
+        Request request = CommandDecoder.decode("FLY%%{whatever");
+        assertEquals("FLY", request.command());
+        assertEquals("{whatever", request.body(String.class));
+    }
+
+    @Test
+    void testMissingDelimiterIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CommandDecoder.decode("LOGIN"));
+    }
+
+    @Test
+    void testDecodesBatchItemFromJsonTree() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("email", "a@b.com");
+        payload.addProperty("id", "42");
+
+        ReadEmailRequest read = CommandDecoder.decode("READ_EMAIL", payload).body(ReadEmailRequest.class);
+        assertEquals("42", read.id());
+    }
+}
@@ -6,8 +6,11 @@ import model.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import server.data.FileDatabase;
+import server.dispatch.LoginThrottle;
+import server.protocol.CredentialsRequest;
 import utils.ProtocolConstants;
 import utils.SecurityUtils;
+import utils.ServerConstants;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -95,10 +98,12 @@ class AuthServiceTest {
         responseWriter.getBuffer().setLength(0);
 
         User loginUser = new User(email, rawPassword);
-        authService.handleLogin(gson.toJson(loginUser), new Socket(), printWriter);
+        Session session = authService.handleLogin(gson.toJson(loginUser), new Socket(), printWriter);
 
         String output = responseWriter.toString().trim();
-        assertEquals(ProtocolConstants.RESPONSE_LOGIN_SUCCESS, output);
+        assertEquals(ProtocolConstants.RESPONSE_LOGIN_SUCCESS + ProtocolConstants.DELIMITER
+                + "{\"token\":\"token-" + email + "\"}", output);
+        assertNotNull(session);
         assertTrue(fakeSessionManager.isLoggedIn(email));
     }
 
@@ -111,7 +116,7 @@ class AuthServiceTest {
 
         User wrong = new User(email, WRONG_PASSWORD);
         responseWriter.getBuffer().setLength(0);
-        authService.handleLogin(gson.toJson(wrong), new Socket(), printWriter);
+        assertNull(authService.handleLogin(gson.toJson(wrong), new Socket(), printWriter));
 
         String output = responseWriter.toString().trim();
         assertTrue(output.startsWith(ProtocolConstants.RESPONSE_LOGIN_FAIL));
@@ -128,6 +133,40 @@ class AuthServiceTest {
         assertTrue(output.contains("User not found"));
     }
 
+    @Test
+    void testLegacyHashUpgradedOnLogin() {
+        String email = "legacy@example.com";
+        String salt = SecurityUtils.generateSalt();
+        fakeDatabase.saveUser(new User(email, salt + "$" + SecurityUtils.hashPassword(PASSWORD, salt)));
+
+        assertNull(authService.authenticate(new CredentialsRequest(email, PASSWORD)));
+
+        String upgraded = fakeDatabase.getUser(email).getPassword();
+        assertTrue(upgraded.startsWith(ServerConstants.KDF_ID + "$"), "Entry should now be PBKDF2");
+        assertFalse(SecurityUtils.needsRehash(upgraded));
+        assertNull(authService.authenticate(new CredentialsRequest(email, PASSWORD)),
+                "Upgraded entry should verify the same password");
+        assertEquals("Invalid credentials",
+                authService.authenticate(new CredentialsRequest(email, WRONG_PASSWORD)));
+    }
+
+    @Test
+    void testLockedOutLoginRefusedEvenWithRightPassword() {
+        AuthService throttled = new AuthService(fakeDatabase, fakeSessionManager,
+                new LoginThrottle(new LoginThrottle.Policy(60_000, 2, 100, 60_000, 60_000)));
+        String email = "stuffed@example.com";
+        throttled.handleRegister(new CredentialsRequest(email, PASSWORD), printWriter);
+
+        assertEquals("Invalid credentials", throttled.authenticate(new CredentialsRequest(email, WRONG_PASSWORD)));
+        assertEquals("Invalid credentials", throttled.authenticate(new CredentialsRequest(email, WRONG_PASSWORD)));
+
+        responseWriter.getBuffer().setLength(0);
+        assertNull(throttled.handleLogin(new CredentialsRequest(email, PASSWORD), new Socket(), printWriter));
+        String output = responseWriter.toString().trim();
+        assertTrue(output.startsWith(ProtocolConstants.RESPONSE_LOGIN_FAIL + "%%" + AuthService.LOCKED_OUT), output);
+        assertFalse(fakeSessionManager.isLoggedIn(email));
+    }
+
     @Test
     void testHandleLogoutSuccess() {
         String email = "logout@example.com";
@@ -179,6 +218,16 @@ class AuthServiceTest {
             return users.containsKey(email);
         }
 
+        @Override
+        public boolean updateUserPassword(String email, String expected, String replacement) {
+            User user = users.get(email);
+            if (user == null || !user.getPassword().equals(expected)) {
+                return false;
+            }
+            users.put(email, new User(email, replacement));
+            return true;
+        }
+
         @Override
         public boolean saveEmail(Email email) {
             emails.add(email);
@@ -195,8 +244,9 @@ class AuthServiceTest {
         private final Map<String, Socket> sessions = new HashMap<>();
 
         @Override
-        public void startSession(String email, Socket socket) {
+        public Session startSession(String email, String deviceId, Socket socket) {
             sessions.put(email, socket);
+            return new Session(email, "token-" + email, socket, Long.MAX_VALUE);
         }
 
         @Override
@@ -1,13 +1,16 @@
 package server.service;
 
 import model.Email;
+import model.EmailPage;
 import model.User;
 import org.junit.jupiter.api.*;
 import server.data.FileDatabase;
 
 import java.io.IOException;
+import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -50,6 +53,22 @@ class EmailServiceTest {
         assertNotNull(email.getId());
     }
 
+    @Test
+    void testSendEmailIgnoresClientIdAndKeepsExistingEmail() {
+        fileDatabase.saveUser(new User("victim@example.com", "hash"));
+        Email original = new Email("victim-id", "victim@example.com", "friend@example.com", "Original", "Body",
+                "2025-04-10T10:00:00Z", true, false);
+        fileDatabase.saveEmail(original);
+
+        Email forged = new Email("victim-id", "victim@example.com", "attacker@example.com", "Forged", "Body",
+                "2025-04-10T10:01:00Z", true, false);
+        assertTrue(emailService.sendEmail(forged));
+
+        assertNotEquals("victim-id", forged.getId(), "The server must assign its own id");
+        assertEquals("Original", fileDatabase.getEmailById("victim-id").getSubject());
+        assertEquals("Forged", fileDatabase.getEmailById(forged.getId()).getSubject());
+    }
+
     @Test
     void testSendEmailToUnregisteredUserFails() {
         Email email = new Email();
@@ -188,6 +207,59 @@ class EmailServiceTest {
         assertNull(result);
     }
 
+    @Test
+    void testGetEmailPageWalksMailboxNewestFirst() {
+        for (int i = 1; i <= 5; i++) {
+            Email email = new Email(UUID.randomUUID().toString(), "reader@example.com", "sender@example.com",
+                    "Message " + i, "Body", "2025-04-10T10:00:0" + i + "Z", true, false);
+            fileDatabase.addEmail(email);
+            fileDatabase.addEmail(new Email(UUID.randomUUID().toString(), "other@example.com",
+                    "sender@example.com", "Noise " + i, "Body", "2025-04-10T10:00:00Z", true, false));
+        }
+
+        EmailPage<Email> first = emailService.getEmailPage("reader@example.com", "received", null, 2);
+        assertEquals(List.of("Message 5", "Message 4"), first.getEmails().stream().map(Email::getSubject).toList());
+        assertTrue(first.hasMore());
+
+        // Mail arriving between pages must not shift the remaining entries
+        fileDatabase.addEmail(new Email(UUID.randomUUID().toString(), "reader@example.com", "sender@example.com",
+                "Message 6", "Body", "2025-04-10T10:00:09Z", true, false));
+
+        EmailPage<Email> second = emailService.getEmailPage("reader@example.com", "received", first.getNextCursor(), 2);
+        assertEquals(List.of("Message 3", "Message 2"), second.getEmails().stream().map(Email::getSubject).toList());
+
+        EmailPage<Email> last = emailService.getEmailPage("reader@example.com", "received", second.getNextCursor(), 2);
+        assertEquals(List.of("Message 1"), last.getEmails().stream().map(Email::getSubject).toList());
+        assertFalse(last.hasMore());
+    }
+
+    @Test
+    void testGetEmailPageRejectsForgedCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> emailService.getEmailPage("reader@example.com", "received", "not-a-cursor", 10));
+    }
+
+    @Test
+    void testSendEmailPushesNewEmailHeaderToRecipient() {
+        fileDatabase.saveUser(new User("receiver@example.com", "hashedPass"));
+        SessionManager sessionManager = new SessionManager();
+        Socket recipientSocket = new Socket();
+        List<String> pushed = new ArrayList<>();
+        sessionManager.registerChannel(recipientSocket, pushed::add);
+        sessionManager.startSession("receiver@example.com", recipientSocket);
+        EmailService pushingService = new EmailService(fileDatabase, sessionManager);
+
+        Email email = new Email(UUID.randomUUID().toString(), "receiver@example.com", "sender@example.com",
+                "Hello", "Secret body", "2025-04-10T10:00:00Z", true, false);
+        assertTrue(pushingService.sendEmail(email));
+
+        assertEquals(1, pushed.size());
+        assertTrue(pushed.get(0).startsWith("NEW_EMAIL%%"));
+        assertTrue(pushed.get(0).contains(email.getId()));
+        assertTrue(pushed.get(0).contains("Hello"));
+        assertFalse(pushed.get(0).contains("Secret body"), "Push should carry the header only");
+    }
+
     @AfterEach
     void tearDown() throws IOException {
         Files.deleteIfExists(TEMP_USERS_DB);
@@ -2,8 +2,13 @@ package server.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import server.data.SessionStore.StoredSession;
+import utils.SecurityUtils;
+import utils.ServerConstants;
 
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -62,6 +67,301 @@ class SessionManagerTest {
         assertEquals(testEmail, email, "Should return correct email for associated socket");
     }
 
+    @Test
+    void testPushReachesChannelOfLoggedInUser() {
+        List<String> pushed = new ArrayList<>();
+        sessionManager.registerChannel(dummySocket, line -> pushed.add(line));
+        sessionManager.startSession(testEmail, dummySocket);
+
+        assertTrue(sessionManager.push(testEmail, "NEW_EMAIL%%{}"));
+        assertEquals(List.of("NEW_EMAIL%%{}"), pushed);
+    }
+
+    @Test
+    void testPushToUserWithoutLiveChannelReturnsFalse() {
+        sessionManager.startSession(testEmail, dummySocket);
+        assertFalse(sessionManager.push(testEmail, "NEW_EMAIL%%{}"), "No channel registered for the socket");
+        assertFalse(sessionManager.push("offline@example.com", "NEW_EMAIL%%{}"), "User is not logged in");
+
+        sessionManager.registerChannel(dummySocket, line -> true);
+        sessionManager.unregisterChannel(dummySocket);
+        assertFalse(sessionManager.push(testEmail, "NEW_EMAIL%%{}"), "Channel was unregistered");
+    }
+
+    @Test
+    void testBroadcastReachesEveryLiveChannel() {
+        List<String> loggedIn = new ArrayList<>();
+        List<String> anonymous = new ArrayList<>();
+        Socket otherSocket = new Socket();
+        sessionManager.registerChannel(dummySocket, line -> loggedIn.add(line));
+        sessionManager.registerChannel(otherSocket, line -> anonymous.add(line));
+        sessionManager.startSession(testEmail, dummySocket);
+
+        assertEquals(2, sessionManager.broadcast("SERVER_GOING_AWAY%%{}"));
+        assertEquals(List.of("SERVER_GOING_AWAY%%{}"), loggedIn);
+        assertEquals(List.of("SERVER_GOING_AWAY%%{}"), anonymous);
+
+        sessionManager.unregisterChannel(otherSocket);
+        sessionManager.registerChannel(otherSocket, line -> false); // full queue
+        assertEquals(1, sessionManager.broadcast("SERVER_GOING_AWAY%%{}"));
+    }
+
+    @Test
+    void testSessionTokenResolvesUntilSessionEnds() {
+        Session session = sessionManager.startSession(testEmail, dummySocket);
+        assertNotNull(session.getToken());
+        assertSame(session, sessionManager.findSession(session.getToken()));
+
+        sessionManager.endSession(testEmail);
+        assertFalse(session.isActive());
+        assertNull(sessionManager.findSession(session.getToken()));
+    }
+
+    @Test
+    void testSameDeviceLoginReplacesItsSession() {
+        Session first = sessionManager.startSession(testEmail, "laptop", dummySocket);
+        Session second = sessionManager.startSession(testEmail, "laptop", new Socket());
+
+        assertNotEquals(first.getToken(), second.getToken());
+        assertFalse(first.isActive(), "The device's older session must end");
+        assertTrue(second.isActive());
+        assertNull(sessionManager.findSession(first.getToken()));
+        assertEquals(List.of(second), sessionManager.getSessions(testEmail));
+    }
+
+    @Test
+    void testDifferentDevicesKeepTheirOwnSessions() {
+        Socket phoneSocket = new Socket();
+        Session laptop = sessionManager.startSession(testEmail, "laptop", dummySocket);
+        Session phone = sessionManager.startSession(testEmail, "phone", phoneSocket);
+
+        assertTrue(laptop.isActive());
+        assertTrue(phone.isActive());
+        assertEquals(2, sessionManager.getSessions(testEmail).size());
+        assertSame(phoneSocket, sessionManager.getSessionSocket(testEmail), "Most recent login wins");
+
+        sessionManager.endSession(phone);
+        assertTrue(sessionManager.isLoggedIn(testEmail), "Ending one device must leave the other");
+        assertSame(dummySocket, sessionManager.getSessionSocket(testEmail));
+    }
+
+    @Test
+    void testSessionCapEvictsOldestSession() {
+        List<Session> sessions = new ArrayList<>();
+        for (int i = 0; i <= ServerConstants.MAX_SESSIONS_PER_USER; i++) {
+            sessions.add(sessionManager.startSession(testEmail, "device-" + i, new Socket()));
+        }
+
+        assertFalse(sessions.get(0).isActive(), "Oldest session is evicted past the cap");
+        assertTrue(sessions.get(sessions.size() - 1).isActive());
+        assertEquals(ServerConstants.MAX_SESSIONS_PER_USER, sessionManager.getSessions(testEmail).size());
+    }
+
+    @Test
+    void testPushFansOutToEveryDevice() {
+        Socket phoneSocket = new Socket();
+        List<String> laptopPushes = new ArrayList<>();
+        List<String> phonePushes = new ArrayList<>();
+        sessionManager.registerChannel(dummySocket, laptopPushes::add);
+        sessionManager.registerChannel(phoneSocket, phonePushes::add);
+        sessionManager.startSession(testEmail, "laptop", dummySocket);
+        sessionManager.startSession(testEmail, "phone", phoneSocket);
+
+        assertTrue(sessionManager.push(testEmail, "NEW_EMAIL%%{}"));
+        assertEquals(List.of("NEW_EMAIL%%{}"), laptopPushes);
+        assertEquals(List.of("NEW_EMAIL%%{}"), phonePushes);
+    }
+
+    @Test
+    void testEndAllSessionsTellsEveryDevice() {
+        Socket phoneSocket = new Socket();
+        List<String> phonePushes = new ArrayList<>();
+        sessionManager.registerChannel(phoneSocket, phonePushes::add);
+        Session laptop = sessionManager.startSession(testEmail, "laptop", dummySocket);
+        Session phone = sessionManager.startSession(testEmail, "phone", phoneSocket);
+
+        assertEquals(2, sessionManager.endAllSessions(testEmail, "Logged out from another device"));
+        assertFalse(laptop.isActive());
+        assertFalse(phone.isActive());
+        assertFalse(sessionManager.isLoggedIn(testEmail));
+        assertEquals(List.of("UNAUTHORIZED%%Logged out from another device"), phonePushes);
+    }
+
+    @Test
+    void testEndAllSessionsEndsTokenSessions() {
+        Session connection = sessionManager.startSession(testEmail, dummySocket);
+        Session token = sessionManager.startTokenSession(testEmail, 60_000);
+        Session otherUser = sessionManager.startTokenSession("other@example.com", 60_000);
+
+        assertEquals(2, sessionManager.endAllSessions(testEmail, null));
+        assertFalse(connection.isActive());
+        assertFalse(token.isActive());
+        assertNull(sessionManager.findSession(token.getToken()));
+        assertSame(otherUser, sessionManager.findSession(otherUser.getToken()));
+    }
+
+    @Test
+    void testTokenSessionLeavesConnectionSessionAloneAndExpires() throws InterruptedException {
+        Session connection = sessionManager.startSession(testEmail, dummySocket);
+        Session token = sessionManager.startTokenSession(testEmail, 20);
+
+        assertTrue(connection.isActive());
+        assertSame(dummySocket, sessionManager.getSessionSocket(testEmail));
+        assertNull(token.getSocket());
+        Thread.sleep(40);
+        assertNull(sessionManager.findSession(token.getToken()), "Expired token must not resolve");
+        assertSame(connection, sessionManager.findSession(connection.getToken()));
+    }
+
+    @Test
+    void testEndConnectionEndsSessionOfThatSocket() {
+        Session session = sessionManager.startSession(testEmail, dummySocket);
+
+        assertEquals(testEmail, sessionManager.endConnection(dummySocket));
+        assertFalse(session.isActive());
+        assertFalse(sessionManager.isLoggedIn(testEmail));
+        assertNull(sessionManager.getEmailForSocket(dummySocket));
+        assertNull(sessionManager.findSession(session.getToken()));
+        assertNull(sessionManager.endConnection(dummySocket), "Second close has nothing left to end");
+    }
+
+    @Test
+    void testLoginOnSameSocketRetiresPreviousUser() {
+        Session first = sessionManager.startSession(testEmail, dummySocket);
+        sessionManager.startSession("other@example.com", dummySocket);
+
+        assertFalse(first.isActive());
+        assertFalse(sessionManager.isLoggedIn(testEmail));
+        assertEquals("other@example.com", sessionManager.getEmailForSocket(dummySocket));
+    }
+
+    @Test
+    void testSuspendedSessionSurvivesDisconnectAndResumes() {
+        Session before = sessionManager.startSession(testEmail, "laptop", dummySocket);
+        sessionManager.suspend();
+        sessionManager.endConnection(dummySocket);
+        assertTrue(before.isActive(), "A suspended manager must keep sessions of closing connections");
+
+        List<StoredSession> stored = sessionManager.exportSessions();
+        assertEquals(1, stored.size());
+        assertNotEquals(before.getToken(), stored.get(0).tokenDigest(), "The raw token must not be stored");
+
+        SessionManager restarted = new SessionManager();
+        assertEquals(1, restarted.restoreSessions(stored));
+        Socket newSocket = new Socket();
+        Session resumed = restarted.resumeSession(before.getToken(), newSocket);
+
+        assertNotNull(resumed);
+        assertEquals(testEmail, resumed.getEmail());
+        assertEquals("laptop", resumed.getDeviceId());
+        assertEquals(before.absoluteDeadlineMillis(), resumed.absoluteDeadlineMillis());
+        assertNotEquals(before.getToken(), resumed.getToken(), "Resuming issues a new token");
+        assertSame(newSocket, restarted.getSessionSocket(testEmail));
+        assertNull(restarted.resumeSession(before.getToken(), new Socket()), "A token resumes only once");
+        assertEquals(1, restarted.stats().resumed());
+        assertEquals(0, restarted.stats().awaitingResume());
+    }
+
+    @Test
+    void testRestoredTokenSessionIsAdoptedByLookup() {
+        Session before = sessionManager.startTokenSession(testEmail, 60_000);
+        SessionManager restarted = new SessionManager();
+        restarted.restoreSessions(sessionManager.exportSessions());
+
+        assertNull(restarted.resumeSession(before.getToken(), dummySocket),
+                "A token-only session cannot be bound to a connection");
+        Session adopted = restarted.findSession(before.getToken());
+
+        assertNotNull(adopted);
+        assertEquals(testEmail, adopted.getEmail());
+        assertEquals(before.getToken(), adopted.getToken(), "HTTP clients keep their bearer token");
+        assertSame(adopted, restarted.findSession(before.getToken()));
+    }
+
+    @Test
+    void testExpiredOrUnknownSessionsDoNotResume() {
+        SessionManager restarted = new SessionManager();
+        String token = "restored-token";
+        restarted.restoreSessions(List.of(
+                new StoredSession(SecurityUtils.digestToken(token), testEmail, "laptop", System.currentTimeMillis() - 1)));
+
+        assertEquals(0, restarted.stats().awaitingResume(), "Sessions past their deadline are dropped");
+        assertNull(restarted.resumeSession(token, dummySocket));
+        assertNull(restarted.resumeSession("unknown", dummySocket));
+        assertNull(restarted.resumeSession(null, dummySocket));
+    }
+
+    @Test
+    void testStatsReportLiveSessionsAndCounters() {
+        sessionManager.registerChannel(dummySocket, line -> true);
+        sessionManager.startSession(testEmail, dummySocket);
+        sessionManager.startSession("other@example.com", new Socket());
+        sessionManager.startTokenSession(testEmail, 60_000);
+        sessionManager.endSession("other@example.com");
+        sessionManager.endConnection(dummySocket);
+
+        SessionStats stats = sessionManager.stats();
+        assertEquals(0, stats.users());
+        assertEquals(0, stats.connectionSessions());
+        assertEquals(1, stats.tokenSessions());
+        assertEquals(1, stats.liveChannels());
+        assertEquals(3, stats.started());
+        assertEquals(2, stats.ended());
+        assertEquals(1, stats.endedOnDisconnect());
+        assertEquals(0, stats.expired());
+    }
+
+    @Test
+    void testIdleSessionExpiresAndIsToldSo() {
+        SessionManager expiring = new SessionManager(60_000, 1_000);
+        List<String> pushed = new ArrayList<>();
+        expiring.registerChannel(dummySocket, pushed::add);
+        Session session = expiring.startSession(testEmail, dummySocket);
+
+        assertEquals(0, expiring.expireSessions(session.deadlineMillis() - 1));
+        assertTrue(session.isActive());
+
+        assertEquals(1, expiring.expireSessions(session.deadlineMillis() + 2_000));
+        assertFalse(session.isActive());
+        assertFalse(expiring.isLoggedIn(testEmail));
+        assertNull(expiring.findSession(session.getToken()));
+        assertEquals(List.of("UNAUTHORIZED%%Session expired"), pushed);
+        assertEquals(1, expiring.stats().expired());
+    }
+
+    @Test
+    void testActivitySlidesDeadlineUpToAbsoluteTtl() throws InterruptedException {
+        SessionManager expiring = new SessionManager(60_000, 1_000);
+        Session session = expiring.startSession(testEmail, dummySocket);
+        long firstDeadline = session.deadlineMillis();
+
+        Thread.sleep(20);
+        session.touch();
+        long slidDeadline = session.deadlineMillis();
+        assertTrue(slidDeadline > firstDeadline);
+
+        // Filed under the old deadline: the wheel refiles it instead of expiring it
+        assertEquals(0, expiring.expireSessions(firstDeadline + 1));
+        assertTrue(expiring.isLoggedIn(testEmail));
+        assertEquals(1, expiring.expireSessions(slidDeadline + 2_000));
+
+        SessionManager capped = new SessionManager(50, 60_000);
+        Session shortLived = capped.startSession(testEmail, dummySocket);
+        Thread.sleep(60);
+        shortLived.touch();
+        assertFalse(shortLived.isActive(), "Activity never extends past the absolute TTL");
+    }
+
+    @Test
+    void testEndedSessionIsNotCountedAsExpired() {
+        SessionManager expiring = new SessionManager(60_000, 1_000);
+        Session session = expiring.startSession(testEmail, dummySocket);
+        expiring.endSession(testEmail);
+
+        assertEquals(0, expiring.expireSessions(session.deadlineMillis() + 2_000));
+        assertEquals(0, expiring.stats().expired());
+    }
+
     @Test
     void testGetEmailForUnmappedSocketReturnsNull() {
         Socket unknownSocket = new Socket();
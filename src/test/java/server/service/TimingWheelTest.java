@@ -0,0 +1,55 @@
+package server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    void testItemExpiresOnItsTickNeverBefore() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        wheel.schedule("a", START + 250);
+
+        assertTrue(wheel.advance(START + 249).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(START + 300), "Rounded up to the next 100 ms tick");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testDeadlinesBeyondOneRevolutionWaitForTheirLap() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        wheel.schedule("near", START + 300);
+        wheel.schedule("far", START + 300 + 8 * 100); // same slot, one lap later
+
+        assertEquals(List.of("near"), wheel.advance(START + 300));
+        assertTrue(wheel.advance(START + 1000).isEmpty());
+        assertEquals(List.of("far"), wheel.advance(START + 1100));
+    }
+
+    @Test
+    void testLongPauseExpiresEverythingDue() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 4, START);
+        for (int i = 0; i < 20; i++) {
+            wheel.schedule(i, START + i * 25L);
+        }
+
+        List<Integer> expired = wheel.advance(START + 10_000); // many revolutions in one call
+
+        assertEquals(20, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testPastDeadlineExpiresOnNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        wheel.advance(START + 500);
+        wheel.schedule("late", START + 100);
+
+        assertEquals(List.of("late"), wheel.advance(START + 600));
+    }
+}
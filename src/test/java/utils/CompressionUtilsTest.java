@@ -0,0 +1,34 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionUtilsTest {
+
+    @Test
+    void testDeflateInflateRoundTrip() {
+        String line = "RETRIEVE_EMAILS_SUCCESS%%[{\"subject\":\"Café ☕\",\"body\":\"" + "hello ".repeat(500) + "\"}]";
+
+        String encoded = CompressionUtils.deflate(line);
+
+        assertEquals(line, CompressionUtils.inflate(encoded));
+    }
+
+    @Test
+    void testDeflatedLineIsSingleLineAndSmaller() {
+        String line = "{\"body\":\"" + "repetitive content ".repeat(200) + "\"}";
+
+        String encoded = CompressionUtils.deflate(line);
+
+        assertFalse(encoded.contains("\n"), "Encoded data must not break line framing");
+        assertFalse(encoded.contains(ProtocolConstants.DELIMITER));
+        assertTrue(encoded.length() < line.length());
+    }
+
+    @Test
+    void testInflateRejectsCorruptedData() {
+        assertThrows(IllegalArgumentException.class, () -> CompressionUtils.inflate("not-base64-deflate!"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionUtils.inflate("aGVsbG8="));
+    }
+}
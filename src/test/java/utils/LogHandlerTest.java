@@ -17,7 +17,7 @@ class LogHandlerTest {
         Files.createDirectories(LOG_FILE.getParent());
         Files.deleteIfExists(LOG_FILE);
         Files.createFile(LOG_FILE);
-        LogHandler.resetExecutorForTests(); // ensure clean executor for each test
+        LogHandler.resetWriterForTests(); // ensure a running writer for each test
     }
 
     private void flushLogs() {
@@ -55,6 +55,22 @@ class LogHandlerTest {
         assertTrue(lines.stream().anyMatch(l -> l.contains("ERROR") && l.contains("Test ERROR log")));
     }
 
+    @Test
+    void testEntryNamesCallingClass() throws IOException {
+        LogHandler.log("Test caller log"); // goes through info(), which must not be taken for the caller
+        List<String> lines = readLogLines();
+        assertTrue(lines.stream().anyMatch(l -> l.contains("(utils.LogHandlerTest): Test caller log")), lines.toString());
+    }
+
+    @Test
+    void testEntryStartsWithTimestamp() throws IOException {
+        LogHandler.info("Test timestamp log");
+        List<String> lines = readLogLines();
+        assertTrue(lines.stream().anyMatch(l -> l.matches(
+                "\\[\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}] \\[INFO] \\(utils.LogHandlerTest\\): Test timestamp log")),
+                lines.toString());
+    }
+
     @Test
     void testLogHandlerShutdownIsNonBlocking() {
         assertDoesNotThrow(LogHandler::shutdown);
@@ -0,0 +1,91 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testQueuedLinesAreWrittenInOrderOnClose() throws Exception {
+        Path file = dir.resolve("batch.log");
+        LogWriter<String> writer = LogWriter.lines(file, 4096, 64 * 1024, 60_000);
+        List<String> lines = IntStream.range(0, 2000).mapToObj(i -> "line " + i).toList();
+
+        lines.forEach(writer::append);
+        assertTrue(writer.close(2000));
+
+        assertEquals(lines, Files.readAllLines(file));
+    }
+
+    @Test
+    void testLineIsWrittenAfterFlushInterval() throws Exception {
+        Path file = dir.resolve("interval.log");
+        LogWriter<String> writer = LogWriter.lines(file, 16, 64 * 1024, 20);
+
+        writer.append("lonely line");
+
+        assertEquals(List.of("lonely line"), awaitLines(file, 1));
+        writer.close(2000);
+    }
+
+    @Test
+    void testDeletedFileIsReopened() throws Exception {
+        Path file = dir.resolve("rotated.log");
+        LogWriter<String> writer = LogWriter.lines(file, 16, 64 * 1024, 20);
+        writer.append("before");
+        awaitLines(file, 1);
+
+        Files.delete(file);
+        writer.append("after");
+
+        assertEquals(List.of("after"), awaitLines(file, 1));
+        writer.close(2000);
+    }
+
+    @Test
+    void testEntriesAreRenderedOnWriterThread() throws Exception {
+        Path file = dir.resolve("rendered.log");
+        LogWriter<Integer> writer = new LogWriter<>(file, 16, 64 * 1024, 60_000,
+                (number, out) -> out.append(number).append(" on ").append(Thread.currentThread().getName()));
+
+        writer.append(7);
+        assertTrue(writer.close(2000));
+
+        assertEquals(List.of("7 on log-writer"), Files.readAllLines(file));
+    }
+
+    @Test
+    void testAppendAfterCloseIsRejected() throws Exception {
+        LogWriter<String> writer = LogWriter.lines(dir.resolve("closed.log"), 16, 64 * 1024, 20);
+        assertTrue(writer.close(2000));
+
+        assertTrue(writer.isClosed());
+        assertFalse(writer.append("too late"));
+    }
+
+    private static List<String> awaitLines(Path file, int count) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            if (Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file);
+                if (lines.size() >= count) {
+                    return lines;
+                }
+            }
+            Thread.sleep(10);
+        }
+        fail("Expected " + count + " lines in " + file);
+        return List.of();
+    }
+}
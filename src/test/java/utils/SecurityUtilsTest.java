@@ -2,6 +2,15 @@ package utils;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class SecurityUtilsTest {
@@ -45,6 +54,85 @@ class SecurityUtilsTest {
         assertFalse(SecurityUtils.verifyPassword("wrongPassword", hash, salt));
     }
 
+    @Test
+    void testPbkdf2EntryVerifiesOnlyItsPassword() {
+        String entry = SecurityUtils.hashPassword("mySecretPass");
+
+        assertTrue(entry.startsWith(ServerConstants.KDF_ID + "$" + SecurityUtils.getIterations() + "$"));
+        assertTrue(SecurityUtils.verifyPassword("mySecretPass", entry));
+        assertFalse(SecurityUtils.verifyPassword("wrongPassword", entry));
+        assertNotEquals(entry, SecurityUtils.hashPassword("mySecretPass"), "Each entry gets its own salt");
+    }
+
+    @Test
+    void testNeedsRehashForLegacyAndWeakerEntries() {
+        String salt = SecurityUtils.generateSalt();
+        String legacy = salt + "$" + SecurityUtils.hashPassword("pw", salt);
+        String weaker = ServerConstants.KDF_ID + "$1000$" + salt + "$" + "AAAA";
+
+        assertTrue(SecurityUtils.verifyPassword("pw", legacy), "Legacy entries still verify");
+        assertTrue(SecurityUtils.needsRehash(legacy));
+        assertTrue(SecurityUtils.needsRehash(weaker));
+        assertFalse(SecurityUtils.needsRehash(SecurityUtils.hashPassword("pw")));
+    }
+
+    @Test
+    void testMalformedEntriesAreRejected() {
+        assertFalse(SecurityUtils.isWellFormed("no-delimiter"));
+        assertFalse(SecurityUtils.isWellFormed(ServerConstants.KDF_ID + "$many$salt$hash"));
+        assertFalse(SecurityUtils.verifyPassword("pw", "a$b$c"));
+    }
+
+    @Test
+    void testCalibrationNeverGoesBelowFloor() {
+        assertEquals(ServerConstants.KDF_MIN_ITERATIONS, SecurityUtils.calibrate(1));
+        assertEquals(ServerConstants.KDF_MIN_ITERATIONS, SecurityUtils.getIterations());
+    }
+
+    @Test
+    void testRecalibrationOnlyRehashesEntriesWellBelowIt() {
+        String salt = SecurityUtils.generateSalt();
+        try {
+            int calibrated = SecurityUtils.calibrate(1000);
+            String close = ServerConstants.KDF_ID + "$" + Math.max(ServerConstants.KDF_MIN_ITERATIONS,
+                    calibrated * 3 / 4) + "$" + salt + "$AAAA";
+            String far = ServerConstants.KDF_ID + "$" + calibrated / (ServerConstants.KDF_REHASH_FACTOR + 1)
+                    + "$" + salt + "$AAAA";
+
+            assertFalse(SecurityUtils.needsRehash(close), "A slightly higher calibration must not rehash");
+            assertTrue(SecurityUtils.needsRehash(far));
+        } finally {
+            SecurityUtils.calibrate(1);
+        }
+    }
+
+    @Test
+    void testConcurrentCallersGetIndependentPrimitives() throws Exception {
+        String salt = SecurityUtils.generateSalt();
+        String expected = SecurityUtils.hashPassword("shared", salt);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Set<String>>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(pool.submit(() -> {
+                    Set<String> salts = new HashSet<>();
+                    for (int i = 0; i < 500; i++) {
+                        assertEquals(expected, SecurityUtils.hashPassword("shared", salt));
+                        salts.add(SecurityUtils.generateSalt());
+                    }
+                    return salts;
+                }));
+            }
+            Set<String> allSalts = new HashSet<>();
+            for (Future<Set<String>> result : results) {
+                allSalts.addAll(result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(2000, allSalts.size(), "Per-thread generators must not repeat each other");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     @Test
     void testVerifyPasswordFailsWithWrongSalt() {
         String password = "securePassword";
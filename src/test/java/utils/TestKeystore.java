@@ -0,0 +1,59 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a throw-away self-signed PKCS12 keystore with the JDK's keytool,
+ * following the steps in {@code server/sslcertificate.md}. Used by TLS tests
+ * and benchmarks so no key material is committed.
+ */
+public final class TestKeystore {
+
+    public static final String PASSWORD = "test-password";
+
+    public static Path generate(Path directory) throws IOException, InterruptedException {
+        Path keystore = directory.resolve("test-server.p12");
+        Files.deleteIfExists(keystore);
+        keytool("-genkeypair", "-alias", "server",
+                "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", keystore.toString(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD,
+                "-dname", "CN=localhost, OU=COMPUTING, O=DKIT, L=Dundalk, ST=Louth, C=IE");
+        return keystore;
+    }
+
+    /**
+     * Builds a client truststore holding only the certificate of a keystore
+     * made by {@link #generate(Path)}, without its private key.
+     */
+    public static Path exportTruststore(Path keystore, Path directory) throws IOException, InterruptedException {
+        Path certificate = directory.resolve("test-server.cer");
+        Path truststore = directory.resolve("test-truststore.p12");
+        Files.deleteIfExists(certificate);
+        Files.deleteIfExists(truststore);
+        keytool("-exportcert", "-alias", "server", "-keystore", keystore.toString(),
+                "-storepass", PASSWORD, "-file", certificate.toString());
+        keytool("-importcert", "-noprompt", "-alias", "server", "-file", certificate.toString(),
+                "-storetype", "PKCS12", "-keystore", truststore.toString(), "-storepass", PASSWORD);
+        return truststore;
+    }
+
+    private static void keytool(String... args) throws IOException, InterruptedException {
+        String[] command = new String[args.length + 1];
+        command[0] = Path.of(System.getProperty("java.home"), "bin", "keytool").toString();
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .start();
+        process.getInputStream().transferTo(java.io.OutputStream.nullOutputStream());
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IOException("keytool " + args[0] + " failed");
+        }
+    }
+
+    private TestKeystore() {
+    }
+}
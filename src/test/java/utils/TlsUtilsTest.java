@@ -0,0 +1,100 @@
+package utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TlsUtilsTest {
+
+    private static final String SUITE = "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256";
+
+    @TempDir
+    static Path tempDir;
+
+    private static SSLServerSocket serverSocket;
+    private static SSLContext clientContext;
+    private static final ExecutorService acceptor = Executors.newSingleThreadExecutor();
+
+    @BeforeAll
+    static void startEchoServer() throws Exception {
+        Path keystore = TestKeystore.generate(tempDir);
+        char[] password = TestKeystore.PASSWORD.toCharArray();
+        SSLContext serverContext = TlsUtils.createServerContext(keystore.toString(), password);
+        Path truststore = TestKeystore.exportTruststore(keystore, tempDir);
+        clientContext = TlsUtils.createClientContext(truststore.toString(), password); // certificate only, no key
+
+        // TLS 1.2 exposes resumption through a stable session id
+        serverSocket = TlsUtils.createServerSocket(serverContext, 0, new String[]{"TLSv1.2"},
+                "TLS_UNKNOWN_SUITE, " + SUITE);
+        acceptor.submit(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket client = serverSocket.accept();
+                        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                                StandardCharsets.UTF_8));
+                        PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+                    out.println("ECHO%%" + in.readLine());
+                } catch (Exception ignored) {
+                    // connection ended; keep accepting
+                }
+            }
+        });
+    }
+
+    @AfterAll
+    static void stopEchoServer() throws Exception {
+        serverSocket.close();
+        acceptor.shutdownNow();
+    }
+
+    private static SSLSocket connectAndEcho(String line) throws Exception {
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory()
+                .createSocket("localhost", serverSocket.getLocalPort());
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out.println(line);
+        assertEquals("ECHO%%" + line, in.readLine());
+        return socket;
+    }
+
+    @Test
+    void testProtocolLinesTravelOverConfiguredCipherSuite() throws Exception {
+        try (SSLSocket socket = connectAndEcho("LOGIN%%{\"email\":\"tls@example.com\"}")) {
+            assertEquals(SUITE, socket.getSession().getCipherSuite());
+            assertEquals("TLSv1.2", socket.getSession().getProtocol());
+        }
+    }
+
+    @Test
+    void testReconnectResumesTlsSession() throws Exception {
+        byte[] firstId;
+        try (SSLSocket first = connectAndEcho("HELLO%%{}")) {
+            firstId = first.getSession().getId();
+        }
+        try (SSLSocket second = connectAndEcho("HELLO%%{}")) {
+            assertArrayEquals(firstId, second.getSession().getId(), "Second connection should resume the session");
+        }
+    }
+
+    @Test
+    void testSelectCipherSuitesKeepsSupportedInRequestedOrder() {
+        String[] supported = {"B", "A", "C"};
+        assertArrayEquals(new String[]{"C", "A"}, TlsUtils.selectCipherSuites("C, X, A", supported));
+        assertEquals(0, TlsUtils.selectCipherSuites("", supported).length, "Empty config keeps the defaults");
+        assertThrows(IllegalArgumentException.class, () -> TlsUtils.selectCipherSuites("X,Y", supported));
+    }
+}